@@ -2,6 +2,7 @@ package com.maxxenergy.edap;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 /**
  * Main entry point for the MAXX Energy EDAP application.
@@ -10,6 +11,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
  * insights, and management tools with role-based access control using in-memory storage.
  */
 @SpringBootApplication
+@EnableScheduling
 public class Main {
 
     public static void main(String[] args) {
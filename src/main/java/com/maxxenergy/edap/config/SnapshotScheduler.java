@@ -0,0 +1,37 @@
+package com.maxxenergy.edap.config;
+
+import com.maxxenergy.edap.repository.SolarDataEntryRepository;
+import com.maxxenergy.edap.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Periodically snapshots the configured repositories in the background,
+ * keeping the write-ahead log that has to be replayed at startup short.
+ * Engines without a log treat the checkpoint as a no-op.
+ */
+@Component
+public class SnapshotScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotScheduler.class);
+
+    @Autowired
+    private SolarDataEntryRepository entryRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Scheduled(initialDelayString = "${edap.storage.snapshot.interval-ms:900000}",
+            fixedDelayString = "${edap.storage.snapshot.interval-ms:900000}")
+    public void writeSnapshots() {
+        try {
+            entryRepository.checkpoint();
+            userRepository.checkpoint();
+        } catch (Exception e) {
+            logger.error("Error writing storage snapshots", e);
+        }
+    }
+}
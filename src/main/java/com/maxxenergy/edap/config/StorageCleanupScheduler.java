@@ -0,0 +1,32 @@
+package com.maxxenergy.edap.config;
+
+import com.maxxenergy.edap.service.SolarDataEntryService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically trims every user back to edap.storage.max-entries-per-user,
+ * every edap.storage.cleanup-interval-minutes.
+ */
+@Component
+public class StorageCleanupScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageCleanupScheduler.class);
+
+    @Autowired
+    private SolarDataEntryService solarDataEntryService;
+
+    @Scheduled(initialDelayString = "${edap.storage.cleanup-interval-minutes:60}",
+            fixedDelayString = "${edap.storage.cleanup-interval-minutes:60}", timeUnit = TimeUnit.MINUTES)
+    public void enforceEntryLimits() {
+        try {
+            solarDataEntryService.enforceEntryLimits();
+        } catch (Exception e) {
+            logger.error("Error enforcing per-user entry limits", e);
+        }
+    }
+}
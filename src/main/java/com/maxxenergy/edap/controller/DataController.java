@@ -61,13 +61,15 @@ public class DataController {
                 
                       <div class="control-group">
                         <label>Plant Filter:</label>
-                        <select class="control-select">
+                        <select class="control-select" id="plantFilter">
                           <option>All Plants</option>
                           <option>Public Plants Only</option>
                           <option>High Performance</option>
                         </select>
                       </div>
                     </div>
+                
+                    <div id="filteredData"></div>
                   </section>
                 </main>
                 
@@ -119,6 +121,56 @@ public class DataController {
                                 container.classList.remove('loading');
                             }
                         });
+                
+                    // Plant filter: "High Performance" lists the most efficient public entries
+                    const plantFilter = document.getElementById('plantFilter');
+                    if (plantFilter) {
+                        plantFilter.addEventListener('change', () => {
+                            const target = document.getElementById('filteredData');
+                            if (plantFilter.value !== 'High Performance') {
+                                target.innerHTML = '';
+                                return;
+                            }
+                            target.innerHTML = '<div class="panel"><p>Loading high performance plants...</p></div>';
+                            fetch('/api/public/high-performance')
+                                .then(response => response.json())
+                                .then(data => {
+                                    if (!data.entries || data.entries.length === 0) {
+                                        target.innerHTML = '<div class="panel"><p>No high performance plants found.</p></div>';
+                                        return;
+                                    }
+                                    // Plant names are user input: build the rows as DOM nodes so they are never parsed as HTML
+                                    const tbody = document.createElement('tbody');
+                                    data.entries.forEach(entry => {
+                                        const row = document.createElement('tr');
+                                        [
+                                            String(entry.plantName),
+                                            `${Number(entry.generation)} MW`,
+                                            `${Number(entry.efficiency)}%`,
+                                            `${Number(entry.capacityUtilization).toFixed(1)}%`
+                                        ].forEach(value => {
+                                            const cell = document.createElement('td');
+                                            cell.textContent = value;
+                                            row.appendChild(cell);
+                                        });
+                                        tbody.appendChild(row);
+                                    });
+                                    target.innerHTML = `
+                                        <div class="panel">
+                                            <h3>High Performance Plants</h3>
+                                            <p>Efficiency of at least ${Number(data.minEfficiency)}% and capacity utilization of at least ${Number(data.minUtilization)}%</p>
+                                            <table>
+                                                <thead><tr><th>Plant</th><th>Generation</th><th>Efficiency</th><th>Utilization</th></tr></thead>
+                                            </table>
+                                        </div>
+                                    `;
+                                    target.querySelector('table').appendChild(tbody);
+                                })
+                                .catch(error => {
+                                    target.innerHTML = '<div class="panel"><p>Error loading high performance plants</p></div>';
+                                });
+                        });
+                    }
                 </script>
                 """;
     }
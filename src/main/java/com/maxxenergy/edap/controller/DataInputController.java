@@ -1,16 +1,30 @@
 package com.maxxenergy.edap.controller;
 
+import com.maxxenergy.edap.exception.DuplicateSubmissionException;
 import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.repository.EntryPage;
+import com.maxxenergy.edap.service.AsyncIngestService;
 import com.maxxenergy.edap.service.SolarDataEntryService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.BufferedWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Controller for solar data input functionality.
@@ -25,6 +39,9 @@ public class DataInputController {
     @Autowired
     private SolarDataEntryService dataEntryService;
 
+    @Autowired
+    private AsyncIngestService asyncIngestService;
+
     /**
      * Show data input page (HTML interface)
      */
@@ -41,11 +58,13 @@ public class DataInputController {
      */
     @PostMapping("/api/submit")
     @ResponseBody
-    public ResponseEntity<Map<String, Object>> submitData(@RequestBody SolarDataEntry entry) {
+    public ResponseEntity<Map<String, Object>> submitData(
+            @RequestBody SolarDataEntry entry,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
         Map<String, Object> response = new HashMap<>();
 
         try {
-            logger.info("Submitting data entry for plant: {}", entry.getPlantName());
+            logger.debug("Submitting data entry for plant: {}", entry.getPlantName());
 
             // In a real application, you'd get the user ID from the session/JWT token
             // For demo purposes, using a placeholder user ID
@@ -53,8 +72,18 @@ public class DataInputController {
                 entry.setUserId("demo-user-123");
             }
 
+            if (asyncIngestService.isEnabled()) {
+                // Validate now, store later on the ingest writer thread
+                String id = asyncIngestService.submit(entry, idempotencyKey);
+                response.put("success", true);
+                response.put("message", "Data accepted for storage");
+                response.put("id", id);
+                response.put("timestamp", entry.getTimestamp());
+                return ResponseEntity.accepted().body(response);
+            }
+
             // Validate and save the entry
-            SolarDataEntry saved = dataEntryService.saveDataEntry(entry);
+            SolarDataEntry saved = dataEntryService.saveDataEntry(entry, idempotencyKey);
 
             response.put("success", true);
             response.put("message", "Data saved successfully");
@@ -72,6 +101,22 @@ public class DataInputController {
             response.put("type", "validation_error");
             return ResponseEntity.badRequest().body(response);
 
+        } catch (DuplicateSubmissionException e) {
+            // A retry of a submission that already succeeded: report the original, store nothing
+            logger.info("Duplicate submission of entry {} ignored", e.getExistingId());
+            response.put("success", true);
+            response.put("duplicate", true);
+            response.put("message", "Data was already submitted");
+            response.put("id", e.getExistingId());
+            return ResponseEntity.ok(response);
+
+        } catch (RejectedExecutionException e) {
+            logger.warn("Data entry rejected: {}", e.getMessage());
+            response.put("success", false);
+            response.put("error", "Server is busy, please retry shortly");
+            response.put("type", "overloaded");
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).header("Retry-After", "1").body(response);
+
         } catch (Exception e) {
             logger.error("Error saving data entry: {}", e.getMessage(), e);
             response.put("success", false);
@@ -81,6 +126,129 @@ public class DataInputController {
         }
     }
 
+    /**
+     * Submit many data entries in one request (API endpoint). Entries are validated
+     * individually; the response reports the outcome of each one by its position.
+     */
+    @PostMapping("/api/submit-batch")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> submitBatch(@RequestBody List<SolarDataEntry> entries) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            logger.info("Submitting batch of {} data entries", entries != null ? entries.size() : 0);
+
+            // Same placeholder user as single submissions until the user comes from the session
+            if (entries != null) {
+                for (SolarDataEntry entry : entries) {
+                    if (entry != null && (entry.getUserId() == null || entry.getUserId().trim().isEmpty())) {
+                        entry.setUserId("demo-user-123");
+                    }
+                }
+            }
+
+            List<Map<String, Object>> results = dataEntryService.saveAll(entries);
+            long saved = results.stream().filter(result -> Boolean.TRUE.equals(result.get("success"))).count();
+
+            response.put("success", true);
+            response.put("saved", saved);
+            response.put("rejected", results.size() - saved);
+            response.put("results", results);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Batch rejected: {}", e.getMessage());
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            response.put("type", "validation_error");
+            return ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            logger.error("Error saving data batch: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("error", "Internal server error occurred while saving data");
+            response.put("type", "server_error");
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * Import historical entries from an uploaded CSV file (API endpoint). The file is parsed
+     * and stored as it streams in; the response reports throughput and rejected rows.
+     */
+    @PostMapping("/api/import")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> importData(
+            @RequestParam("file") MultipartFile file,
+            @RequestParam(defaultValue = "demo-user-123") String userId) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            if (file.isEmpty()) {
+                throw new IllegalArgumentException("Uploaded file is empty");
+            }
+            logger.info("Importing CSV {} ({} bytes) for user: {}", file.getOriginalFilename(), file.getSize(), userId);
+
+            Map<String, Object> report;
+            try (Reader in = new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8)) {
+                report = dataEntryService.importCsv(userId, in);
+            }
+
+            response.put("success", true);
+            response.putAll(report);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("CSV import rejected: {}", e.getMessage());
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            response.put("type", "validation_error");
+            return ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            logger.error("Error importing CSV: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("error", "Internal server error occurred while importing data");
+            response.put("type", "server_error");
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * Ingest a long-lived stream of newline-delimited JSON entries (API endpoint, typically
+     * sent as application/x-ndjson). Entries are stored while the body is still arriving.
+     */
+    @PostMapping("/api/ingest")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> ingestData(
+            InputStream body,
+            @RequestParam(defaultValue = "demo-user-123") String userId) {
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            logger.info("Starting streaming ingest for default user: {}", userId);
+            Map<String, Object> report = dataEntryService.ingestNdjson(userId, body);
+
+            response.put("success", true);
+            response.putAll(report);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            logger.warn("Streaming ingest stopped: {}", e.getMessage());
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            response.put("type", "validation_error");
+            return ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            logger.error("Error during streaming ingest: {}", e.getMessage(), e);
+            response.put("success", false);
+            response.put("error", "Internal server error occurred while ingesting data");
+            response.put("type", "server_error");
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
     /**
      * Get user's data entries for visualization (API endpoint)
      */
@@ -100,6 +268,59 @@ public class DataInputController {
         }
     }
 
+    /**
+     * Get one page of a user's data entries, newest first (API endpoint)
+     */
+    @GetMapping("/api/user-data/page")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getUserDataPage(
+            @RequestParam(required = false, defaultValue = "demo-user-123") String userId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "50") int limit) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            logger.debug("Fetching page of user data for: {}", userId);
+            EntryPage page = dataEntryService.getUserEntriesPage(userId, cursor, limit);
+            response.put("entries", page.getEntries());
+            response.put("count", page.getEntries().size());
+            response.put("hasMore", page.hasNext());
+            response.put("nextCursor", page.hasNext() ? page.getNext().encode() : null);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            logger.error("Error fetching page of user data: {}", e.getMessage(), e);
+            response.put("error", "Unable to fetch user data");
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * Download all of a user's data entries as CSV, streamed as it is read (API endpoint)
+     */
+    @GetMapping("/api/export")
+    @ResponseBody
+    public ResponseEntity<StreamingResponseBody> exportUserData(
+            @RequestParam(required = false, defaultValue = "demo-user-123") String userId) {
+        if (userId.trim().isEmpty()) {
+            return ResponseEntity.badRequest().build();
+        }
+        logger.debug("Exporting data entries for: {}", userId);
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 1 << 16);
+            dataEntryService.exportUserEntriesCsv(userId, writer);
+        };
+        return ResponseEntity.ok()
+                .header("Content-Type", "text/csv; charset=UTF-8")
+                .header("Content-Disposition", "attachment; filename=\"solar-data.csv\"")
+                .body(body);
+    }
+
     /**
      * Get user's data statistics (API endpoint)
      */
@@ -120,6 +341,57 @@ public class DataInputController {
         }
     }
 
+    /**
+     * Search plant names by substring (API endpoint)
+     */
+    @GetMapping("/api/plants/search")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> searchPlants(
+            @RequestParam("q") String query,
+            @RequestParam(required = false, defaultValue = "20") int limit) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            logger.debug("Searching plants for: {}", query);
+            List<Map<String, Object>> plants = dataEntryService.searchPlants(query, limit);
+            response.put("query", query);
+            response.put("plants", plants);
+            response.put("count", plants.size());
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+
+        } catch (Exception e) {
+            logger.error("Error searching plants: {}", e.getMessage(), e);
+            response.put("error", "Unable to search plants");
+            return ResponseEntity.internalServerError().body(response);
+        }
+    }
+
+    /**
+     * Get storage engine statistics (API endpoint)
+     */
+    @GetMapping("/api/storage-stats")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> getStorageStatistics() {
+        try {
+            logger.debug("Fetching storage statistics");
+            Map<String, Object> stats = new HashMap<>(dataEntryService.getStorageStatistics());
+            stats.put("asyncIngest", asyncIngestService.getStatistics());
+            stats.put("deduplication", dataEntryService.getDeduplicationStatistics());
+            return ResponseEntity.ok(stats);
+
+        } catch (Exception e) {
+            logger.error("Error fetching storage statistics: {}", e.getMessage(), e);
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Unable to fetch storage statistics");
+            return ResponseEntity.internalServerError().body(errorResponse);
+        }
+    }
+
     /**
      * Delete a data entry (API endpoint)
      */
@@ -147,6 +419,35 @@ public class DataInputController {
         }
     }
 
+    /**
+     * Make a data entry public or private (API endpoint)
+     */
+    @PutMapping("/api/entry/{entryId}/visibility")
+    @ResponseBody
+    public ResponseEntity<Map<String, Object>> updateVisibility(
+            @PathVariable String entryId,
+            @RequestParam boolean isPublic,
+            @RequestParam(required = false, defaultValue = "demo-user-123") String userId) {
+
+        Map<String, Object> response = new HashMap<>();
+
+        try {
+            logger.info("Setting entry {} public={} for user {}", entryId, isPublic, userId);
+            SolarDataEntry updated = dataEntryService.updateVisibility(entryId, userId, isPublic);
+
+            response.put("success", true);
+            response.put("entryId", updated.getId());
+            response.put("isPublic", updated.isPublic());
+            return ResponseEntity.ok(response);
+
+        } catch (Exception e) {
+            logger.error("Error updating entry visibility: {}", e.getMessage());
+            response.put("success", false);
+            response.put("error", e.getMessage());
+            return ResponseEntity.badRequest().body(response);
+        }
+    }
+
     /**
      * Generate the HTML page for data input interface
      */
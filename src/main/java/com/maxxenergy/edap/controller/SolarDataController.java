@@ -1,6 +1,9 @@
 package com.maxxenergy.edap.controller;
 
 import com.maxxenergy.edap.model.SolarData;
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.repository.EntryPage;
+import com.maxxenergy.edap.service.SolarDataEntryService;
 import com.maxxenergy.edap.service.SolarDataService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -8,6 +11,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -24,6 +29,9 @@ public class SolarDataController {
     @Autowired
     private SolarDataService solarDataService;
 
+    @Autowired
+    private SolarDataEntryService dataEntryService;
+
     /**
      * Get public solar data for dashboard display
      * @return Current solar generation and revenue data
@@ -69,6 +77,67 @@ public class SolarDataController {
         }
     }
 
+    /**
+     * Get the newest public data entries
+     * @return Public entries, newest first, and a cursor for the next page if there is one
+     */
+    @GetMapping("/entries")
+    public ResponseEntity<Map<String, Object>> getLatestPublicEntries(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false, defaultValue = "20") int limit) {
+        try {
+            logger.debug("Fetching {} public entries", limit);
+            EntryPage page = dataEntryService.getPublicEntriesPage(cursor, limit);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("entries", page.getEntries());
+            response.put("count", page.getEntries().size());
+            response.put("hasMore", page.hasNext());
+            response.put("nextCursor", page.hasNext() ? page.getNext().encode() : null);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+
+        } catch (Exception e) {
+            logger.error("Error fetching public entries: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Unable to fetch public entries"));
+        }
+    }
+
+    /**
+     * Get public entries from high performance plants
+     * @return Entries meeting the efficiency and capacity utilization thresholds, most efficient first
+     */
+    @GetMapping("/high-performance")
+    public ResponseEntity<Map<String, Object>> getHighPerformanceEntries(
+            @RequestParam(required = false, defaultValue = "20") double minEfficiency,
+            @RequestParam(required = false, defaultValue = "75") double minUtilization,
+            @RequestParam(required = false, defaultValue = "20") int limit) {
+        try {
+            logger.debug("Fetching high performance entries (efficiency >= {}, utilization >= {})",
+                    minEfficiency, minUtilization);
+            List<SolarDataEntry> entries = dataEntryService.getHighPerformanceEntries(
+                    minEfficiency, minUtilization, limit);
+
+            Map<String, Object> response = new HashMap<>();
+            response.put("entries", entries);
+            response.put("count", entries.size());
+            response.put("minEfficiency", minEfficiency);
+            response.put("minUtilization", minUtilization);
+            return ResponseEntity.ok(response);
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+
+        } catch (Exception e) {
+            logger.error("Error fetching high performance entries: {}", e.getMessage(), e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("error", "Unable to fetch high performance entries"));
+        }
+    }
+
     /**
      * Health check endpoint for monitoring
      * @return Simple OK status
@@ -114,6 +183,8 @@ public class SolarDataController {
                 "endpoints", Map.of(
                         "/api/public/data", "Get current public solar data",
                         "/api/public/statistics", "Get aggregated public statistics",
+                        "/api/public/entries", "Get the newest public data entries",
+                        "/api/public/high-performance", "Get public entries from high performance plants",
                         "/api/public/health", "Service health check",
                         "/api/public/time", "Get current server time",
                         "/api/public/info", "Get API information"
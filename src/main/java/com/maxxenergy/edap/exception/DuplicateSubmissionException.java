@@ -0,0 +1,21 @@
+package com.maxxenergy.edap.exception;
+
+/**
+ * Thrown when a submission repeats one already accepted within the deduplication window.
+ * Carries the id the original submission was stored under.
+ */
+public class DuplicateSubmissionException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String existingId;
+
+    public DuplicateSubmissionException(String existingId) {
+        super("Duplicate of already submitted entry " + existingId);
+        this.existingId = existingId;
+    }
+
+    public String getExistingId() {
+        return existingId;
+    }
+}
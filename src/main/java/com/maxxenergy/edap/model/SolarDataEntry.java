@@ -2,9 +2,10 @@ package com.maxxenergy.edap.model;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.maxxenergy.edap.storage.Timestamps;
 import javax.validation.constraints.*;
 import java.time.LocalDateTime;
-import java.util.UUID;
 
 /**
  * Model class for solar data entries submitted by users.
@@ -52,8 +53,8 @@ public class SolarDataEntry {
     @DecimalMin(value = "0.0", message = "Revenue cannot be negative")
     private Double revenue = 0.0; // Revenue generated in dollars
 
-    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
-    private LocalDateTime timestamp;
+    // Local date-time as epoch milliseconds (see Timestamps); converted only at the API edge
+    private long timestamp;
 
     private boolean isPublic = false; // Whether this data is publicly viewable
 
@@ -64,8 +65,7 @@ public class SolarDataEntry {
 
     // Default constructor
     public SolarDataEntry() {
-        this.id = UUID.randomUUID().toString();
-        this.timestamp = LocalDateTime.now();
+        this.timestamp = Timestamps.now();
         this.temperature = 25.0;
         this.irradiance = 1000.0;
         this.revenue = 0.0;
@@ -170,12 +170,26 @@ public class SolarDataEntry {
         this.revenue = revenue != null ? revenue : 0.0;
     }
 
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
     public LocalDateTime getTimestamp() {
-        return timestamp;
+        return Timestamps.fromEpochMillis(timestamp);
     }
 
     public void setTimestamp(LocalDateTime timestamp) {
-        this.timestamp = timestamp != null ? timestamp : LocalDateTime.now();
+        this.timestamp = timestamp != null ? Timestamps.toEpochMillis(timestamp) : Timestamps.now();
+    }
+
+    /**
+     * Timestamp in epoch milliseconds, for comparisons that should not allocate.
+     */
+    @JsonIgnore
+    public long getTimestampMillis() {
+        return timestamp;
+    }
+
+    @JsonIgnore
+    public void setTimestampMillis(long timestamp) {
+        this.timestamp = timestamp;
     }
 
     public boolean isPublic() {
@@ -204,7 +218,7 @@ public class SolarDataEntry {
     public String getSummary() {
         return String.format("%s: %.1f MW (%.1f%% efficiency) at %s",
                 plantName, generation, efficiency,
-                timestamp.toString().substring(0, 16));
+                getTimestamp().toString().substring(0, 16));
     }
 
     /**
@@ -215,8 +229,7 @@ public class SolarDataEntry {
                 plantName != null && !plantName.trim().isEmpty() &&
                 generation != null && generation >= 0 &&
                 capacity != null && capacity > 0 &&
-                efficiency != null && efficiency >= 0 && efficiency <= 100 &&
-                timestamp != null;
+                efficiency != null && efficiency >= 0 && efficiency <= 100;
     }
 
     @Override
@@ -231,7 +244,7 @@ public class SolarDataEntry {
                 ", temperature=" + temperature + "°C" +
                 ", irradiance=" + irradiance + " W/m²" +
                 ", revenue=$" + revenue +
-                ", timestamp=" + timestamp +
+                ", timestamp=" + getTimestamp() +
                 ", isPublic=" + isPublic +
                 ", capacityUtilization=" + (capacityUtilization != null ?
                 String.format("%.1f%%", capacityUtilization) : "N/A") +
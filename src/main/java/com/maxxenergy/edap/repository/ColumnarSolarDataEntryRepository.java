@@ -0,0 +1,591 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.IdGenerator;
+import com.maxxenergy.edap.storage.SnowflakeIdGenerator;
+import com.maxxenergy.edap.storage.StringDictionary;
+import com.maxxenergy.edap.storage.Timestamps;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Columnar storage engine for SolarDataEntry entities (edap.storage.type=columnar).
+ * Each field lives in its own primitive array, user ids and plant names are
+ * dictionary-coded to ints, and SolarDataEntry objects are only materialized for
+ * the rows a query returns. Aggregates and filters run over the primitive columns
+ * without touching any entry object.
+ */
+@Repository
+@ConditionalOnProperty(name = "edap.storage.type", havingValue = "columnar")
+public class ColumnarSolarDataEntryRepository implements SolarDataEntryRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(ColumnarSolarDataEntryRepository.class);
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Number of rows copied under the lock before handing them to a visitor
+    private static final int VISIT_BATCH_SIZE = 256;
+
+    private static final byte FLAG_LIVE = 1;
+    private static final byte FLAG_PUBLIC = 2;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final StringDictionary userIds = new StringDictionary();
+    private final StringDictionary plantNames = new StringDictionary();
+    private final Map<String, Integer> rowsById = new HashMap<>();
+
+    // Rows freed by deletes, reused before the table grows
+    private int[] freeRows = new int[16];
+    private int freeRowCount;
+
+    // High-water mark of used rows, and the number of live ones below it
+    private int rowCount;
+    private int liveCount;
+
+    // Live rows per user code, so the per-user limit check does not scan the columns
+    private int[] userRowCounts = new int[16];
+
+    // Columns; missing Double values are stored as NaN
+    private String[] ids;
+    private String[] notes;
+    private long[] timestamps;
+    private int[] userCodes;
+    private int[] plantCodes;
+    private double[] generation;
+    private double[] capacity;
+    private double[] efficiency;
+    private double[] temperature;
+    private double[] irradiance;
+    private double[] revenue;
+    private byte[] flags;
+
+    @Autowired(required = false)
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(0);
+
+    public ColumnarSolarDataEntryRepository() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public SolarDataEntry save(SolarDataEntry entry) {
+        if (entry.getId() == null) {
+            entry.setId(idGenerator.nextId());
+        }
+        lock.writeLock().lock();
+        try {
+            store(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Saved solar data entry: {} for user: {}", entry.getId(), entry.getUserId());
+        return entry;
+    }
+
+    /**
+     * Save a batch of entries under a single acquisition of the write lock.
+     */
+    public List<SolarDataEntry> saveAll(Collection<SolarDataEntry> batch) {
+        for (SolarDataEntry entry : batch) {
+            if (entry.getId() == null) {
+                entry.setId(idGenerator.nextId());
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            batch.forEach(this::store);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Saved batch of {} solar data entries", batch.size());
+        return new ArrayList<>(batch);
+    }
+
+    public Optional<SolarDataEntry> findById(String id) {
+        lock.readLock().lock();
+        try {
+            Integer row = rowsById.get(id);
+            return row != null ? Optional.of(materialize(row)) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void deleteById(String id) {
+        lock.writeLock().lock();
+        try {
+            Integer row = rowsById.get(id);
+            if (row != null) {
+                freeRow(row);
+                logger.debug("Deleted solar data entry: {}", id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            rowsById.clear();
+            freeRowCount = 0;
+            rowCount = 0;
+            liveCount = 0;
+            userRowCounts = new int[16];
+            allocate(INITIAL_CAPACITY);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Cleared all solar data entries from columnar repository");
+    }
+
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void forEachEntry(Consumer<SolarDataEntry> action) {
+        visit(row -> true, action);
+    }
+
+    public void forEachByTimestampBetween(LocalDateTime start, LocalDateTime end, Consumer<SolarDataEntry> action) {
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        visit(row -> {
+            long timestamp = timestamps[row];
+            return timestamp > from && timestamp < to;
+        }, action);
+    }
+
+    /**
+     * Visit the live rows passing the filter, testing it on the stored row so that only
+     * matches are materialized. Works in small batches so the visitor never runs while
+     * the lock is held.
+     */
+    private void visit(IntPredicate rowFilter, Consumer<SolarDataEntry> action) {
+        List<SolarDataEntry> batch = new ArrayList<>(VISIT_BATCH_SIZE);
+        int next = 0;
+        while (true) {
+            lock.readLock().lock();
+            try {
+                while (next < rowCount && batch.size() < VISIT_BATCH_SIZE) {
+                    if (isLive(next) && rowFilter.test(next)) {
+                        batch.add(materialize(next));
+                    }
+                    next++;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            batch.forEach(action);
+            batch.clear();
+        }
+    }
+
+    public List<SolarDataEntry> findByUserIdOrderByTimestampDesc(String userId) {
+        int userCode = userIds.lookup(userId);
+        if (userCode == StringDictionary.NO_CODE) {
+            return new ArrayList<>();
+        }
+        List<SolarDataEntry> result = collect(row -> userCodes[row] == userCode);
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    public List<SolarDataEntry> findByIsPublicTrueOrderByTimestampDesc() {
+        List<SolarDataEntry> result = collect(row -> (flags[row] & FLAG_PUBLIC) != 0);
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    public List<SolarDataEntry> findTopKByUserIdOrderByTimestampDesc(String userId, int k) {
+        int userCode = userIds.lookup(userId);
+        if (userCode == StringDictionary.NO_CODE) {
+            return new ArrayList<>();
+        }
+        return newestRows(row -> userCodes[row] == userCode, k);
+    }
+
+    public List<SolarDataEntry> findTopKByIsPublicTrueOrderByTimestampDesc(int k) {
+        return newestRows(row -> (flags[row] & FLAG_PUBLIC) != 0, k);
+    }
+
+    public List<SolarDataEntry> findByPlantNameContainingIgnoreCase(String plantName) {
+        // Match against the dictionary once, then filter rows by code
+        String needle = plantName.toLowerCase();
+        int dictionarySize = plantNames.size();
+        boolean[] matches = new boolean[dictionarySize];
+        for (int code = 0; code < dictionarySize; code++) {
+            String name = plantNames.decode(code);
+            matches[code] = name != null && name.toLowerCase().contains(needle);
+        }
+        return collect(row -> plantCodes[row] >= 0 && plantCodes[row] < dictionarySize &&
+                matches[plantCodes[row]]);
+    }
+
+    public List<SolarDataEntry> findByTimestampBetween(LocalDateTime start, LocalDateTime end) {
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        return collect(row -> timestamps[row] > from && timestamps[row] < to);
+    }
+
+    public List<SolarDataEntry> findByUserIdAndTimestampBetweenOrderByTimestampDesc(
+            String userId, LocalDateTime start, LocalDateTime end) {
+        int userCode = userIds.lookup(userId);
+        if (userCode == StringDictionary.NO_CODE) {
+            return new ArrayList<>();
+        }
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        List<SolarDataEntry> result = collect(row -> userCodes[row] == userCode &&
+                timestamps[row] > from && timestamps[row] < to);
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    public List<SolarDataEntry> findByGenerationGreaterThanEqual(Double threshold) {
+        double min = threshold;
+        return collect(row -> generation[row] >= min);
+    }
+
+    public List<SolarDataEntry> findByEfficiencyGreaterThanEqual(Double threshold) {
+        double min = threshold;
+        return collect(row -> efficiency[row] >= min);
+    }
+
+    public long countByUserId(String userId) {
+        int userCode = userIds.lookup(userId);
+        if (userCode == StringDictionary.NO_CODE) {
+            return 0;
+        }
+        lock.readLock().lock();
+        try {
+            return userCode < userRowCounts.length ? userRowCounts[userCode] : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Evict a user's oldest entries beyond the limit, picking them in one pass over the
+     * timestamp and user columns without materializing any entry.
+     *
+     * @return number of entries removed
+     */
+    public long deleteOldestByUserIdBeyond(String userId, int maxEntries) {
+        int userCode = userIds.lookup(userId);
+        if (userCode == StringDictionary.NO_CODE) {
+            return 0;
+        }
+        List<Integer> oldest;
+        lock.writeLock().lock();
+        try {
+            int excess = (userCode < userRowCounts.length ? userRowCounts[userCode] : 0) - maxEntries;
+            if (excess <= 0) {
+                return 0;
+            }
+            TopK.Selector<Integer> selector = new TopK.Selector<>(row -> true,
+                    (a, b) -> Long.compare(timestamps[a], timestamps[b]), excess);
+            for (int row = 0; row < rowCount; row++) {
+                if (userCodes[row] == userCode && isLive(row)) {
+                    selector.accept(row);
+                }
+            }
+            oldest = selector.result();
+            for (int row : oldest) {
+                freeRow(row);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Evicted {} oldest entries of user: {}", oldest.size(), userId);
+        return oldest.size();
+    }
+
+    public List<SolarDataEntry> findRecentEntries(LocalDateTime sinceDate) {
+        long from = Timestamps.toEpochMillis(sinceDate);
+        return collect(row -> timestamps[row] > from);
+    }
+
+    public EntryStatistics summarizeByUserId(String userId) {
+        EntryStatistics.Builder builder = new EntryStatistics.Builder();
+        int userCode = userIds.lookup(userId);
+        if (userCode == StringDictionary.NO_CODE) {
+            return builder.build();
+        }
+        lock.readLock().lock();
+        try {
+            // One pass over primitive columns; only the newest timestamp is converted
+            long newest = Long.MIN_VALUE;
+            for (int row = 0; row < rowCount; row++) {
+                if (userCodes[row] != userCode || !isLive(row)) {
+                    continue;
+                }
+                builder.add(zeroIfMissing(generation[row]), zeroIfMissing(efficiency[row]),
+                        zeroIfMissing(revenue[row]));
+                newest = Math.max(newest, timestamps[row]);
+            }
+            builder.includeTimestampMillis(newest);
+            return builder.build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void deleteByUserIdAndTimestampBefore(String userId, LocalDateTime keepAfter) {
+        int userCode = userIds.lookup(userId);
+        if (userCode == StringDictionary.NO_CODE) {
+            return;
+        }
+        long cutoff = Timestamps.toEpochMillis(keepAfter);
+        lock.writeLock().lock();
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                if (userCodes[row] == userCode && timestamps[row] < cutoff && isLive(row)) {
+                    freeRow(row);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Cleaned up old entries for user: {}", userId);
+    }
+
+    public long deleteByTimestampBefore(LocalDateTime cutoff) {
+        long cutoffMillis = Timestamps.toEpochMillis(cutoff);
+        long removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                if (timestamps[row] < cutoffMillis && isLive(row)) {
+                    freeRow(row);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Removed {} entries older than {}", removed, cutoff);
+        return removed;
+    }
+
+    public Map<String, Object> getStorageStatistics() {
+        lock.readLock().lock();
+        try {
+            int capacityRows = timestamps.length;
+            // Primitive columns: 6 doubles, 1 long, 2 ints and a flag byte per row
+            long columnBytes = (long) capacityRows * (6 * 8 + 8 + 2 * 4 + 1);
+            // Object columns hold one reference each; the id strings themselves dominate
+            long referenceBytes = (long) capacityRows * 2 * 4;
+            long idBytes = 0;
+            for (int row = 0; row < rowCount; row++) {
+                if (isLive(row)) {
+                    idBytes += estimateStringBytes(ids[row]) + estimateStringBytes(notes[row]);
+                }
+            }
+            // HashMap node, boxed row number and table slot for each id
+            long idIndexBytes = (long) liveCount * (32 + 16 + 4);
+
+            long totalBytes = columnBytes + referenceBytes + idBytes + idIndexBytes;
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("engine", "columnar");
+            stats.put("entries", liveCount);
+            stats.put("allocatedRows", capacityRows);
+            stats.put("columnBytes", columnBytes + referenceBytes);
+            stats.put("idAndNoteBytes", idBytes + idIndexBytes);
+            stats.put("estimatedBytes", totalBytes);
+            stats.put("estimatedBytesPerEntry", liveCount > 0 ? totalBytes / liveCount : 0);
+            stats.put("estimatedBytesBasis", "computed from column sizes");
+            stats.put("distinctUsers", userIds.size());
+            stats.put("distinctPlants", plantNames.size());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Materialize all live rows matching the predicate. Must be given a predicate over row numbers.
+     */
+    private List<SolarDataEntry> collect(IntPredicate rowFilter) {
+        List<SolarDataEntry> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                if (isLive(row) && rowFilter.test(row)) {
+                    result.add(materialize(row));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Newest k live rows matching the predicate, materializing only the selected ones.
+     */
+    private List<SolarDataEntry> newestRows(IntPredicate rowFilter, int k) {
+        lock.readLock().lock();
+        try {
+            TopK.Selector<Integer> selector = new TopK.Selector<>(row -> true,
+                    (a, b) -> Long.compare(timestamps[b], timestamps[a]), k);
+            for (int row = 0; row < rowCount; row++) {
+                if (isLive(row) && rowFilter.test(row)) {
+                    selector.accept(row);
+                }
+            }
+            List<SolarDataEntry> result = new ArrayList<>();
+            for (int row : selector.result()) {
+                result.add(materialize(row));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean isLive(int row) {
+        return (flags[row] & FLAG_LIVE) != 0;
+    }
+
+    private SolarDataEntry materialize(int row) {
+        SolarDataEntry entry = new SolarDataEntry();
+        entry.setId(ids[row]);
+        entry.setUserId(userIds.decode(userCodes[row]));
+        entry.setPlantName(plantNames.decode(plantCodes[row]));
+        entry.setGeneration(boxed(generation[row]));
+        entry.setCapacity(boxed(capacity[row]));
+        entry.setEfficiency(boxed(efficiency[row]));
+        entry.setTemperature(boxed(temperature[row]));
+        entry.setIrradiance(boxed(irradiance[row]));
+        entry.setRevenue(boxed(revenue[row]));
+        entry.setTimestampMillis(timestamps[row]);
+        entry.setPublic((flags[row] & FLAG_PUBLIC) != 0);
+        entry.setNotes(notes[row]);
+        return entry;
+    }
+
+    private void writeRow(int row, SolarDataEntry entry) {
+        ids[row] = entry.getId();
+        notes[row] = entry.getNotes();
+        timestamps[row] = entry.getTimestampMillis();
+        userCodes[row] = userIds.encode(entry.getUserId());
+        plantCodes[row] = plantNames.encode(entry.getPlantName());
+        generation[row] = unboxed(entry.getGeneration());
+        capacity[row] = unboxed(entry.getCapacity());
+        efficiency[row] = unboxed(entry.getEfficiency());
+        temperature[row] = unboxed(entry.getTemperature());
+        irradiance[row] = unboxed(entry.getIrradiance());
+        revenue[row] = unboxed(entry.getRevenue());
+        flags[row] = (byte) (FLAG_LIVE | (entry.isPublic() ? FLAG_PUBLIC : 0));
+    }
+
+    private void store(SolarDataEntry entry) {
+        Integer existing = rowsById.get(entry.getId());
+        int row = existing != null ? existing : allocateRow();
+        if (existing != null) {
+            countUserRow(userCodes[row], -1);
+        }
+        writeRow(row, entry);
+        countUserRow(userCodes[row], 1);
+        if (existing == null) {
+            rowsById.put(entry.getId(), row);
+            liveCount++;
+        }
+    }
+
+    private int allocateRow() {
+        if (freeRowCount > 0) {
+            return freeRows[--freeRowCount];
+        }
+        if (rowCount == timestamps.length) {
+            grow(rowCount * 2);
+        }
+        return rowCount++;
+    }
+
+    private void countUserRow(int userCode, int delta) {
+        if (userCode == StringDictionary.NO_CODE) {
+            return;
+        }
+        if (userCode >= userRowCounts.length) {
+            userRowCounts = Arrays.copyOf(userRowCounts, Math.max(userRowCounts.length * 2, userCode + 1));
+        }
+        userRowCounts[userCode] += delta;
+    }
+
+    private void freeRow(int row) {
+        countUserRow(userCodes[row], -1);
+        rowsById.remove(ids[row]);
+        ids[row] = null;
+        notes[row] = null;
+        flags[row] = 0;
+        liveCount--;
+        if (freeRowCount == freeRows.length) {
+            freeRows = Arrays.copyOf(freeRows, freeRowCount * 2);
+        }
+        freeRows[freeRowCount++] = row;
+    }
+
+    private void allocate(int rows) {
+        ids = new String[rows];
+        notes = new String[rows];
+        timestamps = new long[rows];
+        userCodes = new int[rows];
+        plantCodes = new int[rows];
+        generation = new double[rows];
+        capacity = new double[rows];
+        efficiency = new double[rows];
+        temperature = new double[rows];
+        irradiance = new double[rows];
+        revenue = new double[rows];
+        flags = new byte[rows];
+    }
+
+    private void grow(int rows) {
+        ids = Arrays.copyOf(ids, rows);
+        notes = Arrays.copyOf(notes, rows);
+        timestamps = Arrays.copyOf(timestamps, rows);
+        userCodes = Arrays.copyOf(userCodes, rows);
+        plantCodes = Arrays.copyOf(plantCodes, rows);
+        generation = Arrays.copyOf(generation, rows);
+        capacity = Arrays.copyOf(capacity, rows);
+        efficiency = Arrays.copyOf(efficiency, rows);
+        temperature = Arrays.copyOf(temperature, rows);
+        irradiance = Arrays.copyOf(irradiance, rows);
+        revenue = Arrays.copyOf(revenue, rows);
+        flags = Arrays.copyOf(flags, rows);
+    }
+
+    private static double unboxed(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    private static Double boxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static double zeroIfMissing(double value) {
+        return Double.isNaN(value) ? 0.0 : value;
+    }
+
+    private static long estimateStringBytes(String value) {
+        // String header and fields plus a Latin-1 byte array
+        return value != null ? 24 + 16 + value.length() : 0;
+    }
+}
@@ -0,0 +1,90 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.Timestamps;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Keyset pagination position in the newest-first entry order: the timestamp and id of
+ * the last entry of a page. The next page starts strictly after it, so pages stay stable
+ * while entries are added or removed, and no page needs the entries before it.
+ *
+ * Clients see the cursor as an opaque URL-safe token.
+ */
+public final class EntryCursor {
+
+    private static final char SEPARATOR = '|';
+
+    private final long timestamp;
+    private final String id;
+
+    public EntryCursor(LocalDateTime timestamp, String id) {
+        this(Timestamps.toEpochMillis(timestamp), id);
+    }
+
+    private EntryCursor(long timestamp, String id) {
+        this.timestamp = timestamp;
+        this.id = id;
+    }
+
+    /**
+     * Cursor positioned at the given entry.
+     */
+    public static EntryCursor of(SolarDataEntry entry) {
+        return new EntryCursor(entry.getTimestampMillis(), entry.getId());
+    }
+
+    public LocalDateTime getTimestamp() {
+        return Timestamps.fromEpochMillis(timestamp);
+    }
+
+    public long getTimestampMillis() {
+        return timestamp;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Whether the entry comes after this cursor: older, or as old with a greater id.
+     */
+    public boolean precedes(SolarDataEntry entry) {
+        int cmp = Long.compare(timestamp, entry.getTimestampMillis());
+        return cmp > 0 || (cmp == 0 && id.compareTo(entry.getId()) < 0);
+    }
+
+    public String encode() {
+        String plain = getTimestamp() + String.valueOf(SEPARATOR) + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parse a token produced by {@link #encode()}; null or empty means the first page.
+     *
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static EntryCursor decode(String token) {
+        if (token == null || token.trim().isEmpty()) {
+            return null;
+        }
+        try {
+            String plain = new String(Base64.getUrlDecoder().decode(token.trim()), StandardCharsets.UTF_8);
+            int separator = plain.indexOf(SEPARATOR);
+            if (separator <= 0 || separator == plain.length() - 1) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new EntryCursor(LocalDateTime.parse(plain.substring(0, separator)), plain.substring(separator + 1));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
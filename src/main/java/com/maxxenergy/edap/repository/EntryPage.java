@@ -0,0 +1,45 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated query, newest first.
+ */
+public class EntryPage {
+
+    private final List<SolarDataEntry> entries;
+    private final EntryCursor next;
+
+    public EntryPage(List<SolarDataEntry> entries, EntryCursor next) {
+        this.entries = entries;
+        this.next = next;
+    }
+
+    /**
+     * Build a page from up to {@code limit + 1} ordered entries; the extra one only
+     * signals that another page follows.
+     */
+    public static EntryPage of(List<SolarDataEntry> fetched, int limit) {
+        if (fetched.size() <= limit) {
+            return new EntryPage(fetched, null);
+        }
+        List<SolarDataEntry> page = fetched.subList(0, limit);
+        return new EntryPage(page, limit > 0 ? EntryCursor.of(page.get(limit - 1)) : null);
+    }
+
+    public List<SolarDataEntry> getEntries() {
+        return entries;
+    }
+
+    /**
+     * Cursor for the following page, or null if this is the last one.
+     */
+    public EntryCursor getNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
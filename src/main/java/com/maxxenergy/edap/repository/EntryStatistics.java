@@ -0,0 +1,103 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.Timestamps;
+import java.time.LocalDateTime;
+
+/**
+ * Aggregate figures over a set of solar data entries.
+ * Missing generation, efficiency or revenue values count as zero.
+ */
+public class EntryStatistics {
+
+    private final long entryCount;
+    private final double totalGeneration;
+    private final double totalEfficiency;
+    private final double maxGeneration;
+    private final double totalRevenue;
+    private final LocalDateTime lastEntry;
+
+    public EntryStatistics(long entryCount, double totalGeneration, double totalEfficiency,
+                           double maxGeneration, double totalRevenue, LocalDateTime lastEntry) {
+        this.entryCount = entryCount;
+        this.totalGeneration = totalGeneration;
+        this.totalEfficiency = totalEfficiency;
+        this.maxGeneration = maxGeneration;
+        this.totalRevenue = totalRevenue;
+        this.lastEntry = lastEntry;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public double getAverageGeneration() {
+        return entryCount > 0 ? totalGeneration / entryCount : 0.0;
+    }
+
+    public double getAverageEfficiency() {
+        return entryCount > 0 ? totalEfficiency / entryCount : 0.0;
+    }
+
+    public double getMaxGeneration() {
+        return maxGeneration;
+    }
+
+    public double getTotalRevenue() {
+        return totalRevenue;
+    }
+
+    public LocalDateTime getLastEntry() {
+        return lastEntry;
+    }
+
+    /**
+     * Single-pass accumulator for building statistics from entries.
+     */
+    public static class Builder {
+        private long entryCount;
+        private double totalGeneration;
+        private double totalEfficiency;
+        private double maxGeneration;
+        private double totalRevenue;
+        private long lastEntry = Long.MIN_VALUE;
+
+        public Builder add(SolarDataEntry entry) {
+            add(valueOf(entry.getGeneration()), valueOf(entry.getEfficiency()), valueOf(entry.getRevenue()));
+            return includeTimestampMillis(entry.getTimestampMillis());
+        }
+
+        public Builder add(double generation, double efficiency, double revenue) {
+            maxGeneration = entryCount == 0 ? generation : Math.max(maxGeneration, generation);
+            entryCount++;
+            totalGeneration += generation;
+            totalEfficiency += efficiency;
+            totalRevenue += revenue;
+            return this;
+        }
+
+        /**
+         * Record an entry timestamp, keeping the latest one seen.
+         */
+        public Builder includeTimestamp(LocalDateTime timestamp) {
+            return timestamp != null ? includeTimestampMillis(Timestamps.toEpochMillis(timestamp)) : this;
+        }
+
+        /**
+         * Record an entry timestamp given in epoch milliseconds, keeping the latest one seen.
+         */
+        public Builder includeTimestampMillis(long timestamp) {
+            lastEntry = Math.max(lastEntry, timestamp);
+            return this;
+        }
+
+        public EntryStatistics build() {
+            return new EntryStatistics(entryCount, totalGeneration, totalEfficiency, maxGeneration, totalRevenue,
+                    lastEntry != Long.MIN_VALUE ? Timestamps.fromEpochMillis(lastEntry) : null);
+        }
+
+        private static double valueOf(Double value) {
+            return value != null ? value : 0.0;
+        }
+    }
+}
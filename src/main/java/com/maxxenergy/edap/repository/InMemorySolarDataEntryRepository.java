@@ -1,137 +1,807 @@
 package com.maxxenergy.edap.repository;
 
 import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.IdGenerator;
+import com.maxxenergy.edap.storage.SnapshotFile;
+import com.maxxenergy.edap.storage.SnowflakeIdGenerator;
+import com.maxxenergy.edap.storage.StringPool;
+import com.maxxenergy.edap.storage.Timestamps;
+import com.maxxenergy.edap.storage.TrigramIndex;
+import com.maxxenergy.edap.storage.WriteAheadLog;
+import com.maxxenergy.edap.storage.WriteAheadLogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAccumulator;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
- * In-memory repository for SolarDataEntry entities.
+ * In-memory repository for SolarDataEntry entities (edap.storage.type=in-memory, the default).
  * Provides thread-safe data access operations using ConcurrentHashMap.
+ * Per-user queries are answered from a time-ordered skip list index per user,
+ * so their cost depends on the user's own data rather than the total store size.
+ * Entries are also filed into hourly time partitions, so time range queries only
+ * touch overlapping partitions and retention can drop whole partitions at once.
+ * Plant name substring search goes through a trigram index over the distinct names,
+ * and generation, efficiency and capacity utilization have sorted value indexes for
+ * threshold and range queries. Public entries are kept in their own time-ordered
+ * feed, so the public pages never scan or sort the store.
+ * Writes are recorded in a write-ahead log (when enabled); startup loads the latest
+ * snapshot and replays only the log written since.
  */
 @Repository
-public class InMemorySolarDataEntryRepository {
+@ConditionalOnProperty(name = "edap.storage.type", havingValue = "in-memory", matchIfMissing = true)
+public class InMemorySolarDataEntryRepository implements SolarDataEntryRepository {
 
     private static final Logger logger = LoggerFactory.getLogger(InMemorySolarDataEntryRepository.class);
 
+    // Width of one time partition
+    private static final long PARTITION_MILLIS = 60 * 60 * 1000L;
+
+    // Fixed estimate of the heap cost of one entry object graph (entry, boxed Doubles and id
+    // string; user ids and plant names are shared through the string pools) plus its id map,
+    // per-user, partition, plant, value and key index nodes and its node in the per-user
+    // generation aggregate. Not measured at runtime; reproduce or update it with
+    // StorageFootprintBenchmark (mvn test -Dtest=StorageFootprintBenchmark)
+    static final long ESTIMATED_BYTES_PER_ENTRY = 800;
+
     private final Map<String, SolarDataEntry> entries = new ConcurrentHashMap<>();
 
+    // Secondary index: userId -> entries ordered newest first
+    private final Map<String, UserEntries> userIndex = new ConcurrentHashMap<>();
+
+    // Time partitions: partition start (epoch millis) -> entries in [start, start + 1 hour)
+    private final ConcurrentSkipListMap<Long, TimePartition> partitions = new ConcurrentSkipListMap<>();
+
+    // Index key each entry was filed under, so removal works even if the entry was mutated later
+    private final Map<String, EntryKey> indexKeys = new ConcurrentHashMap<>();
+
+    // Plant name -> entries of that plant, and a trigram index over the distinct names
+    private final Map<String, Map<String, SolarDataEntry>> plantIndex = new ConcurrentHashMap<>();
+    private final TrigramIndex plantNames = new TrigramIndex();
+
+    // One shared String per distinct user id and plant name of the stored entries
+    private final StringPool userIdPool = new StringPool();
+    private final StringPool plantNamePool = new StringPool();
+
+    // Public entries ordered newest first; read without locking by the public feed
+    private final ConcurrentSkipListMap<EntryKey, SolarDataEntry> publicFeed = new ConcurrentSkipListMap<>();
+
+    // Value indexes: entries ordered by ascending value, then id; null values are not indexed
+    private final ConcurrentSkipListMap<ValueKey, SolarDataEntry> generationIndex = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<ValueKey, SolarDataEntry> efficiencyIndex = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<ValueKey, SolarDataEntry> utilizationIndex = new ConcurrentSkipListMap<>();
+
+    @Autowired(required = false)
+    private WriteAheadLogFactory logFactory;
+
+    @Autowired(required = false)
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(0);
+
+    // Name of the write-ahead log and snapshot of this store
+    private final String logName;
+
+    // Null when write-ahead logging is disabled
+    private WriteAheadLog log;
+
+    // Writers hold the read side from logging a change until it is applied, so a
+    // checkpoint can rotate the log at a point where both sides agree
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    public InMemorySolarDataEntryRepository() {
+        this.logName = "entries";
+    }
+
+    /**
+     * A store that is not a Spring bean itself, such as one shard of a sharded repository.
+     * Call {@link #recover()} before use and {@link #close()} when done.
+     */
+    InMemorySolarDataEntryRepository(String logName, WriteAheadLogFactory logFactory, IdGenerator idGenerator) {
+        this.logName = logName;
+        this.logFactory = logFactory;
+        this.idGenerator = idGenerator;
+    }
+
+    /**
+     * Sort key for the time-ordered indexes: newest timestamp first, then by id.
+     * Bound keys (id == null) sort before or after every entry sharing their timestamp.
+     * Also records the values the entry was filed under in the other indexes.
+     */
+    private static final class EntryKey implements Comparable<EntryKey> {
+        final String userId;
+        final String plantName;
+        final long timestamp;
+        final String id;
+        final int bound;
+        final boolean isPublic;
+        final ValueKey generation;
+        final ValueKey efficiency;
+        final ValueKey utilization;
+        final double revenue;
+
+        EntryKey(SolarDataEntry entry) {
+            this.userId = entry.getUserId();
+            this.plantName = entry.getPlantName();
+            this.timestamp = entry.getTimestampMillis();
+            this.id = entry.getId();
+            this.bound = 0;
+            this.isPublic = entry.isPublic();
+            this.generation = ValueKey.of(entry.getGeneration(), id);
+            this.efficiency = ValueKey.of(entry.getEfficiency(), id);
+            this.utilization = ValueKey.of(entry.getCapacityUtilization(), id);
+            this.revenue = entry.getRevenue() != null && !entry.getRevenue().isNaN() ? entry.getRevenue() : 0.0;
+        }
+
+        private EntryKey(long timestamp, int bound) {
+            this(timestamp, null, bound);
+        }
+
+        private EntryKey(long timestamp, String id) {
+            this(timestamp, id, 0);
+        }
+
+        private EntryKey(long timestamp, String id, int bound) {
+            this.userId = null;
+            this.plantName = null;
+            this.timestamp = timestamp;
+            this.id = id;
+            this.bound = bound;
+            this.isPublic = false;
+            this.generation = null;
+            this.efficiency = null;
+            this.utilization = null;
+            this.revenue = 0.0;
+        }
+
+        static EntryKey of(SolarDataEntry entry) {
+            return new EntryKey(entry);
+        }
+
+        /**
+         * Key of the entry a pagination cursor points at, which need not still exist.
+         */
+        static EntryKey at(EntryCursor cursor) {
+            return new EntryKey(cursor.getTimestampMillis(), cursor.getId());
+        }
+
+        static EntryKey before(long timestamp) {
+            return new EntryKey(timestamp, -1);
+        }
+
+        static EntryKey after(long timestamp) {
+            return new EntryKey(timestamp, 1);
+        }
+
+        @Override
+        public int compareTo(EntryKey other) {
+            int cmp = Long.compare(other.timestamp, timestamp);
+            if (cmp != 0) {
+                return cmp;
+            }
+            if (bound != 0 || other.bound != 0) {
+                return Integer.compare(bound, other.bound);
+            }
+            return id.compareTo(other.id);
+        }
+    }
+
+    /**
+     * Sort key for the value indexes: ascending value, then id.
+     * Bound keys (id == null) sort before or after every entry sharing their value.
+     */
+    private static final class ValueKey implements Comparable<ValueKey> {
+        final double value;
+        final String id;
+        final int bound;
+
+        ValueKey(double value, String id, int bound) {
+            // Adding zero folds -0.0 into 0.0, which Double.compare would otherwise order first
+            this.value = value + 0.0;
+            this.id = id;
+            this.bound = bound;
+        }
+
+        static ValueKey of(Double value, String id) {
+            return value != null && !value.isNaN() ? new ValueKey(value, id, 0) : null;
+        }
+
+        static ValueKey lowest(double value) {
+            return new ValueKey(value, null, -1);
+        }
+
+        static ValueKey highest(double value) {
+            return new ValueKey(value, null, 1);
+        }
+
+        @Override
+        public int compareTo(ValueKey other) {
+            int cmp = Double.compare(value, other.value);
+            if (cmp != 0) {
+                return cmp;
+            }
+            if (bound != 0 || other.bound != 0) {
+                return Integer.compare(bound, other.bound);
+            }
+            return id.compareTo(other.id);
+        }
+    }
+
+    /**
+     * A single user's entries ordered newest first, with a maintained count and running
+     * aggregates, so summarizing a user does not depend on how many entries they have.
+     */
+    private static final class UserEntries {
+        final ConcurrentSkipListMap<EntryKey, SolarDataEntry> byTime = new ConcurrentSkipListMap<>();
+        final AtomicLong count = new AtomicLong();
+
+        // Aggregates of the filed keys, guarded by this; missing values count as zero
+        private double totalGeneration;
+        private double totalEfficiency;
+        private double totalRevenue;
+        // Generation values, kept sorted so the maximum survives deletes
+        private final TreeSet<ValueKey> generations = new TreeSet<>();
+        private long missingGenerations;
+
+        synchronized void added(EntryKey key) {
+            count.incrementAndGet();
+            totalEfficiency += valueOf(key.efficiency);
+            totalRevenue += key.revenue;
+            if (key.generation != null) {
+                totalGeneration += key.generation.value;
+                generations.add(key.generation);
+            } else {
+                missingGenerations++;
+            }
+        }
+
+        synchronized void removed(EntryKey key) {
+            if (count.decrementAndGet() == 0) {
+                // Start over rather than carry rounding residue from the subtractions
+                totalGeneration = 0.0;
+                totalEfficiency = 0.0;
+                totalRevenue = 0.0;
+                generations.clear();
+                missingGenerations = 0;
+                return;
+            }
+            totalEfficiency -= valueOf(key.efficiency);
+            totalRevenue -= key.revenue;
+            if (key.generation != null) {
+                totalGeneration -= key.generation.value;
+                generations.remove(key.generation);
+            } else {
+                missingGenerations--;
+            }
+        }
+
+        synchronized EntryStatistics summarize() {
+            long entryCount = count.get();
+            if (entryCount == 0) {
+                return new EntryStatistics.Builder().build();
+            }
+            double maxGeneration = generations.isEmpty() ? 0.0 : generations.last().value;
+            if (missingGenerations > 0) {
+                maxGeneration = Math.max(maxGeneration, 0.0);
+            }
+            Map.Entry<EntryKey, SolarDataEntry> newest = byTime.firstEntry();
+            return new EntryStatistics(entryCount, totalGeneration, totalEfficiency, maxGeneration,
+                    totalRevenue, newest != null ? Timestamps.fromEpochMillis(newest.getKey().timestamp) : null);
+        }
+
+        private static double valueOf(ValueKey key) {
+            return key != null ? key.value : 0.0;
+        }
+    }
+
+    /**
+     * One hour of entries ordered newest first, with statistics used to prune queries.
+     */
+    private static final class TimePartition {
+        final long start;
+        final long end;
+        final ConcurrentSkipListMap<EntryKey, SolarDataEntry> byTime = new ConcurrentSkipListMap<>();
+        final AtomicLong count = new AtomicLong();
+        final DoubleAccumulator minGeneration = new DoubleAccumulator(Math::min, Double.POSITIVE_INFINITY);
+        final DoubleAccumulator maxGeneration = new DoubleAccumulator(Math::max, Double.NEGATIVE_INFINITY);
+
+        // Set once the partition is taken out of the partition map; saves then file elsewhere
+        volatile boolean detached;
+
+        TimePartition(long start) {
+            this.start = start;
+            this.end = start + PARTITION_MILLIS;
+        }
+
+        boolean isWithin(long rangeStart, long rangeEnd) {
+            return rangeStart < start && end <= rangeEnd;
+        }
+
+        PartitionStatistics toStatistics() {
+            long entryCount = count.get();
+            return new PartitionStatistics(Timestamps.fromEpochMillis(start), Timestamps.fromEpochMillis(end), entryCount,
+                    entryCount > 0 ? minGeneration.get() : null,
+                    entryCount > 0 ? maxGeneration.get() : null);
+        }
+    }
+
+    /**
+     * Load the latest snapshot and replay the write-ahead log written after it.
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        WriteAheadLog entryLog = logFactory != null ? logFactory.open(logName) : null;
+        if (entryLog == null) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        SnapshotFile.Checkpoint checkpoint = SnapshotFile.read(logFactory.snapshotPath(logName),
+                LogRecords::readEntry, this::store, Runtime.getRuntime().availableProcessors());
+        long snapshotMillis = System.currentTimeMillis() - started;
+
+        // Replay before publishing the log, so replayed removals are not logged again
+        long records = entryLog.replay(checkpoint != null ? checkpoint.getFirstLogSegment() : 0, (type, payload) -> {
+            switch (type) {
+                case LogRecords.SAVE:
+                    store(LogRecords.readEntry(payload));
+                    break;
+                case LogRecords.DELETE:
+                    remove(LogRecords.readId(payload));
+                    break;
+                case LogRecords.DELETE_ALL:
+                    clear();
+                    break;
+                default:
+                    throw new IOException("Unknown entry log record type " + type);
+            }
+        });
+        logger.info("Recovered {} solar data entries in {} ms ({} from snapshot in {} ms, {} log records replayed)",
+                entries.size(), System.currentTimeMillis() - started,
+                checkpoint != null ? checkpoint.getValueCount() : 0, snapshotMillis, records);
+        log = entryLog;
+    }
+
+    /**
+     * Write a snapshot of all entries and drop the log segments it makes redundant.
+     * Writers are only paused for the log rotation; the snapshot itself is taken from
+     * a weakly consistent iteration, and any write it misses is in the new segment.
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (log == null) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        long firstSegment;
+        checkpointLock.writeLock().lock();
+        try {
+            firstSegment = log.rotate();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        long written = SnapshotFile.write(logFactory.snapshotPath(logName), firstSegment,
+                entries.values(), LogRecords::writeEntry);
+        log.deleteSegmentsBefore(firstSegment);
+        logger.info("Wrote snapshot of {} solar data entries in {} ms",
+                written, System.currentTimeMillis() - started);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
     public SolarDataEntry save(SolarDataEntry entry) {
+        replace(entry);
+        return entry;
+    }
+
+    /**
+     * Save an entry and report whether it replaced a stored version with the same id.
+     */
+    boolean replace(SolarDataEntry entry) {
         if (entry.getId() == null) {
-            entry = new SolarDataEntry(entry.getUserId(), entry.getPlantName(),
-                    entry.getGeneration(), entry.getCapacity(), entry.getEfficiency());
-            entry.setTemperature(entry.getTemperature());
-            entry.setIrradiance(entry.getIrradiance());
-            entry.setRevenue(entry.getRevenue());
-            entry.setNotes(entry.getNotes());
-            entry.setPublic(entry.isPublic());
+            entry.setId(idGenerator.nextId());
         }
 
-        entries.put(entry.getId(), entry);
+        byte[] record = log != null ? LogRecords.encode(out -> LogRecords.writeEntry(out, entry)) : null;
+        long[] logOffset = new long[1];
+        boolean[] replaced = new boolean[1];
+        checkpointLock.readLock().lock();
+        try {
+            entries.compute(entry.getId(), (id, previous) -> {
+                // Log while holding the id's slot so log order matches apply order per entry
+                logOffset[0] = append(LogRecords.SAVE, record);
+                replaced[0] = previous != null;
+                unindex(id);
+                index(entry);
+                return entry;
+            });
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        awaitDurable(logOffset[0]);
         logger.debug("Saved solar data entry: {} for user: {}", entry.getId(), entry.getUserId());
-        return entry;
+        return replaced[0];
+    }
+
+    /**
+     * Save a batch of entries: records are encoded up front, the checkpoint lock is taken once
+     * and a single wait on the log makes the whole batch durable, sharing one fsync.
+     */
+    public List<SolarDataEntry> saveAll(Collection<SolarDataEntry> batch) {
+        List<SolarDataEntry> toSave = new ArrayList<>(batch);
+        replaceAll(toSave);
+        return toSave;
+    }
+
+    /**
+     * Save a batch as {@link #saveAll} does and report, per entry, whether it replaced a
+     * stored version with the same id.
+     */
+    boolean[] replaceAll(List<SolarDataEntry> toSave) {
+        byte[][] records = new byte[toSave.size()][];
+        for (int i = 0; i < records.length; i++) {
+            SolarDataEntry entry = toSave.get(i);
+            if (entry.getId() == null) {
+                entry.setId(idGenerator.nextId());
+            }
+            records[i] = log != null ? LogRecords.encode(out -> LogRecords.writeEntry(out, entry)) : null;
+        }
+
+        long[] logOffset = new long[1];
+        boolean[] replaced = new boolean[records.length];
+        checkpointLock.readLock().lock();
+        try {
+            for (int i = 0; i < records.length; i++) {
+                byte[] record = records[i];
+                SolarDataEntry entry = toSave.get(i);
+                int index = i;
+                entries.compute(entry.getId(), (id, previous) -> {
+                    logOffset[0] = Math.max(logOffset[0], append(LogRecords.SAVE, record));
+                    replaced[index] = previous != null;
+                    unindex(id);
+                    index(entry);
+                    return entry;
+                });
+            }
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        awaitDurable(logOffset[0]);
+        logger.debug("Saved batch of {} solar data entries", toSave.size());
+        return replaced;
     }
 
     public Optional<SolarDataEntry> findById(String id) {
         return Optional.ofNullable(entries.get(id));
     }
 
+    public void forEachEntry(Consumer<SolarDataEntry> action) {
+        entries.values().forEach(action);
+    }
+
     public List<SolarDataEntry> findByUserIdOrderByTimestampDesc(String userId) {
-        return entries.values().stream()
-                .filter(entry -> userId.equals(entry.getUserId()))
-                .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-                .collect(Collectors.toList());
+        UserEntries userEntries = userIndex.get(userId);
+        if (userEntries == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(userEntries.byTime.values());
     }
 
     public List<SolarDataEntry> findByIsPublicTrueOrderByTimestampDesc() {
-        return entries.values().stream()
-                .filter(SolarDataEntry::isPublic)
-                .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-                .collect(Collectors.toList());
+        return new ArrayList<>(publicFeed.values());
     }
 
     public List<SolarDataEntry> findTop10ByUserIdOrderByTimestampDesc(String userId) {
-        return findByUserIdOrderByTimestampDesc(userId).stream()
-                .limit(10)
-                .collect(Collectors.toList());
+        return findTopKByUserIdOrderByTimestampDesc(userId, 10);
     }
 
     public List<SolarDataEntry> findTop10ByIsPublicTrueOrderByTimestampDesc() {
-        return findByIsPublicTrueOrderByTimestampDesc().stream()
-                .limit(10)
-                .collect(Collectors.toList());
+        return findTopKByIsPublicTrueOrderByTimestampDesc(10);
+    }
+
+    /**
+     * Newest k entries of a user, read straight off the per-user index.
+     */
+    public List<SolarDataEntry> findTopKByUserIdOrderByTimestampDesc(String userId, int k) {
+        UserEntries userEntries = userIndex.get(userId);
+        if (userEntries == null) {
+            return new ArrayList<>();
+        }
+        return TopK.first(userEntries.byTime.values(), entry -> true, k);
+    }
+
+    /**
+     * Newest k public entries, read straight off the public feed.
+     */
+    public List<SolarDataEntry> findTopKByIsPublicTrueOrderByTimestampDesc(int k) {
+        return TopK.first(publicFeed.values(), entry -> true, k);
+    }
+
+    public EntryPage findPageByUserIdOrderByTimestampDesc(String userId, EntryCursor after, int limit) {
+        UserEntries userEntries = userIndex.get(userId);
+        if (userEntries == null) {
+            return new EntryPage(new ArrayList<>(), null);
+        }
+        return page(userEntries.byTime, after, limit);
+    }
+
+    public EntryPage findPageByIsPublicTrueOrderByTimestampDesc(EntryCursor after, int limit) {
+        return page(publicFeed, after, limit);
+    }
+
+    /**
+     * The k best entries matching the filter according to the given order.
+     */
+    public List<SolarDataEntry> findTopK(Predicate<SolarDataEntry> filter,
+                                         Comparator<SolarDataEntry> order, int k) {
+        return TopK.select(entries.values(), filter, order, k);
     }
 
     public List<SolarDataEntry> findByPlantNameContainingIgnoreCase(String plantName) {
-        return entries.values().stream()
-                .filter(entry -> entry.getPlantName() != null &&
-                        entry.getPlantName().toLowerCase().contains(plantName.toLowerCase()))
-                .collect(Collectors.toList());
+        List<SolarDataEntry> result = new ArrayList<>();
+        for (String name : plantNames.search(plantName)) {
+            Map<String, SolarDataEntry> plantEntries = plantIndex.get(name);
+            if (plantEntries != null) {
+                result.addAll(plantEntries.values());
+            }
+        }
+        return result;
+    }
+
+    public Map<String, Long> countByPlantNameContainingIgnoreCase(String fragment) {
+        Map<String, Long> counts = new HashMap<>();
+        for (String name : plantNames.search(fragment)) {
+            Map<String, SolarDataEntry> plantEntries = plantIndex.get(name);
+            if (plantEntries != null && !plantEntries.isEmpty()) {
+                counts.put(name, (long) plantEntries.size());
+            }
+        }
+        return counts;
     }
 
     public List<SolarDataEntry> findByTimestampBetween(LocalDateTime start, LocalDateTime end) {
-        return entries.values().stream()
-                .filter(entry -> entry.getTimestamp().isAfter(start) &&
-                        entry.getTimestamp().isBefore(end))
-                .collect(Collectors.toList());
+        List<SolarDataEntry> result = new ArrayList<>();
+        forEachByTimestampBetween(start, end, result::add);
+        return result;
+    }
+
+    /**
+     * Visit the entries strictly between start and end, newest first, straight off the
+     * overlapping partitions.
+     */
+    public void forEachByTimestampBetween(LocalDateTime startTime, LocalDateTime endTime,
+                                          Consumer<SolarDataEntry> action) {
+        long start = Timestamps.toEpochMillis(startTime);
+        long end = Timestamps.toEpochMillis(endTime);
+        if (start >= end) {
+            return;
+        }
+        for (TimePartition partition : overlappingPartitions(start, end)) {
+            if (partition.isWithin(start, end)) {
+                partition.byTime.values().forEach(action);
+            } else {
+                partition.byTime
+                        .subMap(EntryKey.after(end), false, EntryKey.before(start), false)
+                        .values()
+                        .forEach(action);
+            }
+        }
+    }
+
+    public void forEachByUserIdOrderByTimestampDesc(String userId, Consumer<SolarDataEntry> action) {
+        UserEntries userEntries = userIndex.get(userId);
+        if (userEntries != null) {
+            userEntries.byTime.values().forEach(action);
+        }
     }
 
     public List<SolarDataEntry> findByUserIdAndTimestampBetweenOrderByTimestampDesc(
             String userId, LocalDateTime start, LocalDateTime end) {
-        return entries.values().stream()
-                .filter(entry -> userId.equals(entry.getUserId()))
-                .filter(entry -> entry.getTimestamp().isAfter(start) &&
-                        entry.getTimestamp().isBefore(end))
-                .sorted((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()))
-                .collect(Collectors.toList());
+        UserEntries userEntries = userIndex.get(userId);
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        if (userEntries == null || from >= to) {
+            return new ArrayList<>();
+        }
+        // Newest first, so the range runs from just below 'end' down to just above 'start'
+        return new ArrayList<>(userEntries.byTime
+                .subMap(EntryKey.after(to), false, EntryKey.before(from), false)
+                .values());
     }
 
     public List<SolarDataEntry> findByGenerationGreaterThanEqual(Double threshold) {
-        return entries.values().stream()
-                .filter(entry -> entry.getGeneration() != null &&
-                        entry.getGeneration() >= threshold)
-                .collect(Collectors.toList());
+        return new ArrayList<>(generationIndex.tailMap(ValueKey.lowest(threshold)).values());
     }
 
     public List<SolarDataEntry> findByEfficiencyGreaterThanEqual(Double efficiency) {
-        return entries.values().stream()
-                .filter(entry -> entry.getEfficiency() != null &&
-                        entry.getEfficiency() >= efficiency)
-                .collect(Collectors.toList());
+        return new ArrayList<>(efficiencyIndex.tailMap(ValueKey.lowest(efficiency)).values());
+    }
+
+    public List<SolarDataEntry> findByCapacityUtilizationGreaterThanEqual(Double utilization) {
+        return new ArrayList<>(utilizationIndex.tailMap(ValueKey.lowest(utilization)).values());
+    }
+
+    public List<SolarDataEntry> findByGenerationBetween(Double min, Double max) {
+        return valueRange(generationIndex, min, max);
+    }
+
+    public List<SolarDataEntry> findByEfficiencyBetween(Double min, Double max) {
+        return valueRange(efficiencyIndex, min, max);
+    }
+
+    /**
+     * Walks the efficiency index from the top down, so only entries at or above the
+     * threshold are visited and the walk stops once k entries pass the filter.
+     */
+    public List<SolarDataEntry> findTopKByEfficiencyGreaterThanEqualOrderByEfficiencyDesc(
+            double minEfficiency, Predicate<SolarDataEntry> filter, int k) {
+        List<SolarDataEntry> result = new ArrayList<>(Math.min(k, 64));
+        for (SolarDataEntry entry : efficiencyIndex.tailMap(ValueKey.lowest(minEfficiency)).descendingMap().values()) {
+            if (result.size() >= k) {
+                break;
+            }
+            if (filter.test(entry)) {
+                result.add(entry);
+            }
+        }
+        return result;
     }
 
     public List<SolarDataEntry> findGenerationByUserId(String userId) {
-        return entries.values().stream()
-                .filter(entry -> userId.equals(entry.getUserId()))
-                .collect(Collectors.toList());
+        return findByUserIdOrderByTimestampDesc(userId);
     }
 
     public long countByUserId(String userId) {
-        return entries.values().stream()
-                .filter(entry -> userId.equals(entry.getUserId()))
-                .count();
+        UserEntries userEntries = userIndex.get(userId);
+        return userEntries != null ? userEntries.count.get() : 0;
     }
 
     public List<SolarDataEntry> findRecentEntries(LocalDateTime sinceDate) {
-        return entries.values().stream()
-                .filter(entry -> entry.getTimestamp().isAfter(sinceDate))
-                .collect(Collectors.toList());
+        return findByTimestampBetween(sinceDate, LocalDateTime.MAX);
+    }
+
+    public EntryStatistics summarizeByUserId(String userId) {
+        UserEntries userEntries = userIndex.get(userId);
+        return userEntries != null ? userEntries.summarize() : new EntryStatistics.Builder().build();
     }
 
     public void deleteByUserIdAndTimestampBefore(String userId, LocalDateTime keepAfter) {
-        entries.entrySet().removeIf(entry ->
-                userId.equals(entry.getValue().getUserId()) &&
-                        entry.getValue().getTimestamp().isBefore(keepAfter));
+        UserEntries userEntries = userIndex.get(userId);
+        if (userEntries != null) {
+            // Oldest entries sit at the tail of the newest-first index
+            List<SolarDataEntry> expired = new ArrayList<>(
+                    userEntries.byTime.tailMap(EntryKey.after(Timestamps.toEpochMillis(keepAfter)), false).values());
+            for (SolarDataEntry entry : expired) {
+                remove(entry.getId());
+            }
+            awaitDurable(log != null ? log.size() : 0);
+        }
         logger.debug("Cleaned up old entries for user: {}", userId);
     }
 
+    /**
+     * Evict a user's oldest entries beyond the limit. They sit at the tail of the user's
+     * newest-first index, so each eviction is a removal at the end of the skip list.
+     *
+     * @return number of entries removed
+     */
+    public long deleteOldestByUserIdBeyond(String userId, int maxEntries) {
+        UserEntries userEntries = userIndex.get(userId);
+        if (userEntries == null) {
+            return 0;
+        }
+        long removedCount = 0;
+        while (userEntries.count.get() > maxEntries) {
+            Map.Entry<EntryKey, SolarDataEntry> oldest = userEntries.byTime.lastEntry();
+            if (oldest == null) {
+                break;
+            }
+            if (remove(oldest.getKey().id) != null) {
+                removedCount++;
+            }
+        }
+        if (removedCount > 0) {
+            awaitDurable(log != null ? log.size() : 0);
+            logger.debug("Evicted {} oldest entries of user: {}", removedCount, userId);
+        }
+        return removedCount;
+    }
+
+    public Set<String> findDistinctUserIds() {
+        Set<String> userIds = new HashSet<>();
+        userIndex.forEach((userId, userEntries) -> {
+            if (userEntries.count.get() > 0) {
+                userIds.add(userId);
+            }
+        });
+        return userIds;
+    }
+
+    /**
+     * Drop every entry older than the cutoff. Partitions that end before the cutoff are
+     * detached as a whole; only the partition straddling the cutoff is filtered entry by entry.
+     *
+     * @return number of entries removed
+     */
+    public long deleteByTimestampBefore(LocalDateTime cutoff) {
+        long removedCount = 0;
+        long cutoffMillis = Timestamps.toEpochMillis(cutoff);
+        long boundary = partitionStart(cutoffMillis);
+
+        ConcurrentNavigableMap<Long, TimePartition> expired = partitions.headMap(boundary, false);
+        for (Long start : new ArrayList<>(expired.keySet())) {
+            TimePartition partition = partitions.remove(start);
+            if (partition == null) {
+                continue;
+            }
+            // Flag before reading the keys: a concurrent save either sees the flag and files
+            // its entry in a new partition, or filed it early enough to be seen here
+            partition.detached = true;
+            for (EntryKey key : partition.byTime.keySet()) {
+                if (remove(key.id) != null) {
+                    removedCount++;
+                }
+            }
+        }
+
+        TimePartition straddling = partitions.get(boundary);
+        if (straddling != null) {
+            List<EntryKey> older = new ArrayList<>(
+                    straddling.byTime.tailMap(EntryKey.after(cutoffMillis), false).keySet());
+            for (EntryKey key : older) {
+                if (remove(key.id) != null) {
+                    removedCount++;
+                }
+            }
+        }
+
+        awaitDurable(log != null ? log.size() : 0);
+        logger.debug("Removed {} entries older than {}", removedCount, cutoff);
+        return removedCount;
+    }
+
+    /**
+     * Statistics for each time partition, oldest first.
+     */
+    public List<PartitionStatistics> getPartitionStatistics() {
+        return partitions.values().stream()
+                .map(TimePartition::toStatistics)
+                .collect(Collectors.toList());
+    }
+
+    public Map<String, Object> getStorageStatistics() {
+        long entryCount = entries.size();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", "in-memory");
+        stats.put("entries", entryCount);
+        stats.put("users", userIndex.size());
+        stats.put("partitions", partitions.size());
+        stats.put("estimatedBytes", entryCount * ESTIMATED_BYTES_PER_ENTRY);
+        stats.put("estimatedBytesPerEntry", ESTIMATED_BYTES_PER_ENTRY);
+        stats.put("estimatedBytesBasis", "fixed per-entry estimate");
+        return stats;
+    }
+
     public void deleteById(String id) {
-        SolarDataEntry removed = entries.remove(id);
+        SolarDataEntry removed = remove(id);
         if (removed != null) {
+            awaitDurable(log != null ? log.size() : 0);
             logger.debug("Deleted solar data entry: {} for user: {}",
                     removed.getId(), removed.getUserId());
         }
@@ -146,7 +816,224 @@ public class InMemorySolarDataEntryRepository {
     }
 
     public void deleteAll() {
-        entries.clear();
+        long logOffset;
+        checkpointLock.readLock().lock();
+        try {
+            logOffset = append(LogRecords.DELETE_ALL, LogRecords.NO_PAYLOAD);
+            clear();
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        awaitDurable(logOffset);
         logger.info("Cleared all solar data entries from repository");
     }
-}
\ No newline at end of file
+
+    /**
+     * Apply a replayed save without logging it again.
+     */
+    private void store(SolarDataEntry entry) {
+        entries.compute(entry.getId(), (id, previous) -> {
+            unindex(id);
+            index(entry);
+            return entry;
+        });
+    }
+
+    private void clear() {
+        entries.keySet().forEach(id -> entries.computeIfPresent(id, (key, existing) -> {
+            unindex(key);
+            return null;
+        }));
+        for (TimePartition partition : partitions.values()) {
+            if (partition.count.get() == 0 && partitions.remove(partition.start, partition)) {
+                partition.detached = true;
+                // A save may have filed an entry just before the partition was detached
+                for (EntryKey key : partition.byTime.keySet()) {
+                    entries.computeIfPresent(key.id, (id, entry) -> {
+                        unindex(id);
+                        index(entry);
+                        return entry;
+                    });
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove an entry, logging the removal if it was present.
+     */
+    private SolarDataEntry remove(String id) {
+        SolarDataEntry[] removed = new SolarDataEntry[1];
+        checkpointLock.readLock().lock();
+        try {
+            entries.computeIfPresent(id, (key, existing) -> {
+                append(LogRecords.DELETE, LogRecords.delete(key));
+                unindex(key);
+                removed[0] = existing;
+                return null;
+            });
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        return removed[0];
+    }
+
+    /**
+     * File an entry under its user. Must run while holding the entry's slot in {@code entries}.
+     */
+    private void index(SolarDataEntry entry) {
+        entry.setUserId(userIdPool.acquire(entry.getUserId()));
+        entry.setPlantName(plantNamePool.acquire(entry.getPlantName()));
+        EntryKey key = EntryKey.of(entry);
+        indexKeys.put(key.id, key);
+
+        if (key.userId != null) {
+            UserEntries userEntries = userIndex.computeIfAbsent(key.userId, k -> new UserEntries());
+            if (userEntries.byTime.put(key, entry) == null) {
+                userEntries.added(key);
+            }
+        }
+
+        if (key.isPublic) {
+            publicFeed.put(key, entry);
+        }
+        if (key.generation != null) {
+            generationIndex.put(key.generation, entry);
+        }
+        if (key.efficiency != null) {
+            efficiencyIndex.put(key.efficiency, entry);
+        }
+        if (key.utilization != null) {
+            utilizationIndex.put(key.utilization, entry);
+        }
+
+        if (key.plantName != null) {
+            plantIndex.compute(key.plantName, (name, plantEntries) -> {
+                if (plantEntries == null) {
+                    plantEntries = new ConcurrentHashMap<>();
+                    plantNames.add(name);
+                }
+                plantEntries.put(key.id, entry);
+                return plantEntries;
+            });
+        }
+
+        TimePartition partition;
+        while (true) {
+            partition = partitions.computeIfAbsent(partitionStart(key.timestamp), TimePartition::new);
+            if (partition.byTime.put(key, entry) == null) {
+                partition.count.incrementAndGet();
+            }
+            if (!partition.detached) {
+                break;
+            }
+            // Retention or clearing detached the partition meanwhile and may not see the entry
+            if (partition.byTime.remove(key) != null) {
+                partition.count.decrementAndGet();
+            }
+        }
+        if (entry.getGeneration() != null) {
+            partition.minGeneration.accumulate(entry.getGeneration());
+            partition.maxGeneration.accumulate(entry.getGeneration());
+        }
+    }
+
+    /**
+     * Remove whatever was indexed for the given id. Must run while holding its slot in {@code entries}.
+     */
+    private void unindex(String id) {
+        EntryKey key = indexKeys.remove(id);
+        if (key == null) {
+            return;
+        }
+        userIdPool.release(key.userId);
+        plantNamePool.release(key.plantName);
+        if (key.userId != null) {
+            UserEntries userEntries = userIndex.get(key.userId);
+            if (userEntries != null && userEntries.byTime.remove(key) != null) {
+                userEntries.removed(key);
+            }
+        }
+        if (key.isPublic) {
+            publicFeed.remove(key);
+        }
+        if (key.generation != null) {
+            generationIndex.remove(key.generation);
+        }
+        if (key.efficiency != null) {
+            efficiencyIndex.remove(key.efficiency);
+        }
+        if (key.utilization != null) {
+            utilizationIndex.remove(key.utilization);
+        }
+        if (key.plantName != null) {
+            plantIndex.computeIfPresent(key.plantName, (name, plantEntries) -> {
+                plantEntries.remove(key.id);
+                if (plantEntries.isEmpty()) {
+                    plantNames.remove(name);
+                    return null;
+                }
+                return plantEntries;
+            });
+        }
+        TimePartition partition = partitions.get(partitionStart(key.timestamp));
+        if (partition != null && partition.byTime.remove(key) != null) {
+            partition.count.decrementAndGet();
+        }
+    }
+
+    /**
+     * Append a record to the write-ahead log, if enabled.
+     *
+     * @return the log offset to wait for, or 0 when there is no log
+     */
+    private long append(byte type, byte[] payload) {
+        return log != null ? log.append(type, payload) : 0;
+    }
+
+    private void awaitDurable(long logOffset) {
+        if (log != null) {
+            log.awaitDurable(logOffset);
+        }
+    }
+
+    /**
+     * Seek past the cursor in a newest-first index and read one page, plus one entry to
+     * tell whether another page follows.
+     */
+    private static EntryPage page(ConcurrentSkipListMap<EntryKey, SolarDataEntry> index, EntryCursor after, int limit) {
+        Collection<SolarDataEntry> remaining = after != null
+                ? index.tailMap(EntryKey.at(after), false).values()
+                : index.values();
+        return EntryPage.of(TopK.first(remaining, entry -> true, limit + 1), limit);
+    }
+
+    private static List<SolarDataEntry> valueRange(ConcurrentSkipListMap<ValueKey, SolarDataEntry> index,
+                                                   double min, double max) {
+        if (min > max) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(index.subMap(ValueKey.lowest(min), ValueKey.highest(max)).values());
+    }
+
+    /**
+     * Partitions that may hold entries strictly between start and end, newest first.
+     */
+    private Collection<TimePartition> overlappingPartitions(long start, long end) {
+        return partitions
+                .subMap(partitionStart(start), true, end, false)
+                .descendingMap()
+                .values();
+    }
+
+    /**
+     * Start of the partition holding the given epoch millisecond.
+     */
+    private static long partitionStart(long timestamp) {
+        if (timestamp < Long.MIN_VALUE + PARTITION_MILLIS) {
+            // Saturated lower range bound; flooring it would overflow
+            return Long.MIN_VALUE;
+        }
+        return Math.floorDiv(timestamp, PARTITION_MILLIS) * PARTITION_MILLIS;
+    }
+}
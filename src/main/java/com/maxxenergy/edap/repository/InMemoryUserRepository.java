@@ -1,26 +1,109 @@
 package com.maxxenergy.edap.repository;
 
 import com.maxxenergy.edap.model.User;
+import com.maxxenergy.edap.storage.SnapshotFile;
+import com.maxxenergy.edap.storage.WriteAheadLog;
+import com.maxxenergy.edap.storage.WriteAheadLogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Repository;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
 import java.time.LocalDateTime;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
- * In-memory repository for User entities.
+ * In-memory repository for User entities (edap.storage.user-type=in-memory, the default).
  * Provides thread-safe data access operations using ConcurrentHashMap.
+ * Writes are recorded in a write-ahead log (when enabled); startup loads the latest
+ * snapshot and replays only the log written since.
  */
 @Repository
-public class InMemoryUserRepository {
+@ConditionalOnProperty(name = "edap.storage.user-type", havingValue = "in-memory", matchIfMissing = true)
+public class InMemoryUserRepository implements UserRepository {
 
     private static final Logger logger = LoggerFactory.getLogger(InMemoryUserRepository.class);
 
     private final Map<String, User> users = new ConcurrentHashMap<>();
     private final Map<String, User> emailIndex = new ConcurrentHashMap<>();
 
+    @Autowired(required = false)
+    private WriteAheadLogFactory logFactory;
+
+    // Null when write-ahead logging is disabled
+    private WriteAheadLog log;
+
+    // Writers hold the read side from logging a change until it is applied
+    private final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+
+    /**
+     * Load the latest snapshot and replay the write-ahead log written after it.
+     */
+    @PostConstruct
+    public void recover() throws IOException {
+        WriteAheadLog userLog = logFactory != null ? logFactory.open("users") : null;
+        if (userLog == null) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        SnapshotFile.Checkpoint checkpoint = SnapshotFile.read(logFactory.snapshotPath("users"),
+                LogRecords::readUser, this::store, Runtime.getRuntime().availableProcessors());
+        long records = userLog.replay(checkpoint != null ? checkpoint.getFirstLogSegment() : 0, (type, payload) -> {
+            switch (type) {
+                case LogRecords.SAVE:
+                    store(LogRecords.readUser(payload));
+                    break;
+                case LogRecords.DELETE:
+                    remove(LogRecords.readId(payload));
+                    break;
+                case LogRecords.DELETE_ALL:
+                    users.clear();
+                    emailIndex.clear();
+                    break;
+                default:
+                    throw new IOException("Unknown user log record type " + type);
+            }
+        });
+        logger.info("Recovered {} users in {} ms ({} from snapshot, {} log records replayed)",
+                users.size(), System.currentTimeMillis() - started,
+                checkpoint != null ? checkpoint.getValueCount() : 0, records);
+        log = userLog;
+    }
+
+    /**
+     * Write a snapshot of all users and drop the log segments it makes redundant.
+     */
+    public synchronized void checkpoint() throws IOException {
+        if (log == null) {
+            return;
+        }
+        long firstSegment;
+        checkpointLock.writeLock().lock();
+        try {
+            firstSegment = log.rotate();
+        } finally {
+            checkpointLock.writeLock().unlock();
+        }
+        long written = SnapshotFile.write(logFactory.snapshotPath("users"), firstSegment,
+                users.values(), LogRecords::writeUser);
+        log.deleteSegmentsBefore(firstSegment);
+        logger.info("Wrote snapshot of {} users", written);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+    }
+
     public User save(User user) {
         if (user.getId() == null) {
             // Create new user with generated ID
@@ -32,8 +115,25 @@ public class InMemoryUserRepository {
         }
         user.setUpdatedAt(LocalDateTime.now());
 
-        users.put(user.getId(), user);
-        emailIndex.put(user.getEmail().toLowerCase(), user);
+        User toSave = user;
+        if (log != null) {
+            byte[] record = LogRecords.encode(out -> LogRecords.writeUser(out, toSave));
+            long[] logOffset = new long[1];
+            checkpointLock.readLock().lock();
+            try {
+                users.compute(user.getId(), (id, previous) -> {
+                    // Log while holding the id's slot so log order matches apply order per user
+                    logOffset[0] = log.append(LogRecords.SAVE, record);
+                    return toSave;
+                });
+            } finally {
+                checkpointLock.readLock().unlock();
+            }
+            emailIndex.put(user.getEmail().toLowerCase(), user);
+            log.awaitDurable(logOffset[0]);
+        } else {
+            store(user);
+        }
 
         logger.debug("Saved user: {} ({})", user.getName(), user.getEmail());
         return user;
@@ -95,13 +195,19 @@ public class InMemoryUserRepository {
     }
 
     public void deleteById(String id) {
-        User user = users.remove(id);
+        User user = remove(id);
         if (user != null) {
-            emailIndex.remove(user.getEmail().toLowerCase());
+            if (log != null) {
+                log.awaitDurable(log.size());
+            }
             logger.debug("Deleted user: {} ({})", user.getName(), user.getEmail());
         }
     }
 
+    public void forEachUser(Consumer<User> action) {
+        users.values().forEach(action);
+    }
+
     public List<User> findAll() {
         return new ArrayList<>(users.values());
     }
@@ -111,8 +217,47 @@ public class InMemoryUserRepository {
     }
 
     public void deleteAll() {
-        users.clear();
-        emailIndex.clear();
+        checkpointLock.readLock().lock();
+        try {
+            if (log != null) {
+                log.append(LogRecords.DELETE_ALL, LogRecords.NO_PAYLOAD);
+            }
+            users.clear();
+            emailIndex.clear();
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        if (log != null) {
+            log.awaitDurable(log.size());
+        }
         logger.info("Cleared all users from repository");
     }
-}
\ No newline at end of file
+
+    private void store(User user) {
+        users.put(user.getId(), user);
+        emailIndex.put(user.getEmail().toLowerCase(), user);
+    }
+
+    /**
+     * Remove a user, logging the removal if it was present.
+     */
+    private User remove(String id) {
+        User[] removed = new User[1];
+        checkpointLock.readLock().lock();
+        try {
+            users.computeIfPresent(id, (key, existing) -> {
+                if (log != null) {
+                    log.append(LogRecords.DELETE, LogRecords.delete(key));
+                }
+                removed[0] = existing;
+                return null;
+            });
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        if (removed[0] != null) {
+            emailIndex.remove(removed[0].getEmail().toLowerCase());
+        }
+        return removed[0];
+    }
+}
@@ -0,0 +1,141 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.model.User;
+import com.maxxenergy.edap.storage.RecordIO;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Binary encoding of repository writes for the write-ahead log.
+ */
+final class LogRecords {
+
+    static final byte SAVE = 1;
+    static final byte DELETE = 2;
+    static final byte DELETE_ALL = 3;
+
+    static final byte[] NO_PAYLOAD = new byte[0];
+
+    /**
+     * Writes one record payload.
+     */
+    @FunctionalInterface
+    interface PayloadWriter {
+        void write(DataOutput out) throws IOException;
+    }
+
+    private LogRecords() {
+    }
+
+    static byte[] encode(PayloadWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(160);
+        try {
+            writer.write(new DataOutputStream(bytes));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] delete(String id) {
+        return encode(out -> RecordIO.writeString(out, id));
+    }
+
+    static String readId(DataInput in) throws IOException {
+        return RecordIO.readString(in);
+    }
+
+    static void writeEntry(DataOutput out, SolarDataEntry entry) throws IOException {
+        RecordIO.writeString(out, entry.getId());
+        RecordIO.writeString(out, entry.getUserId());
+        RecordIO.writeString(out, entry.getPlantName());
+        RecordIO.writeDouble(out, entry.getGeneration());
+        RecordIO.writeDouble(out, entry.getCapacity());
+        RecordIO.writeDouble(out, entry.getEfficiency());
+        RecordIO.writeDouble(out, entry.getTemperature());
+        RecordIO.writeDouble(out, entry.getIrradiance());
+        RecordIO.writeDouble(out, entry.getRevenue());
+        RecordIO.writeDateTime(out, entry.getTimestamp());
+        out.writeBoolean(entry.isPublic());
+        RecordIO.writeString(out, entry.getNotes());
+    }
+
+    static SolarDataEntry readEntry(DataInput in) throws IOException {
+        SolarDataEntry entry = new SolarDataEntry();
+        entry.setId(RecordIO.readString(in));
+        entry.setUserId(RecordIO.readString(in));
+        entry.setPlantName(RecordIO.readString(in));
+        entry.setGeneration(RecordIO.readDouble(in));
+        entry.setCapacity(RecordIO.readDouble(in));
+        entry.setEfficiency(RecordIO.readDouble(in));
+        entry.setTemperature(RecordIO.readDouble(in));
+        entry.setIrradiance(RecordIO.readDouble(in));
+        entry.setRevenue(RecordIO.readDouble(in));
+        entry.setTimestamp(RecordIO.readDateTime(in));
+        entry.setPublic(in.readBoolean());
+        entry.setNotes(RecordIO.readString(in));
+        return entry;
+    }
+
+    static void writeUser(DataOutput out, User user) throws IOException {
+        RecordIO.writeString(out, user.getId());
+        RecordIO.writeString(out, user.getName());
+        RecordIO.writeString(out, user.getEmail());
+        RecordIO.writeString(out, user.getPasswordHash());
+        RecordIO.writeString(out, user.getRole());
+        RecordIO.writeString(out, user.getDepartment());
+        RecordIO.writeString(out, user.getLocation());
+        RecordIO.writeString(out, user.getPhoneNumber());
+        RecordIO.writeString(out, user.getJobTitle());
+        RecordIO.writeString(out, user.getBio());
+        RecordIO.writeString(out, user.getAvatarUrl());
+        out.writeBoolean(user.isEmailNotifications());
+        out.writeBoolean(user.isDarkMode());
+        RecordIO.writeString(out, user.getTimezone());
+        RecordIO.writeString(out, user.getLanguage());
+        out.writeBoolean(user.isActive());
+        out.writeBoolean(user.isEmailVerified());
+        out.writeBoolean(user.isRequiresPasswordChange());
+        out.writeInt(user.getFailedLoginAttempts());
+        RecordIO.writeDateTime(out, user.getAccountLockedUntil());
+        RecordIO.writeDateTime(out, user.getLastLogin());
+        RecordIO.writeDateTime(out, user.getCreatedAt());
+        RecordIO.writeDateTime(out, user.getLastPasswordChange());
+        RecordIO.writeDateTime(out, user.getUpdatedAt());
+    }
+
+    static User readUser(DataInput in) throws IOException {
+        User user = new User();
+        user.setId(RecordIO.readString(in));
+        user.setName(RecordIO.readString(in));
+        user.setEmail(RecordIO.readString(in));
+        user.setPasswordHash(RecordIO.readString(in));
+        user.setRole(RecordIO.readString(in));
+        user.setDepartment(RecordIO.readString(in));
+        user.setLocation(RecordIO.readString(in));
+        user.setPhoneNumber(RecordIO.readString(in));
+        user.setJobTitle(RecordIO.readString(in));
+        user.setBio(RecordIO.readString(in));
+        user.setAvatarUrl(RecordIO.readString(in));
+        user.setEmailNotifications(in.readBoolean());
+        user.setDarkMode(in.readBoolean());
+        user.setTimezone(RecordIO.readString(in));
+        user.setLanguage(RecordIO.readString(in));
+        user.setActive(in.readBoolean());
+        user.setEmailVerified(in.readBoolean());
+        user.setRequiresPasswordChange(in.readBoolean());
+        user.setFailedLoginAttempts(in.readInt());
+        user.setAccountLockedUntil(RecordIO.readDateTime(in));
+        user.setLastLogin(RecordIO.readDateTime(in));
+        // Audit timestamps go last, since several setters above touch them
+        user.setCreatedAt(RecordIO.readDateTime(in));
+        user.setLastPasswordChange(RecordIO.readDateTime(in));
+        user.setUpdatedAt(RecordIO.readDateTime(in));
+        return user;
+    }
+}
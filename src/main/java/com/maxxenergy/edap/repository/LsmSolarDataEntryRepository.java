@@ -0,0 +1,1127 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.IdGenerator;
+import com.maxxenergy.edap.storage.SnowflakeIdGenerator;
+import com.maxxenergy.edap.storage.Timestamps;
+import com.maxxenergy.edap.storage.WriteAheadLog;
+import com.maxxenergy.edap.storage.WriteAheadLogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Log-structured merge storage engine for SolarDataEntry entities (edap.storage.type=lsm),
+ * for data sets larger than the heap.
+ *
+ * Writes go to the write-ahead log and an in-memory memtable. A full memtable is sealed and
+ * written in the background as an immutable {@link SortedRun} keyed by (user id, timestamp),
+ * and a background compaction merges the newest runs whenever they have grown close to the
+ * size of the next older one, keeping the number of runs logarithmic in the data size. Disk
+ * writes are therefore only log appends and whole-file sequential writes; nothing is updated
+ * in place. Updates and deletions shadow older versions by id and are dropped when merged.
+ *
+ * The heap holds the memtables plus, per run, a sparse block index and a Bloom filter over ids
+ * (about 10 bits per entry). Per-user queries read only the blocks covering that user; point
+ * lookups skip runs whose id range or Bloom filter excludes the id, so checking whether a
+ * freshly generated id already exists reads nothing from disk. Time range queries read only the
+ * data blocks whose timestamp range overlaps; other cross-user queries (the public feed, value
+ * and plant queries) scan every run.
+ *
+ * A manifest lists the live runs and the first log segment they do not cover; startup opens
+ * those runs and replays only the log written since.
+ */
+@Repository
+@ConditionalOnProperty(name = "edap.storage.type", havingValue = "lsm")
+public class LsmSolarDataEntryRepository implements SolarDataEntryRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(LsmSolarDataEntryRepository.class);
+
+    private static final String LOG_NAME = "lsm-entries";
+    private static final String MANIFEST = "MANIFEST";
+    private static final String RUN_PREFIX = "run-";
+    private static final int MANIFEST_MAGIC = 0x454D4E46; // "EMNF"
+    private static final int MANIFEST_VERSION = 1;
+
+    // Sealed memtables allowed to wait for flushing before writers are held back
+    private static final int MAX_SEALED_MEMTABLES = 2;
+    private static final long WRITE_STALL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Delay before retrying a failed flush, doubled after each further failure
+    private static final long FLUSH_RETRY_MIN_MILLIS = 100;
+    private static final long FLUSH_RETRY_MAX_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    // The newest runs are merged while the next older run is at most this many times their total size
+    private static final int COMPACTION_RATIO = 2;
+
+    /**
+     * Recent writes not yet in a run: saved entries by id, and ids deleted since the older memtables.
+     */
+    private static final class Memtable {
+        final Map<String, SolarDataEntry> entries = new ConcurrentHashMap<>();
+        final Set<String> deleted = ConcurrentHashMap.newKeySet();
+
+        // Set when sealed: the first log segment written after it, and the live entry count at that point
+        long nextLogSegment;
+        long liveCountAtSeal;
+
+        boolean contains(String id) {
+            return entries.containsKey(id) || deleted.contains(id);
+        }
+
+        int size() {
+            return entries.size() + deleted.size();
+        }
+    }
+
+    /**
+     * The memtables and runs, newest first, as of one moment. Keeps its runs open until closed,
+     * so queries run without holding the lock while flushes and compactions replace runs.
+     */
+    private static final class View implements AutoCloseable {
+        final List<Memtable> memtables;
+        final List<SortedRun> runs;
+
+        View(List<Memtable> memtables, List<SortedRun> runs) {
+            this.memtables = memtables;
+            this.runs = runs;
+        }
+
+        /**
+         * The newest version of an entry, or null if it does not exist or was deleted.
+         */
+        SolarDataEntry find(String id) throws IOException {
+            for (Memtable memtable : memtables) {
+                SolarDataEntry entry = memtable.entries.get(id);
+                if (entry != null || memtable.deleted.contains(id)) {
+                    return entry;
+                }
+            }
+            for (SortedRun run : runs) {
+                long location = run.locate(id);
+                if (location == SortedRun.TOMBSTONE) {
+                    return null;
+                }
+                if (location != SortedRun.ABSENT) {
+                    return run.find(id, location);
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Visit the current version of every entry passing the filter.
+         */
+        void forEach(Predicate<SolarDataEntry> filter, Consumer<SolarDataEntry> action) throws IOException {
+            visitMemtables(filter, action);
+            for (int i = 0; i < runs.size(); i++) {
+                int source = memtables.size() + i;
+                runs.get(i).forEach(entry -> {
+                    if (filter.test(entry) && !isShadowed(source, entry.getId())) {
+                        action.accept(entry);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Visit the current versions of entries with timestamps in [oldest, newest].
+         */
+        void forEachBetween(long oldest, long newest, Consumer<SolarDataEntry> action) throws IOException {
+            visitMemtables(entry -> entry.getTimestampMillis() >= oldest && entry.getTimestampMillis() <= newest, action);
+            for (int i = 0; i < runs.size(); i++) {
+                int source = memtables.size() + i;
+                runs.get(i).forEachBetween(oldest, newest, entry -> {
+                    if (!isShadowed(source, entry.getId())) {
+                        action.accept(entry);
+                    }
+                });
+            }
+        }
+
+        /**
+         * Visit the current versions of a user's entries with timestamps in [oldest, newest].
+         */
+        void forEachOfUser(String userId, long newest, long oldest, Consumer<SolarDataEntry> action) throws IOException {
+            visitMemtables(entry -> userId.equals(entry.getUserId()) &&
+                    entry.getTimestampMillis() <= newest && entry.getTimestampMillis() >= oldest, action);
+            for (int i = 0; i < runs.size(); i++) {
+                int source = memtables.size() + i;
+                runs.get(i).forEachOfUser(userId, newest, oldest, entry -> {
+                    if (!isShadowed(source, entry.getId())) {
+                        action.accept(entry);
+                    }
+                });
+            }
+        }
+
+        private void visitMemtables(Predicate<SolarDataEntry> filter, Consumer<SolarDataEntry> action) {
+            for (int i = 0; i < memtables.size(); i++) {
+                for (SolarDataEntry entry : memtables.get(i).entries.values()) {
+                    if (filter.test(entry) && !isShadowed(i, entry.getId())) {
+                        action.accept(entry);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Whether a source newer than the given one (memtables first, then runs) has a version
+         * or deletion of the id, making the given source's version stale.
+         */
+        private boolean isShadowed(int source, String id) {
+            for (int i = 0; i < source; i++) {
+                if (i < memtables.size() ? memtables.get(i).contains(id) : contains(runs.get(i - memtables.size()), id)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public void close() {
+            runs.forEach(SortedRun::release);
+        }
+    }
+
+    /**
+     * A run being merged, positioned at its next entry.
+     */
+    private static final class MergeSource {
+        final Iterator<SolarDataEntry> entries;
+        final int index;
+        SolarDataEntry head;
+
+        MergeSource(Iterator<SolarDataEntry> entries, int index) {
+            this.entries = entries;
+            this.index = index;
+        }
+
+        boolean advance() {
+            head = entries.hasNext() ? entries.next() : null;
+            return head != null;
+        }
+    }
+
+    private final Path directory;
+    private final int memtableEntries;
+
+    @Autowired(required = false)
+    private WriteAheadLogFactory logFactory;
+
+    @Autowired(required = false)
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(0);
+
+    // Null when write-ahead logging is disabled
+    private WriteAheadLog log;
+
+    // Guards the memtables, the run list and the counts. Writers hold it while logging and applying,
+    // so log order matches apply order and sealing can rotate the log at a clean point
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Condition memtableFlushed = lock.writeLock().newCondition();
+
+    private Memtable memtable = new Memtable();
+
+    // Sealed memtables waiting to be flushed, newest first
+    private final Deque<Memtable> sealed = new ArrayDeque<>();
+
+    // Live runs, newest first; replaced rather than modified, so views can share it
+    private List<SortedRun> runs = new ArrayList<>();
+
+    private long liveCount;
+
+    // What the runs cover: the first log segment still needed, and the live entry count up to it
+    private long flushedLogSegment;
+    private long flushedLiveCount;
+
+    private final AtomicLong nextRunNumber = new AtomicLong(1);
+
+    private final ScheduledExecutorService flusher;
+    private final ExecutorService compactor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean();
+    // Only used on the flush thread
+    private long flushRetryMillis = FLUSH_RETRY_MIN_MILLIS;
+    private boolean flushRetryScheduled;
+    private volatile boolean closed;
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder bytesFlushed = new LongAdder();
+    private final LongAdder bytesCompacted = new LongAdder();
+    private final LongAdder writeStalls = new LongAdder();
+
+    public LsmSolarDataEntryRepository(
+            @Value("${edap.storage.lsm.directory:data/lsm}") String directory,
+            @Value("${edap.storage.lsm.memtable-entries:100000}") int memtableEntries) {
+        if (memtableEntries <= 0) {
+            throw new IllegalArgumentException("edap.storage.lsm.memtable-entries must be positive");
+        }
+        this.directory = Paths.get(directory);
+        this.memtableEntries = memtableEntries;
+        ScheduledThreadPoolExecutor flushThread = new ScheduledThreadPoolExecutor(1, runnable -> daemon(runnable, "lsm-flush"));
+        // A pending flush retry has nothing left to do once close has flushed the memtable
+        flushThread.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.flusher = flushThread;
+        this.compactor = Executors.newSingleThreadExecutor(runnable -> daemon(runnable, "lsm-compaction"));
+    }
+
+    /**
+     * Open the runs listed in the manifest and replay the write-ahead log written after them.
+     */
+    @PostConstruct
+    public void open() throws IOException {
+        long started = System.currentTimeMillis();
+        Files.createDirectories(directory);
+        readManifest();
+        deleteUnlistedFiles();
+        liveCount = flushedLiveCount;
+
+        WriteAheadLog entryLog = logFactory != null ? logFactory.open(LOG_NAME) : null;
+        long records;
+        List<SortedRun> dropped = new ArrayList<>();
+        lock.writeLock().lock();
+        try {
+            // Replay before publishing the log, so replayed writes are not logged again
+            records = entryLog == null ? 0 : entryLog.replay(flushedLogSegment, (type, payload) -> {
+                switch (type) {
+                    case LogRecords.SAVE:
+                        apply(LogRecords.readEntry(payload));
+                        break;
+                    case LogRecords.DELETE:
+                        applyDelete(LogRecords.readId(payload));
+                        break;
+                    case LogRecords.DELETE_ALL:
+                        dropped.addAll(clear());
+                        break;
+                    default:
+                        throw new IOException("Unknown entry log record type " + type);
+                }
+            });
+            log = entryLog;
+            sealIfFull();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        writeManifest();
+        dropped.forEach(SortedRun::discard);
+        logger.info("Opened log-structured entry store at {} with {} entries in {} runs in {} ms ({} log records replayed)",
+                directory.toAbsolutePath(), liveCount, runs.size(), System.currentTimeMillis() - started, records);
+        scheduleCompaction();
+    }
+
+    /**
+     * Flush the memtable to a run, so that startup does not have to replay the log behind it.
+     */
+    public void checkpoint() throws IOException {
+        Future<?> flushed;
+        lock.writeLock().lock();
+        try {
+            if (memtable.size() == 0) {
+                return;
+            }
+            flushed = seal();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        try {
+            flushed.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing the memtable");
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to flush the memtable", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        // Flush the memtable so the next start has nothing to replay
+        checkpoint();
+        closed = true;
+        flusher.shutdown();
+        compactor.shutdown();
+        try {
+            flusher.awaitTermination(30, TimeUnit.SECONDS);
+            compactor.awaitTermination(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.writeLock().lock();
+        try {
+            runs.forEach(SortedRun::release);
+            runs = new ArrayList<>();
+            if (log != null) {
+                log.close();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Closed log-structured entry store with {} entries", liveCount);
+    }
+
+    public SolarDataEntry save(SolarDataEntry entry) {
+        if (entry.getId() == null) {
+            entry.setId(idGenerator.nextId());
+        }
+        byte[] record = log != null ? LogRecords.encode(out -> LogRecords.writeEntry(out, entry)) : null;
+        long logOffset;
+        lock.writeLock().lock();
+        try {
+            logOffset = append(LogRecords.SAVE, record);
+            apply(entry);
+            sealIfFull();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(logOffset);
+        logger.debug("Saved solar data entry: {} for user: {}", entry.getId(), entry.getUserId());
+        return entry;
+    }
+
+    /**
+     * Save a batch of entries: records are encoded up front, the lock is taken once and a single
+     * wait on the log makes the whole batch durable.
+     */
+    public List<SolarDataEntry> saveAll(Collection<SolarDataEntry> batch) {
+        List<SolarDataEntry> toSave = new ArrayList<>(batch);
+        byte[][] records = new byte[toSave.size()][];
+        for (int i = 0; i < records.length; i++) {
+            SolarDataEntry entry = toSave.get(i);
+            if (entry.getId() == null) {
+                entry.setId(idGenerator.nextId());
+            }
+            records[i] = log != null ? LogRecords.encode(out -> LogRecords.writeEntry(out, entry)) : null;
+        }
+
+        long logOffset = 0;
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < records.length; i++) {
+                logOffset = Math.max(logOffset, append(LogRecords.SAVE, records[i]));
+                apply(toSave.get(i));
+            }
+            sealIfFull();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(logOffset);
+        logger.debug("Saved batch of {} solar data entries", toSave.size());
+        return toSave;
+    }
+
+    public Optional<SolarDataEntry> findById(String id) {
+        try (View view = acquire()) {
+            return Optional.ofNullable(view.find(id));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void deleteById(String id) {
+        long logOffset = 0;
+        boolean deleted;
+        lock.writeLock().lock();
+        try {
+            deleted = exists(id);
+            if (deleted) {
+                logOffset = append(LogRecords.DELETE, LogRecords.delete(id));
+                applyDelete(id);
+                sealIfFull();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (deleted) {
+            awaitDurable(logOffset);
+            logger.debug("Deleted solar data entry: {}", id);
+        }
+    }
+
+    public void deleteAll() {
+        long logOffset;
+        List<SortedRun> dropped;
+        lock.writeLock().lock();
+        try {
+            logOffset = append(LogRecords.DELETE_ALL, LogRecords.NO_PAYLOAD);
+            dropped = clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        awaitDurable(logOffset);
+        try {
+            writeManifest();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        dropped.forEach(SortedRun::discard);
+        logger.info("Cleared all solar data entries from log-structured repository");
+    }
+
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void forEachEntry(Consumer<SolarDataEntry> action) {
+        try (View view = acquire()) {
+            view.forEach(entry -> true, action);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void forEachByTimestampBetween(LocalDateTime start, LocalDateTime end, Consumer<SolarDataEntry> action) {
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        if (to - from < 2) {
+            return;
+        }
+        try (View view = acquire()) {
+            view.forEachBetween(from + 1, to - 1, action);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public List<SolarDataEntry> findByUserIdOrderByTimestampDesc(String userId) {
+        List<SolarDataEntry> result = new ArrayList<>();
+        visitUser(userId, Long.MAX_VALUE, Long.MIN_VALUE, result::add);
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    public List<SolarDataEntry> findTopKByUserIdOrderByTimestampDesc(String userId, int k) {
+        TopK.Selector<SolarDataEntry> selector = new TopK.Selector<>(entry -> true, NEWEST_FIRST, k);
+        visitUser(userId, Long.MAX_VALUE, Long.MIN_VALUE, selector);
+        return selector.result();
+    }
+
+    public EntryPage findPageByUserIdOrderByTimestampDesc(String userId, EntryCursor after, int limit) {
+        Predicate<SolarDataEntry> remaining = after != null ? after::precedes : entry -> true;
+        TopK.Selector<SolarDataEntry> selector = new TopK.Selector<>(remaining, NEWEST_FIRST_THEN_ID, limit + 1);
+        visitUser(userId, after != null ? after.getTimestampMillis() : Long.MAX_VALUE, Long.MIN_VALUE, selector);
+        return EntryPage.of(selector.result(), limit);
+    }
+
+    public List<SolarDataEntry> findByUserIdAndTimestampBetweenOrderByTimestampDesc(
+            String userId, LocalDateTime start, LocalDateTime end) {
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        List<SolarDataEntry> result = new ArrayList<>();
+        visitUser(userId, to, from, entry -> {
+            if (entry.getTimestampMillis() > from && entry.getTimestampMillis() < to) {
+                result.add(entry);
+            }
+        });
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    public long countByUserId(String userId) {
+        long[] count = new long[1];
+        visitUser(userId, Long.MAX_VALUE, Long.MIN_VALUE, entry -> count[0]++);
+        return count[0];
+    }
+
+    /**
+     * Counting or trimming a user reads that user's blocks in every run, too much for each
+     * save; the scheduled cleanup enforces the limit instead.
+     */
+    public boolean enforcesEntryLimitOnSave() {
+        return false;
+    }
+
+    public EntryStatistics summarizeByUserId(String userId) {
+        EntryStatistics.Builder builder = new EntryStatistics.Builder();
+        visitUser(userId, Long.MAX_VALUE, Long.MIN_VALUE, builder::add);
+        return builder.build();
+    }
+
+    public Map<String, Object> getStorageStatistics() {
+        lock.readLock().lock();
+        try {
+            long runEntries = 0;
+            long runTombstones = 0;
+            long runBytes = 0;
+            long heapIndexBytes = 0;
+            for (SortedRun run : runs) {
+                runEntries += run.getEntryCount();
+                runTombstones += run.getTombstoneCount();
+                runBytes += run.getFileBytes();
+                heapIndexBytes += run.heapBytes();
+            }
+            long sealedEntries = 0;
+            for (Memtable table : sealed) {
+                sealedEntries += table.size();
+            }
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("engine", "lsm");
+            stats.put("entries", liveCount);
+            stats.put("memtableEntries", memtable.size());
+            stats.put("sealedMemtables", sealed.size());
+            stats.put("sealedMemtableEntries", sealedEntries);
+            stats.put("runs", runs.size());
+            stats.put("runEntries", runEntries);
+            stats.put("runTombstones", runTombstones);
+            stats.put("runFileBytes", runBytes);
+            stats.put("heapIndexBytes", heapIndexBytes);
+            stats.put("flushes", flushes.sum());
+            stats.put("compactions", compactions.sum());
+            stats.put("bytesFlushed", bytesFlushed.sum());
+            stats.put("bytesCompacted", bytesCompacted.sum());
+            stats.put("writeStalls", writeStalls.sum());
+            stats.put("directory", directory.toAbsolutePath().toString());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Put a saved entry in the memtable. Caller holds the write lock.
+     */
+    private void apply(SolarDataEntry entry) {
+        if (!exists(entry.getId())) {
+            liveCount++;
+        }
+        memtable.deleted.remove(entry.getId());
+        memtable.entries.put(entry.getId(), entry);
+    }
+
+    /**
+     * Record a deletion in the memtable if the entry exists. Caller holds the write lock.
+     */
+    private void applyDelete(String id) {
+        if (exists(id)) {
+            liveCount--;
+            memtable.entries.remove(id);
+            memtable.deleted.add(id);
+        }
+    }
+
+    /**
+     * Whether an entry currently exists. Caller holds the lock. Runs are only read when
+     * the id is within a run's id range and passes its Bloom filter.
+     */
+    private boolean exists(String id) {
+        if (memtable.contains(id)) {
+            return memtable.entries.containsKey(id);
+        }
+        for (Memtable table : sealed) {
+            if (table.contains(id)) {
+                return table.entries.containsKey(id);
+            }
+        }
+        for (SortedRun run : runs) {
+            try {
+                long location = run.locate(id);
+                if (location != SortedRun.ABSENT) {
+                    return location != SortedRun.TOMBSTONE;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop all memtables and runs. Caller holds the write lock, and discards the returned
+     * runs once a manifest without them is written.
+     */
+    private List<SortedRun> clear() {
+        List<SortedRun> dropped = runs;
+        memtable = new Memtable();
+        sealed.clear();
+        runs = new ArrayList<>();
+        liveCount = 0;
+        flushedLiveCount = 0;
+        memtableFlushed.signalAll();
+        return dropped;
+    }
+
+    /**
+     * Seal the memtable once it is full. Caller holds the write lock. When flushing has fallen
+     * behind, the writer is held back for a while rather than letting sealed memtables pile up.
+     */
+    private void sealIfFull() {
+        if (memtable.size() < memtableEntries) {
+            return;
+        }
+        if (sealed.size() >= MAX_SEALED_MEMTABLES) {
+            writeStalls.increment();
+            try {
+                memtableFlushed.awaitNanos(WRITE_STALL_NANOS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            // Another writer may have sealed it meanwhile
+            if (memtable.size() < memtableEntries || sealed.size() >= MAX_SEALED_MEMTABLES) {
+                return;
+            }
+        }
+        seal();
+    }
+
+    /**
+     * Queue the memtable for flushing and start a new one, rotating the log so that the sealed
+     * memtable's records end where a segment does. Caller holds the write lock.
+     */
+    private Future<?> seal() {
+        Memtable full = memtable;
+        try {
+            full.nextLogSegment = log != null ? log.rotate() : 0;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        full.liveCountAtSeal = liveCount;
+        sealed.addFirst(full);
+        memtable = new Memtable();
+        return flusher.submit(this::flushSealed);
+    }
+
+    /**
+     * Write the sealed memtables to runs, oldest first. On failure a retry is scheduled with
+     * growing delays, since sealing stops while flushing is behind and would not start another.
+     *
+     * @throws UncheckedIOException if a memtable could not be written
+     */
+    private void flushSealed() {
+        while (true) {
+            Memtable oldest;
+            lock.readLock().lock();
+            try {
+                oldest = sealed.peekLast();
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (oldest == null) {
+                return;
+            }
+
+            long started = System.currentTimeMillis();
+            SortedRun run;
+            try {
+                run = writeRun(oldest);
+            } catch (IOException | UncheckedIOException e) {
+                // The memtable stays readable and its log segments are kept until a retry succeeds
+                logger.error("Unable to flush memtable of {} entries, retrying in {} ms",
+                        oldest.size(), flushRetryMillis, e);
+                scheduleFlushRetry();
+                throw e instanceof IOException ? new UncheckedIOException((IOException) e) : (UncheckedIOException) e;
+            }
+            flushRetryMillis = FLUSH_RETRY_MIN_MILLIS;
+
+            boolean installed;
+            lock.writeLock().lock();
+            try {
+                // Not if the store was cleared while the run was being written
+                installed = sealed.peekLast() == oldest;
+                if (installed) {
+                    sealed.removeLast();
+                    List<SortedRun> next = new ArrayList<>(runs.size() + 1);
+                    next.add(run);
+                    next.addAll(runs);
+                    runs = next;
+                    flushedLogSegment = oldest.nextLogSegment;
+                    flushedLiveCount = oldest.liveCountAtSeal;
+                    memtableFlushed.signalAll();
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            if (!installed) {
+                run.discard();
+                continue;
+            }
+
+            try {
+                writeManifest();
+                if (log != null) {
+                    log.deleteSegmentsBefore(oldest.nextLogSegment);
+                }
+            } catch (IOException e) {
+                logger.error("Unable to record flushed run {}", run.getNumber(), e);
+            }
+            flushes.increment();
+            bytesFlushed.add(run.getFileBytes());
+            logger.debug("Flushed memtable of {} entries to run {} in {} ms",
+                    oldest.size(), run.getNumber(), System.currentTimeMillis() - started);
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Run {@link #flushSealed()} again after the current retry delay, then double the delay.
+     * Called on the flush thread.
+     */
+    private void scheduleFlushRetry() {
+        if (closed || flushRetryScheduled) {
+            return;
+        }
+        flushRetryScheduled = true;
+        flusher.schedule(() -> {
+            flushRetryScheduled = false;
+            flushSealed();
+        }, flushRetryMillis, TimeUnit.MILLISECONDS);
+        flushRetryMillis = Math.min(flushRetryMillis * 2, FLUSH_RETRY_MAX_MILLIS);
+    }
+
+    private SortedRun writeRun(Memtable table) throws IOException {
+        List<SolarDataEntry> sorted = new ArrayList<>(table.entries.values());
+        sorted.sort(SortedRun.KEY_ORDER);
+        try (SortedRun.Writer writer = newRunWriter(sorted.size() + table.deleted.size())) {
+            for (SolarDataEntry entry : sorted) {
+                writer.add(entry);
+            }
+            for (String id : table.deleted) {
+                writer.addTombstone(id);
+            }
+            return writer.finish();
+        }
+    }
+
+    private void scheduleCompaction() {
+        if (!closed && compactionScheduled.compareAndSet(false, true)) {
+            compactor.execute(() -> {
+                compactionScheduled.set(false);
+                compact();
+            });
+        }
+    }
+
+    /**
+     * Merge the newest runs while they have grown close to the size of the next older run.
+     */
+    private void compact() {
+        while (!closed) {
+            List<SortedRun> group;
+            boolean includesOldest;
+            lock.readLock().lock();
+            try {
+                group = pickCompaction(runs);
+                includesOldest = group.size() == runs.size();
+                group.forEach(SortedRun::retain);
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (group.isEmpty()) {
+                return;
+            }
+
+            long started = System.currentTimeMillis();
+            SortedRun merged;
+            try {
+                merged = merge(group, includesOldest);
+            } catch (IOException | UncheckedIOException e) {
+                group.forEach(SortedRun::release);
+                if (!closed) {
+                    logger.error("Unable to compact {} runs", group.size(), e);
+                }
+                return;
+            }
+
+            boolean installed;
+            lock.writeLock().lock();
+            try {
+                // Flushes only add newer runs, so the group is still in place unless the store was cleared
+                int start = runs.indexOf(group.get(0));
+                installed = start >= 0 && start + group.size() <= runs.size()
+                        && runs.subList(start, start + group.size()).equals(group);
+                if (installed) {
+                    List<SortedRun> next = new ArrayList<>(runs);
+                    next.subList(start, start + group.size()).clear();
+                    if (merged != null) {
+                        next.add(start, merged);
+                    }
+                    runs = next;
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+            group.forEach(SortedRun::release);
+            if (!installed) {
+                if (merged != null) {
+                    merged.discard();
+                }
+                continue;
+            }
+
+            try {
+                writeManifest();
+            } catch (IOException e) {
+                // Keep the replaced files, which the previous manifest still lists
+                logger.error("Unable to record compacted runs", e);
+                return;
+            }
+            group.forEach(SortedRun::discard);
+            compactions.increment();
+            bytesCompacted.add(merged != null ? merged.getFileBytes() : 0);
+            logger.debug("Compacted {} runs into {} in {} ms", group.size(),
+                    merged != null ? "run " + merged.getNumber() : "nothing", System.currentTimeMillis() - started);
+        }
+    }
+
+    /**
+     * The newest runs to merge: as many as keep the next older run no larger than
+     * {@link #COMPACTION_RATIO} times their total size. Empty if that is fewer than two.
+     */
+    private static List<SortedRun> pickCompaction(List<SortedRun> runs) {
+        if (runs.size() < 2) {
+            return new ArrayList<>();
+        }
+        long total = runs.get(0).getFileBytes();
+        int count = 1;
+        while (count < runs.size() && runs.get(count).getFileBytes() <= total * COMPACTION_RATIO) {
+            total += runs.get(count).getFileBytes();
+            count++;
+        }
+        return count >= 2 ? new ArrayList<>(runs.subList(0, count)) : new ArrayList<>();
+    }
+
+    /**
+     * Merge runs (newest first) into one, keeping only the newest version of each id. Tombstones
+     * are kept unless nothing older than the merged runs remains for them to shadow.
+     *
+     * @return the merged run, or null if nothing in the runs is still live
+     */
+    private SortedRun merge(List<SortedRun> group, boolean dropTombstones) throws IOException {
+        long expectedIds = 0;
+        for (SortedRun run : group) {
+            expectedIds += run.getEntryCount() + run.getTombstoneCount();
+        }
+        try (SortedRun.Writer writer = newRunWriter(expectedIds)) {
+            PriorityQueue<MergeSource> heads = new PriorityQueue<>((a, b) -> {
+                int cmp = SortedRun.KEY_ORDER.compare(a.head, b.head);
+                return cmp != 0 ? cmp : Integer.compare(a.index, b.index);
+            });
+            for (int i = 0; i < group.size(); i++) {
+                MergeSource source = new MergeSource(group.get(i).iterator(), i);
+                if (source.advance()) {
+                    heads.add(source);
+                }
+            }
+            while (!heads.isEmpty()) {
+                if (closed) {
+                    throw new InterruptedIOException("Compaction stopped by shutdown");
+                }
+                MergeSource source = heads.poll();
+                if (!isShadowed(group, source.index, source.head.getId())) {
+                    writer.add(source.head);
+                }
+                if (source.advance()) {
+                    heads.add(source);
+                }
+            }
+            if (!dropTombstones) {
+                for (int i = 0; i < group.size(); i++) {
+                    int index = i;
+                    List<String> tombstones = new ArrayList<>();
+                    group.get(i).forEachTombstone(id -> {
+                        if (!isShadowed(group, index, id)) {
+                            tombstones.add(id);
+                        }
+                    });
+                    for (String id : tombstones) {
+                        writer.addTombstone(id);
+                    }
+                }
+            }
+            return writer.isEmpty() ? null : writer.finish();
+        }
+    }
+
+    private static boolean isShadowed(List<SortedRun> newestFirst, int index, String id) {
+        for (int i = 0; i < index; i++) {
+            if (contains(newestFirst.get(i), id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the run has a version or deletion of the id.
+     */
+    private static boolean contains(SortedRun run, String id) {
+        try {
+            return run.locate(id) != SortedRun.ABSENT;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SortedRun.Writer newRunWriter(long expectedIds) throws IOException {
+        long number = nextRunNumber.getAndIncrement();
+        return new SortedRun.Writer(number, runPath(number), expectedIds);
+    }
+
+    private View acquire() {
+        lock.readLock().lock();
+        try {
+            List<Memtable> memtables = new ArrayList<>(sealed.size() + 1);
+            memtables.add(memtable);
+            memtables.addAll(sealed);
+            runs.forEach(SortedRun::retain);
+            return new View(memtables, runs);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void visitUser(String userId, long newest, long oldest, Consumer<SolarDataEntry> action) {
+        if (userId == null) {
+            return;
+        }
+        try (View view = acquire()) {
+            view.forEachOfUser(userId, newest, oldest, action);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Record the live runs and what they cover: [int magic][int version][long first log segment]
+     * [long live count][long next run number][int run count][long run number]... Written to a
+     * temporary file and renamed into place.
+     */
+    private synchronized void writeManifest() throws IOException {
+        List<SortedRun> current;
+        long logSegment;
+        long count;
+        lock.readLock().lock();
+        try {
+            current = runs;
+            logSegment = flushedLogSegment;
+            count = flushedLiveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+        Path path = directory.resolve(MANIFEST);
+        Path temporary = path.resolveSibling(MANIFEST + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MANIFEST_MAGIC);
+            out.writeInt(MANIFEST_VERSION);
+            out.writeLong(logSegment);
+            out.writeLong(count);
+            out.writeLong(nextRunNumber.get());
+            out.writeInt(current.size());
+            for (SortedRun run : current) {
+                out.writeLong(run.getNumber());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private void readManifest() throws IOException {
+        Path path = directory.resolve(MANIFEST);
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION) {
+                throw new IOException("Unrecognized manifest format in " + path);
+            }
+            flushedLogSegment = in.readLong();
+            flushedLiveCount = in.readLong();
+            nextRunNumber.set(in.readLong());
+            List<SortedRun> opened = new ArrayList<>();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                long number = in.readLong();
+                opened.add(SortedRun.open(number, runPath(number)));
+            }
+            runs = opened;
+        }
+    }
+
+    /**
+     * Remove runs a crash left behind before they were listed or after they were replaced,
+     * and temporary files of interrupted writes.
+     */
+    private void deleteUnlistedFiles() throws IOException {
+        Set<Path> listed = new HashSet<>();
+        for (SortedRun run : runs) {
+            listed.add(run.getPath().getFileName());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, RUN_PREFIX + "*")) {
+            for (Path file : files) {
+                if (!listed.contains(file.getFileName())) {
+                    logger.warn("Deleting unlisted run file {}", file);
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+        Files.deleteIfExists(directory.resolve(MANIFEST + ".tmp"));
+    }
+
+    private Path runPath(long number) {
+        return directory.resolve(String.format("%s%06d.dat", RUN_PREFIX, number));
+    }
+
+    /**
+     * Append a record to the write-ahead log, if enabled.
+     *
+     * @return the log offset to wait for, or 0 when there is no log
+     */
+    private long append(byte type, byte[] payload) {
+        return log != null ? log.append(type, payload) : 0;
+    }
+
+    private void awaitDurable(long logOffset) {
+        if (log != null) {
+            log.awaitDurable(logOffset);
+        }
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
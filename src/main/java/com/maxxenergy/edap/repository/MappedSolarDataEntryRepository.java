@@ -0,0 +1,853 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.IdGenerator;
+import com.maxxenergy.edap.storage.IntHashIndex;
+import com.maxxenergy.edap.storage.MappedFile;
+import com.maxxenergy.edap.storage.SnowflakeIdGenerator;
+import com.maxxenergy.edap.storage.Timestamps;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.IntPredicate;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Off-heap storage engine for SolarDataEntry entities (edap.storage.type=mmap).
+ *
+ * Entries are stored as fixed-width 96-byte records in a memory-mapped file, with ids,
+ * notes, user ids and plant names kept in a second append-only mapped string file.
+ * The heap only holds small indexes: a primitive id hash table, per-user slot lists
+ * ordered newest first, and the handful of distinct user ids and plant names. Entry data therefore survives
+ * restarts and does not add to GC marking work, and SolarDataEntry objects exist only
+ * for the records a query returns.
+ *
+ * Writes reach the OS page cache immediately and are forced to disk on shutdown,
+ * so they survive a process crash but not a power loss in between.
+ */
+@Repository
+@ConditionalOnProperty(name = "edap.storage.type", havingValue = "mmap")
+public class MappedSolarDataEntryRepository implements SolarDataEntryRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedSolarDataEntryRepository.class);
+
+    private static final int MAGIC = 0x45444150; // "EDAP"
+    private static final int VERSION = 1;
+
+    // Record layout; the first record-sized block of the file is the header
+    private static final int RECORD_SIZE = 96;
+    private static final int RECORDS_PER_CHUNK = 1 << 15;
+    private static final int OFFSET_STATE = 0;
+    private static final int OFFSET_FLAGS = 1;
+    // 48-bit write sequence: high 16 bits at OFFSET_SEQUENCE_HIGH, low 32 at OFFSET_SEQUENCE_LOW
+    private static final int OFFSET_SEQUENCE_HIGH = 2;
+    private static final int OFFSET_SEQUENCE_LOW = 4;
+    private static final int OFFSET_TIMESTAMP = 8;
+    private static final int OFFSET_GENERATION = 16;
+    private static final int OFFSET_CAPACITY = 24;
+    private static final int OFFSET_EFFICIENCY = 32;
+    private static final int OFFSET_TEMPERATURE = 40;
+    private static final int OFFSET_IRRADIANCE = 48;
+    private static final int OFFSET_REVENUE = 56;
+    private static final int OFFSET_ID_REF = 64;
+    private static final int OFFSET_USER_REF = 72;
+    private static final int OFFSET_PLANT_REF = 80;
+    private static final int OFFSET_NOTES_REF = 88;
+
+    private static final byte STATE_EMPTY = 0;
+    private static final byte STATE_LIVE = 1;
+    private static final byte STATE_DELETED = 2;
+    private static final byte FLAG_PUBLIC = 1;
+
+    // Header fields of the records file
+    private static final int HEADER_MAGIC = 0;
+    private static final int HEADER_VERSION = 4;
+    private static final int HEADER_RECORD_SIZE = 8;
+    private static final int HEADER_RECORD_COUNT = 16;
+
+    // String file: header with the append position, then [int length][UTF-8 bytes] values
+    private static final int STRING_CHUNK_SIZE = 1 << 22;
+    private static final int STRING_HEADER_SIZE = 64;
+    private static final int STRING_HEADER_END = 8;
+    private static final long NO_STRING = -1;
+
+    private static final int VISIT_BATCH_SIZE = 256;
+
+    private final MappedFile records;
+    private final MappedFile strings;
+
+    @Autowired(required = false)
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(0);
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // On-heap indexes
+    private final IntHashIndex idIndex = new IntHashIndex();
+    private final Map<Long, SlotList> slotsByUser = new HashMap<>();
+    private final Map<String, Long> internedRefs = new HashMap<>();
+    private final Map<Long, String> internedValues = new HashMap<>();
+    private final SlotList freeSlots = new SlotList();
+
+    private int recordCount;
+    private int liveCount;
+    private long stringsEnd;
+
+    // Sequence given to the next record written; orders two live copies of one id after a crash
+    private long nextSequence = 1;
+
+    /**
+     * Growable list of record slots. Users' lists are kept newest first, so their oldest
+     * entries are at the tail; the free list is only used as a stack.
+     */
+    private static final class SlotList {
+        int[] slots = new int[8];
+        int size;
+
+        void add(int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            slots[size++] = slot;
+        }
+
+        /**
+         * Insert a slot after every slot with a newer or equal timestamp. New readings
+         * normally go near the front, back-dated ones further in.
+         */
+        void insertNewestFirst(int slot, IntToLongFunction timestampOf) {
+            long timestamp = timestampOf.applyAsLong(slot);
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (timestampOf.applyAsLong(slots[mid]) >= timestamp) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            add(slot);
+            System.arraycopy(slots, low, slots, low + 1, size - 1 - low);
+            slots[low] = slot;
+        }
+
+        /**
+         * Order the slots newest first, after adding them unordered.
+         */
+        void sortNewestFirst(IntToLongFunction timestampOf) {
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = slots[i];
+            }
+            Arrays.sort(boxed, (a, b) -> Long.compare(timestampOf.applyAsLong(b), timestampOf.applyAsLong(a)));
+            for (int i = 0; i < size; i++) {
+                slots[i] = boxed[i];
+            }
+        }
+
+        /**
+         * Remove a slot, keeping the others in order. Searches from the tail, where evictions happen.
+         */
+        void remove(int slot) {
+            for (int i = size - 1; i >= 0; i--) {
+                if (slots[i] == slot) {
+                    System.arraycopy(slots, i + 1, slots, i, size - 1 - i);
+                    size--;
+                    return;
+                }
+            }
+        }
+
+        int pop() {
+            return slots[--size];
+        }
+    }
+
+    public MappedSolarDataEntryRepository(
+            @Value("${edap.storage.mmap.directory:data/mmap}") String directory) throws IOException {
+        Path root = Paths.get(directory);
+        this.records = new MappedFile(root.resolve("entries.dat"), RECORDS_PER_CHUNK * RECORD_SIZE);
+        this.strings = new MappedFile(root.resolve("strings.dat"), STRING_CHUNK_SIZE);
+        load();
+        logger.info("Opened memory-mapped entry store at {} with {} entries", root.toAbsolutePath(), liveCount);
+    }
+
+    public SolarDataEntry save(SolarDataEntry entry) {
+        if (entry.getId() == null) {
+            entry.setId(idGenerator.nextId());
+        }
+        lock.writeLock().lock();
+        try {
+            store(entry);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Saved solar data entry: {} for user: {}", entry.getId(), entry.getUserId());
+        return entry;
+    }
+
+    /**
+     * Save a batch of entries under a single acquisition of the write lock.
+     */
+    public List<SolarDataEntry> saveAll(Collection<SolarDataEntry> batch) {
+        for (SolarDataEntry entry : batch) {
+            if (entry.getId() == null) {
+                entry.setId(idGenerator.nextId());
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            batch.forEach(this::store);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Saved batch of {} solar data entries", batch.size());
+        return new ArrayList<>(batch);
+    }
+
+    /**
+     * Write an entry to a record slot and index it. Caller holds the write lock.
+     */
+    private void store(SolarDataEntry entry) {
+        byte[] idBytes = utf8(entry.getId());
+        int hash = entry.getId().hashCode();
+        int previous = idIndex.get(hash, slot -> stringEquals(records.getLong(position(slot) + OFFSET_ID_REF), idBytes));
+        long idRef = previous != IntHashIndex.NOT_FOUND
+                ? records.getLong(position(previous) + OFFSET_ID_REF)
+                : appendString(idBytes);
+
+        // Write the new version to a fresh slot before retiring the old one
+        int slot = freeSlots.size > 0 ? freeSlots.pop() : recordCount;
+        writeRecord(slot, entry, idRef);
+        if (slot == recordCount) {
+            recordCount++;
+            records.putLong(HEADER_RECORD_COUNT, recordCount);
+        }
+        if (previous != IntHashIndex.NOT_FOUND) {
+            retire(previous);
+        } else {
+            liveCount++;
+        }
+        idIndex.put(hash, slot, candidate -> candidate == previous);
+        slotsByUser.computeIfAbsent(records.getLong(position(slot) + OFFSET_USER_REF), k -> new SlotList())
+                .insertNewestFirst(slot, this::timestampOf);
+    }
+
+    public Optional<SolarDataEntry> findById(String id) {
+        byte[] idBytes = utf8(id);
+        lock.readLock().lock();
+        try {
+            int slot = idIndex.get(id.hashCode(), candidate -> stringEquals(records.getLong(position(candidate) + OFFSET_ID_REF), idBytes));
+            return slot != IntHashIndex.NOT_FOUND ? Optional.of(materialize(slot)) : Optional.empty();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void deleteById(String id) {
+        byte[] idBytes = utf8(id);
+        lock.writeLock().lock();
+        try {
+            int slot = idIndex.remove(id.hashCode(), candidate -> stringEquals(records.getLong(position(candidate) + OFFSET_ID_REF), idBytes));
+            if (slot != IntHashIndex.NOT_FOUND) {
+                retire(slot);
+                liveCount--;
+                logger.debug("Deleted solar data entry: {}", id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void deleteAll() {
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < recordCount; slot++) {
+                records.putByte(position(slot) + OFFSET_STATE, STATE_EMPTY);
+            }
+            recordCount = 0;
+            liveCount = 0;
+            records.putLong(HEADER_RECORD_COUNT, 0);
+            stringsEnd = STRING_HEADER_SIZE;
+            strings.putLong(STRING_HEADER_END, stringsEnd);
+            idIndex.clear();
+            slotsByUser.clear();
+            internedRefs.clear();
+            internedValues.clear();
+            freeSlots.size = 0;
+            records.force();
+            strings.force();
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Cleared all solar data entries from memory-mapped repository");
+    }
+
+    public long count() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void forEachEntry(Consumer<SolarDataEntry> action) {
+        visit(slot -> true, action);
+    }
+
+    public void forEachByTimestampBetween(LocalDateTime start, LocalDateTime end, Consumer<SolarDataEntry> action) {
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        visit(slot -> {
+            long timestamp = timestampOf(slot);
+            return timestamp > from && timestamp < to;
+        }, action);
+    }
+
+    /**
+     * Visit the live slots passing the filter, testing it on the stored record so that only
+     * matches are materialized. Works in small batches so the visitor never runs while
+     * the lock is held.
+     */
+    private void visit(IntPredicate slotFilter, Consumer<SolarDataEntry> action) {
+        List<SolarDataEntry> batch = new ArrayList<>(VISIT_BATCH_SIZE);
+        int next = 0;
+        while (true) {
+            lock.readLock().lock();
+            try {
+                while (next < recordCount && batch.size() < VISIT_BATCH_SIZE) {
+                    if (isLive(next) && slotFilter.test(next)) {
+                        batch.add(materialize(next));
+                    }
+                    next++;
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            batch.forEach(action);
+            batch.clear();
+        }
+    }
+
+    public List<SolarDataEntry> findByUserIdOrderByTimestampDesc(String userId) {
+        lock.readLock().lock();
+        try {
+            SlotList slots = userSlots(userId);
+            List<SolarDataEntry> result = new ArrayList<>(slots != null ? slots.size : 0);
+            if (slots != null) {
+                for (int i = 0; i < slots.size; i++) {
+                    result.add(materialize(slots.slots[i]));
+                }
+            }
+            result.sort(NEWEST_FIRST);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<SolarDataEntry> findTopKByUserIdOrderByTimestampDesc(String userId, int k) {
+        lock.readLock().lock();
+        try {
+            SlotList slots = userSlots(userId);
+            if (slots == null) {
+                return new ArrayList<>();
+            }
+            TopK.Selector<Integer> selector = newestSlots(k);
+            for (int i = 0; i < slots.size; i++) {
+                selector.accept(slots.slots[i]);
+            }
+            return materializeAll(selector.result());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<SolarDataEntry> findTopKByIsPublicTrueOrderByTimestampDesc(int k) {
+        lock.readLock().lock();
+        try {
+            TopK.Selector<Integer> selector = newestSlots(k);
+            for (int slot = 0; slot < recordCount; slot++) {
+                if (isLive(slot) && isPublic(slot)) {
+                    selector.accept(slot);
+                }
+            }
+            return materializeAll(selector.result());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<SolarDataEntry> findByIsPublicTrueOrderByTimestampDesc() {
+        List<SolarDataEntry> result = collect(this::isPublic);
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    public List<SolarDataEntry> findByPlantNameContainingIgnoreCase(String plantName) {
+        String needle = plantName.toLowerCase();
+        Set<Long> matchingRefs = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            internedValues.forEach((ref, value) -> {
+                if (value.toLowerCase().contains(needle)) {
+                    matchingRefs.add(ref);
+                }
+            });
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (matchingRefs.isEmpty()) {
+            return new ArrayList<>();
+        }
+        return collect(slot -> matchingRefs.contains(records.getLong(position(slot) + OFFSET_PLANT_REF)));
+    }
+
+    public List<SolarDataEntry> findByTimestampBetween(LocalDateTime start, LocalDateTime end) {
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        return collect(slot -> {
+            long timestamp = timestampOf(slot);
+            return timestamp > from && timestamp < to;
+        });
+    }
+
+    public List<SolarDataEntry> findByUserIdAndTimestampBetweenOrderByTimestampDesc(
+            String userId, LocalDateTime start, LocalDateTime end) {
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        lock.readLock().lock();
+        try {
+            List<SolarDataEntry> result = new ArrayList<>();
+            SlotList slots = userSlots(userId);
+            if (slots != null) {
+                for (int i = 0; i < slots.size; i++) {
+                    long timestamp = timestampOf(slots.slots[i]);
+                    if (timestamp > from && timestamp < to) {
+                        result.add(materialize(slots.slots[i]));
+                    }
+                }
+            }
+            result.sort(NEWEST_FIRST);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<SolarDataEntry> findByGenerationGreaterThanEqual(Double threshold) {
+        double min = threshold;
+        return collect(slot -> records.getDouble(position(slot) + OFFSET_GENERATION) >= min);
+    }
+
+    public List<SolarDataEntry> findByEfficiencyGreaterThanEqual(Double threshold) {
+        double min = threshold;
+        return collect(slot -> records.getDouble(position(slot) + OFFSET_EFFICIENCY) >= min);
+    }
+
+    public long countByUserId(String userId) {
+        lock.readLock().lock();
+        try {
+            SlotList slots = userSlots(userId);
+            return slots != null ? slots.size : 0;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Evict a user's oldest entries beyond the limit, taking them from the tail of the
+     * user's newest-first slot list.
+     *
+     * @return number of entries removed
+     */
+    public long deleteOldestByUserIdBeyond(String userId, int maxEntries) {
+        long removedCount = 0;
+        lock.writeLock().lock();
+        try {
+            SlotList slots = userSlots(userId);
+            while (slots != null && slots.size > maxEntries) {
+                deleteSlot(slots.slots[slots.size - 1]);
+                removedCount++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (removedCount > 0) {
+            logger.debug("Evicted {} oldest entries of user: {}", removedCount, userId);
+        }
+        return removedCount;
+    }
+
+    public List<SolarDataEntry> findRecentEntries(LocalDateTime sinceDate) {
+        long from = Timestamps.toEpochMillis(sinceDate);
+        return collect(slot -> timestampOf(slot) > from);
+    }
+
+    public EntryStatistics summarizeByUserId(String userId) {
+        EntryStatistics.Builder builder = new EntryStatistics.Builder();
+        lock.readLock().lock();
+        try {
+            SlotList slots = userSlots(userId);
+            if (slots == null) {
+                return builder.build();
+            }
+            long newest = Long.MIN_VALUE;
+            for (int i = 0; i < slots.size; i++) {
+                long position = position(slots.slots[i]);
+                builder.add(zeroIfMissing(records.getDouble(position + OFFSET_GENERATION)),
+                        zeroIfMissing(records.getDouble(position + OFFSET_EFFICIENCY)),
+                        zeroIfMissing(records.getDouble(position + OFFSET_REVENUE)));
+                newest = Math.max(newest, records.getLong(position + OFFSET_TIMESTAMP));
+            }
+            builder.includeTimestampMillis(newest);
+            return builder.build();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void deleteByUserIdAndTimestampBefore(String userId, LocalDateTime keepAfter) {
+        long cutoff = Timestamps.toEpochMillis(keepAfter);
+        lock.writeLock().lock();
+        try {
+            SlotList slots = userSlots(userId);
+            if (slots != null) {
+                for (int slot : Arrays.copyOf(slots.slots, slots.size)) {
+                    if (timestampOf(slot) < cutoff) {
+                        deleteSlot(slot);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Cleaned up old entries for user: {}", userId);
+    }
+
+    public long deleteByTimestampBefore(LocalDateTime cutoff) {
+        long cutoffMillis = Timestamps.toEpochMillis(cutoff);
+        long removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (int slot = 0; slot < recordCount; slot++) {
+                if (isLive(slot) && timestampOf(slot) < cutoffMillis) {
+                    deleteSlot(slot);
+                    removed++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.debug("Removed {} entries older than {}", removed, cutoff);
+        return removed;
+    }
+
+    public Map<String, Object> getStorageStatistics() {
+        lock.readLock().lock();
+        try {
+            long userIndexBytes = 0;
+            for (SlotList slots : slotsByUser.values()) {
+                userIndexBytes += 16 + 4L * slots.slots.length;
+            }
+            long heapBytes = idIndex.memoryBytes() + userIndexBytes + 4L * freeSlots.slots.length;
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("engine", "mmap");
+            stats.put("entries", liveCount);
+            stats.put("recordSlots", recordCount);
+            stats.put("recordFileBytes", records.mappedBytes());
+            stats.put("stringFileBytes", stringsEnd);
+            stats.put("heapIndexBytes", heapBytes);
+            stats.put("heapBytesPerEntry", liveCount > 0 ? heapBytes / liveCount : 0);
+            stats.put("directory", records.getPath().getParent().toAbsolutePath().toString());
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        lock.writeLock().lock();
+        try {
+            records.close();
+            strings.close();
+            logger.info("Closed memory-mapped entry store with {} entries", liveCount);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuild the on-heap indexes from the mapped files.
+     */
+    private void load() {
+        if (records.getInt(HEADER_MAGIC) != MAGIC) {
+            records.putInt(HEADER_MAGIC, MAGIC);
+            records.putInt(HEADER_VERSION, VERSION);
+            records.putInt(HEADER_RECORD_SIZE, RECORD_SIZE);
+            records.putLong(HEADER_RECORD_COUNT, 0);
+            strings.putInt(HEADER_MAGIC, MAGIC);
+            strings.putLong(STRING_HEADER_END, STRING_HEADER_SIZE);
+        } else if (records.getInt(HEADER_RECORD_SIZE) != RECORD_SIZE) {
+            throw new IllegalStateException("Unsupported entry record size in " + records.getPath());
+        }
+
+        recordCount = (int) records.getLong(HEADER_RECORD_COUNT);
+        stringsEnd = strings.getLong(STRING_HEADER_END);
+
+        for (int slot = 0; slot < recordCount; slot++) {
+            if (!isLive(slot)) {
+                freeSlots.add(slot);
+                continue;
+            }
+            long position = position(slot);
+            String id = readString(records.getLong(position + OFFSET_ID_REF));
+            byte[] idBytes = utf8(id);
+            long sequence = sequenceOf(slot);
+            nextSequence = Math.max(nextSequence, sequence + 1);
+            int existing = idIndex.get(id.hashCode(), candidate -> stringEquals(records.getLong(position(candidate) + OFFSET_ID_REF), idBytes));
+            if (existing != IntHashIndex.NOT_FOUND) {
+                // An update was interrupted before the old version was retired. Keep the copy
+                // written last: slots are reused, so the newer one may sit in a lower slot.
+                // Records from before sequences were stored all read 0; keep the later slot.
+                if (sequenceOf(existing) > sequence) {
+                    retire(slot);
+                    continue;
+                }
+                retire(existing);
+                liveCount--;
+            }
+            idIndex.put(id.hashCode(), slot, candidate -> candidate == existing);
+            long userRef = records.getLong(position + OFFSET_USER_REF);
+            slotsByUser.computeIfAbsent(userRef, k -> new SlotList()).add(slot);
+            intern(userRef);
+            intern(records.getLong(position + OFFSET_PLANT_REF));
+            liveCount++;
+        }
+        for (SlotList slots : slotsByUser.values()) {
+            slots.sortNewestFirst(this::timestampOf);
+        }
+    }
+
+    private void writeRecord(int slot, SolarDataEntry entry, long idRef) {
+        long position = position(slot);
+        // Fill the record first and flip it live last, so a torn write is never loaded
+        records.putByte(position + OFFSET_STATE, STATE_EMPTY);
+        records.putByte(position + OFFSET_FLAGS, entry.isPublic() ? FLAG_PUBLIC : 0);
+        long sequence = nextSequence++;
+        records.putShort(position + OFFSET_SEQUENCE_HIGH, (short) (sequence >>> 32));
+        records.putInt(position + OFFSET_SEQUENCE_LOW, (int) sequence);
+        records.putLong(position + OFFSET_TIMESTAMP, entry.getTimestampMillis());
+        records.putDouble(position + OFFSET_GENERATION, unboxed(entry.getGeneration()));
+        records.putDouble(position + OFFSET_CAPACITY, unboxed(entry.getCapacity()));
+        records.putDouble(position + OFFSET_EFFICIENCY, unboxed(entry.getEfficiency()));
+        records.putDouble(position + OFFSET_TEMPERATURE, unboxed(entry.getTemperature()));
+        records.putDouble(position + OFFSET_IRRADIANCE, unboxed(entry.getIrradiance()));
+        records.putDouble(position + OFFSET_REVENUE, unboxed(entry.getRevenue()));
+        records.putLong(position + OFFSET_ID_REF, idRef);
+        records.putLong(position + OFFSET_USER_REF, internedRef(entry.getUserId()));
+        records.putLong(position + OFFSET_PLANT_REF, internedRef(entry.getPlantName()));
+        records.putLong(position + OFFSET_NOTES_REF,
+                entry.getNotes() != null ? appendString(utf8(entry.getNotes())) : NO_STRING);
+        records.putByte(position + OFFSET_STATE, STATE_LIVE);
+    }
+
+    private SolarDataEntry materialize(int slot) {
+        long position = position(slot);
+        SolarDataEntry entry = new SolarDataEntry();
+        entry.setId(readString(records.getLong(position + OFFSET_ID_REF)));
+        entry.setUserId(internedValues.get(records.getLong(position + OFFSET_USER_REF)));
+        entry.setPlantName(internedValues.get(records.getLong(position + OFFSET_PLANT_REF)));
+        entry.setGeneration(boxed(records.getDouble(position + OFFSET_GENERATION)));
+        entry.setCapacity(boxed(records.getDouble(position + OFFSET_CAPACITY)));
+        entry.setEfficiency(boxed(records.getDouble(position + OFFSET_EFFICIENCY)));
+        entry.setTemperature(boxed(records.getDouble(position + OFFSET_TEMPERATURE)));
+        entry.setIrradiance(boxed(records.getDouble(position + OFFSET_IRRADIANCE)));
+        entry.setRevenue(boxed(records.getDouble(position + OFFSET_REVENUE)));
+        entry.setTimestampMillis(records.getLong(position + OFFSET_TIMESTAMP));
+        entry.setPublic((records.getByte(position + OFFSET_FLAGS) & FLAG_PUBLIC) != 0);
+        entry.setNotes(readString(records.getLong(position + OFFSET_NOTES_REF)));
+        return entry;
+    }
+
+    private List<SolarDataEntry> materializeAll(List<Integer> slots) {
+        List<SolarDataEntry> result = new ArrayList<>(slots.size());
+        for (int slot : slots) {
+            result.add(materialize(slot));
+        }
+        return result;
+    }
+
+    /**
+     * Materialize all live records matching a predicate over slot numbers.
+     */
+    private List<SolarDataEntry> collect(IntPredicate slotFilter) {
+        List<SolarDataEntry> result = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            for (int slot = 0; slot < recordCount; slot++) {
+                if (isLive(slot) && slotFilter.test(slot)) {
+                    result.add(materialize(slot));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    private TopK.Selector<Integer> newestSlots(int k) {
+        return new TopK.Selector<>(slot -> true, (a, b) -> Long.compare(timestampOf(b), timestampOf(a)), k);
+    }
+
+    /**
+     * Remove a live slot from the id index and retire it.
+     */
+    private void deleteSlot(int slot) {
+        long idRef = records.getLong(position(slot) + OFFSET_ID_REF);
+        idIndex.remove(readString(idRef).hashCode(), candidate -> candidate == slot);
+        retire(slot);
+        liveCount--;
+    }
+
+    /**
+     * Mark a slot deleted, drop it from its user's list and make it reusable.
+     */
+    private void retire(int slot) {
+        long position = position(slot);
+        records.putByte(position + OFFSET_STATE, STATE_DELETED);
+        SlotList slots = slotsByUser.get(records.getLong(position + OFFSET_USER_REF));
+        if (slots != null) {
+            slots.remove(slot);
+        }
+        freeSlots.add(slot);
+    }
+
+    private SlotList userSlots(String userId) {
+        Long userRef = internedRefs.get(userId);
+        return userRef != null ? slotsByUser.get(userRef) : null;
+    }
+
+    private boolean isLive(int slot) {
+        return records.getByte(position(slot) + OFFSET_STATE) == STATE_LIVE;
+    }
+
+    private boolean isPublic(int slot) {
+        return (records.getByte(position(slot) + OFFSET_FLAGS) & FLAG_PUBLIC) != 0;
+    }
+
+    private long sequenceOf(int slot) {
+        long position = position(slot);
+        return (records.getShort(position + OFFSET_SEQUENCE_HIGH) & 0xFFFFL) << 32
+                | records.getInt(position + OFFSET_SEQUENCE_LOW) & 0xFFFFFFFFL;
+    }
+
+    private long timestampOf(int slot) {
+        return records.getLong(position(slot) + OFFSET_TIMESTAMP);
+    }
+
+    private static long position(int slot) {
+        return (slot + 1L) * RECORD_SIZE;
+    }
+
+    /**
+     * String reference for a user id or plant name, appending it only the first time it is seen.
+     */
+    private long internedRef(String value) {
+        if (value == null) {
+            return NO_STRING;
+        }
+        Long ref = internedRefs.get(value);
+        if (ref == null) {
+            ref = appendString(utf8(value));
+            internedRefs.put(value, ref);
+            internedValues.put(ref, value);
+        }
+        return ref;
+    }
+
+    private void intern(long ref) {
+        if (ref != NO_STRING && !internedValues.containsKey(ref)) {
+            String value = readString(ref);
+            internedValues.put(ref, value);
+            internedRefs.put(value, ref);
+        }
+    }
+
+    private long appendString(byte[] bytes) {
+        int length = 4 + bytes.length;
+        if (length > STRING_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Value too large for memory-mapped storage");
+        }
+        // Values never straddle a chunk; skip to the next one if this one is too full
+        long offsetInChunk = stringsEnd % STRING_CHUNK_SIZE;
+        if (offsetInChunk + length > STRING_CHUNK_SIZE) {
+            stringsEnd += STRING_CHUNK_SIZE - offsetInChunk;
+        }
+        long ref = stringsEnd;
+        strings.putInt(ref, bytes.length);
+        strings.putBytes(ref + 4, bytes);
+        stringsEnd += length;
+        strings.putLong(STRING_HEADER_END, stringsEnd);
+        return ref;
+    }
+
+    private String readString(long ref) {
+        if (ref == NO_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[strings.getInt(ref)];
+        strings.getBytes(ref + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compare a stored string with UTF-8 bytes without decoding it.
+     */
+    private boolean stringEquals(long ref, byte[] bytes) {
+        if (ref == NO_STRING || strings.getInt(ref) != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (strings.getByte(ref + 4 + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static double unboxed(Double value) {
+        return value != null ? value : Double.NaN;
+    }
+
+    private static Double boxed(double value) {
+        return Double.isNaN(value) ? null : value;
+    }
+
+    private static double zeroIfMissing(double value) {
+        return Double.isNaN(value) ? 0.0 : value;
+    }
+}
@@ -0,0 +1,62 @@
+package com.maxxenergy.edap.repository;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import java.time.LocalDateTime;
+
+/**
+ * Snapshot of one time partition of the entry store.
+ * Generation bounds only ever widen while the partition is live, so after deletes
+ * they remain safe (if loose) bounds for pruning partitions from a query.
+ */
+public class PartitionStatistics {
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private final LocalDateTime start;
+
+    @JsonFormat(pattern = "yyyy-MM-dd'T'HH:mm:ss")
+    private final LocalDateTime end;
+
+    private final long entryCount;
+    private final Double minGeneration;
+    private final Double maxGeneration;
+
+    public PartitionStatistics(LocalDateTime start, LocalDateTime end, long entryCount,
+                               Double minGeneration, Double maxGeneration) {
+        this.start = start;
+        this.end = end;
+        this.entryCount = entryCount;
+        this.minGeneration = minGeneration;
+        this.maxGeneration = maxGeneration;
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public LocalDateTime getEnd() {
+        return end;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public Double getMinGeneration() {
+        return minGeneration;
+    }
+
+    public Double getMaxGeneration() {
+        return maxGeneration;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionStatistics{" +
+                "start=" + start +
+                ", end=" + end +
+                ", entryCount=" + entryCount +
+                ", minGeneration=" + minGeneration +
+                ", maxGeneration=" + maxGeneration +
+                '}';
+    }
+}
@@ -0,0 +1,488 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.IdGenerator;
+import com.maxxenergy.edap.storage.SnowflakeIdGenerator;
+import com.maxxenergy.edap.storage.WriteAheadLogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Sharded in-memory storage engine for SolarDataEntry entities (edap.storage.type=sharded).
+ *
+ * Entries are partitioned by user id hash over a fixed number of independent
+ * {@link InMemorySolarDataEntryRepository} shards, each with its own maps, indexes, locks
+ * and write-ahead log ({@code entries-shard-<n>}), so writes for different users rarely
+ * touch the same data structures and scale with cores. Per-user queries go to a single
+ * shard; queries across users are fanned out to all shards in parallel and their results
+ * merged in the order a single store would return them.
+ *
+ * The shard count (edap.storage.shards, default: available processors) must not change
+ * while data exists, since it decides where each user's entries live. An entry's user id
+ * must not change after it is saved.
+ */
+@Repository
+@ConditionalOnProperty(name = "edap.storage.type", havingValue = "sharded")
+public class ShardedSolarDataEntryRepository implements SolarDataEntryRepository {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardedSolarDataEntryRepository.class);
+
+    // Breaks ties between equal values when merging value index results, as the indexes do
+    private static final Comparator<SolarDataEntry> BY_ID = Comparator.comparing(SolarDataEntry::getId);
+
+    @Value("${edap.storage.shards:0}")
+    private int shardCount;
+
+    @Autowired(required = false)
+    private WriteAheadLogFactory logFactory;
+
+    @Autowired(required = false)
+    private IdGenerator idGenerator = new SnowflakeIdGenerator(0);
+
+    private InMemorySolarDataEntryRepository[] shards;
+
+    private ExecutorService queryExecutor;
+
+    /**
+     * Create the shards and recover them from their logs in parallel.
+     */
+    @PostConstruct
+    public void start() throws IOException {
+        int count = shardCount > 0 ? shardCount : Runtime.getRuntime().availableProcessors();
+        shards = new InMemorySolarDataEntryRepository[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new InMemorySolarDataEntryRepository("entries-shard-" + i, logFactory, idGenerator);
+        }
+        queryExecutor = Executors.newFixedThreadPool(count, runnable -> {
+            Thread thread = new Thread(runnable, "shard-query");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long started = System.currentTimeMillis();
+        fanOut(shard -> {
+            try {
+                shard.recover();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return null;
+        });
+        for (int i = 0; i < count; i++) {
+            for (String userId : shards[i].findDistinctUserIds()) {
+                if (shard(userId) != shards[i]) {
+                    throw new IllegalStateException("Stored entries were sharded with a different shard count; " +
+                            "edap.storage.shards cannot change while data exists");
+                }
+            }
+        }
+        logger.info("Opened {} storage shards with {} entries in {} ms",
+                count, count(), System.currentTimeMillis() - started);
+    }
+
+    /**
+     * Snapshot every shard, one after another.
+     */
+    public void checkpoint() throws IOException {
+        for (InMemorySolarDataEntryRepository shard : shards) {
+            shard.checkpoint();
+        }
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        queryExecutor.shutdown();
+        for (InMemorySolarDataEntryRepository shard : shards) {
+            shard.close();
+        }
+    }
+
+    public SolarDataEntry save(SolarDataEntry entry) {
+        InMemorySolarDataEntryRepository target = shard(entry.getUserId());
+        boolean generatedId = entry.getId() == null;
+        if (!target.replace(entry) && !generatedId) {
+            removeFromOtherShards(entry.getId(), target);
+        }
+        return entry;
+    }
+
+    /**
+     * Split the batch by shard and save the parts in parallel.
+     */
+    public List<SolarDataEntry> saveAll(Collection<SolarDataEntry> batch) {
+        Map<InMemorySolarDataEntryRepository, List<SolarDataEntry>> byShard = new HashMap<>();
+        Set<SolarDataEntry> generatedIds = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (SolarDataEntry entry : batch) {
+            byShard.computeIfAbsent(shard(entry.getUserId()), k -> new ArrayList<>()).add(entry);
+            if (entry.getId() == null) {
+                generatedIds.add(entry);
+            }
+        }
+        Map<InMemorySolarDataEntryRepository, boolean[]> replaced = new HashMap<>();
+        if (byShard.size() == 1) {
+            Map.Entry<InMemorySolarDataEntryRepository, List<SolarDataEntry>> only = byShard.entrySet().iterator().next();
+            replaced.put(only.getKey(), only.getKey().replaceAll(only.getValue()));
+        } else {
+            List<InMemorySolarDataEntryRepository> targets = new ArrayList<>(byShard.keySet());
+            List<Callable<boolean[]>> tasks = new ArrayList<>();
+            for (InMemorySolarDataEntryRepository shard : targets) {
+                tasks.add(() -> shard.replaceAll(byShard.get(shard)));
+            }
+            List<boolean[]> results = invokeAll(tasks);
+            for (int i = 0; i < targets.size(); i++) {
+                replaced.put(targets.get(i), results.get(i));
+            }
+        }
+        byShard.forEach((shard, entries) -> {
+            boolean[] shardReplaced = replaced.get(shard);
+            for (int i = 0; i < entries.size(); i++) {
+                SolarDataEntry entry = entries.get(i);
+                if (!shardReplaced[i] && !generatedIds.contains(entry)) {
+                    removeFromOtherShards(entry.getId(), shard);
+                }
+            }
+        });
+        return new ArrayList<>(batch);
+    }
+
+    /**
+     * Drop the previous version of an entry whose user moved it to another shard. Only
+     * called for a supplied id the target shard did not hold, since an update that stays
+     * in its shard replaces the previous version there. The new version is saved first,
+     * so a crash in between leaves a duplicate rather than losing it.
+     */
+    private void removeFromOtherShards(String id, InMemorySolarDataEntryRepository target) {
+        for (InMemorySolarDataEntryRepository shard : shards) {
+            if (shard != target && shard.findById(id).isPresent()) {
+                shard.deleteById(id);
+            }
+        }
+    }
+
+    public Optional<SolarDataEntry> findById(String id) {
+        for (InMemorySolarDataEntryRepository shard : shards) {
+            Optional<SolarDataEntry> entry = shard.findById(id);
+            if (entry.isPresent()) {
+                return entry;
+            }
+        }
+        return Optional.empty();
+    }
+
+    public void deleteById(String id) {
+        for (InMemorySolarDataEntryRepository shard : shards) {
+            if (shard.findById(id).isPresent()) {
+                shard.deleteById(id);
+                return;
+            }
+        }
+    }
+
+    public void deleteAll() {
+        fanOut(shard -> {
+            shard.deleteAll();
+            return null;
+        });
+    }
+
+    public long count() {
+        long count = 0;
+        for (InMemorySolarDataEntryRepository shard : shards) {
+            count += shard.count();
+        }
+        return count;
+    }
+
+    public void forEachEntry(Consumer<SolarDataEntry> action) {
+        for (InMemorySolarDataEntryRepository shard : shards) {
+            shard.forEachEntry(action);
+        }
+    }
+
+    public List<SolarDataEntry> findAll() {
+        return concat(fanOut(InMemorySolarDataEntryRepository::findAll));
+    }
+
+    // Per-user queries are answered by the user's shard alone
+
+    public List<SolarDataEntry> findByUserIdOrderByTimestampDesc(String userId) {
+        return shard(userId).findByUserIdOrderByTimestampDesc(userId);
+    }
+
+    public List<SolarDataEntry> findTop10ByUserIdOrderByTimestampDesc(String userId) {
+        return shard(userId).findTop10ByUserIdOrderByTimestampDesc(userId);
+    }
+
+    public List<SolarDataEntry> findTopKByUserIdOrderByTimestampDesc(String userId, int k) {
+        return shard(userId).findTopKByUserIdOrderByTimestampDesc(userId, k);
+    }
+
+    public EntryPage findPageByUserIdOrderByTimestampDesc(String userId, EntryCursor after, int limit) {
+        return shard(userId).findPageByUserIdOrderByTimestampDesc(userId, after, limit);
+    }
+
+    public void forEachByUserIdOrderByTimestampDesc(String userId, Consumer<SolarDataEntry> action) {
+        shard(userId).forEachByUserIdOrderByTimestampDesc(userId, action);
+    }
+
+    public List<SolarDataEntry> findByUserIdAndTimestampBetweenOrderByTimestampDesc(
+            String userId, LocalDateTime start, LocalDateTime end) {
+        return shard(userId).findByUserIdAndTimestampBetweenOrderByTimestampDesc(userId, start, end);
+    }
+
+    public List<SolarDataEntry> findGenerationByUserId(String userId) {
+        return shard(userId).findGenerationByUserId(userId);
+    }
+
+    public long countByUserId(String userId) {
+        return shard(userId).countByUserId(userId);
+    }
+
+    public EntryStatistics summarizeByUserId(String userId) {
+        return shard(userId).summarizeByUserId(userId);
+    }
+
+    public void deleteByUserIdAndTimestampBefore(String userId, LocalDateTime keepAfter) {
+        shard(userId).deleteByUserIdAndTimestampBefore(userId, keepAfter);
+    }
+
+    public long deleteOldestByUserIdBeyond(String userId, int maxEntries) {
+        return shard(userId).deleteOldestByUserIdBeyond(userId, maxEntries);
+    }
+
+    // Queries across users are fanned out and merged
+
+    public List<SolarDataEntry> findByIsPublicTrueOrderByTimestampDesc() {
+        return sorted(fanOut(InMemorySolarDataEntryRepository::findByIsPublicTrueOrderByTimestampDesc),
+                NEWEST_FIRST_THEN_ID);
+    }
+
+    public List<SolarDataEntry> findTop10ByIsPublicTrueOrderByTimestampDesc() {
+        return findTopKByIsPublicTrueOrderByTimestampDesc(10);
+    }
+
+    public List<SolarDataEntry> findTopKByIsPublicTrueOrderByTimestampDesc(int k) {
+        return best(fanOut(shard -> shard.findTopKByIsPublicTrueOrderByTimestampDesc(k)), NEWEST_FIRST_THEN_ID, k);
+    }
+
+    /**
+     * Each shard contributes up to one page plus one entry past the cursor; the best of
+     * those make the merged page, and any left over show that another page follows.
+     */
+    public EntryPage findPageByIsPublicTrueOrderByTimestampDesc(EntryCursor after, int limit) {
+        List<List<SolarDataEntry>> pages = fanOut(shard ->
+                shard.findPageByIsPublicTrueOrderByTimestampDesc(after, limit + 1).getEntries());
+        return EntryPage.of(best(pages, NEWEST_FIRST_THEN_ID, limit + 1), limit);
+    }
+
+    public List<SolarDataEntry> findTopK(Predicate<SolarDataEntry> filter,
+                                         Comparator<SolarDataEntry> order, int k) {
+        return best(fanOut(shard -> shard.findTopK(filter, order, k)), order, k);
+    }
+
+    public List<SolarDataEntry> findByPlantNameContainingIgnoreCase(String plantName) {
+        return concat(fanOut(shard -> shard.findByPlantNameContainingIgnoreCase(plantName)));
+    }
+
+    public Map<String, Long> countByPlantNameContainingIgnoreCase(String fragment) {
+        Map<String, Long> counts = new HashMap<>();
+        for (Map<String, Long> shardCounts : fanOut(shard -> shard.countByPlantNameContainingIgnoreCase(fragment))) {
+            shardCounts.forEach((name, count) -> counts.merge(name, count, Long::sum));
+        }
+        return counts;
+    }
+
+    public List<SolarDataEntry> findByTimestampBetween(LocalDateTime start, LocalDateTime end) {
+        return sorted(fanOut(shard -> shard.findByTimestampBetween(start, end)), NEWEST_FIRST_THEN_ID);
+    }
+
+    /**
+     * Visit the entries strictly between start and end, shard by shard, so the visitor
+     * is never called concurrently.
+     */
+    public void forEachByTimestampBetween(LocalDateTime start, LocalDateTime end, Consumer<SolarDataEntry> action) {
+        for (InMemorySolarDataEntryRepository shard : shards) {
+            shard.forEachByTimestampBetween(start, end, action);
+        }
+    }
+
+    public List<SolarDataEntry> findRecentEntries(LocalDateTime sinceDate) {
+        return sorted(fanOut(shard -> shard.findRecentEntries(sinceDate)), NEWEST_FIRST_THEN_ID);
+    }
+
+    public List<SolarDataEntry> findByGenerationGreaterThanEqual(Double threshold) {
+        return sorted(fanOut(shard -> shard.findByGenerationGreaterThanEqual(threshold)),
+                ascending(SolarDataEntry::getGeneration));
+    }
+
+    public List<SolarDataEntry> findByEfficiencyGreaterThanEqual(Double efficiency) {
+        return sorted(fanOut(shard -> shard.findByEfficiencyGreaterThanEqual(efficiency)),
+                ascending(SolarDataEntry::getEfficiency));
+    }
+
+    public List<SolarDataEntry> findByCapacityUtilizationGreaterThanEqual(Double utilization) {
+        return sorted(fanOut(shard -> shard.findByCapacityUtilizationGreaterThanEqual(utilization)),
+                ascending(SolarDataEntry::getCapacityUtilization));
+    }
+
+    public List<SolarDataEntry> findByGenerationBetween(Double min, Double max) {
+        return sorted(fanOut(shard -> shard.findByGenerationBetween(min, max)),
+                ascending(SolarDataEntry::getGeneration));
+    }
+
+    public List<SolarDataEntry> findByEfficiencyBetween(Double min, Double max) {
+        return sorted(fanOut(shard -> shard.findByEfficiencyBetween(min, max)),
+                ascending(SolarDataEntry::getEfficiency));
+    }
+
+    public List<SolarDataEntry> findTopKByEfficiencyGreaterThanEqualOrderByEfficiencyDesc(
+            double minEfficiency, Predicate<SolarDataEntry> filter, int k) {
+        return best(fanOut(shard -> shard.findTopKByEfficiencyGreaterThanEqualOrderByEfficiencyDesc(minEfficiency, filter, k)),
+                EFFICIENCY_DESC, k);
+    }
+
+    public Set<String> findDistinctUserIds() {
+        Set<String> userIds = new HashSet<>();
+        fanOut(InMemorySolarDataEntryRepository::findDistinctUserIds).forEach(userIds::addAll);
+        return userIds;
+    }
+
+    public long deleteByTimestampBefore(LocalDateTime cutoff) {
+        long removed = 0;
+        for (Long shardRemoved : fanOut(shard -> shard.deleteByTimestampBefore(cutoff))) {
+            removed += shardRemoved;
+        }
+        return removed;
+    }
+
+    /**
+     * Statistics for each hourly partition, oldest first, combined over all shards.
+     */
+    public List<PartitionStatistics> getPartitionStatistics() {
+        TreeMap<LocalDateTime, PartitionStatistics> combined = new TreeMap<>();
+        for (List<PartitionStatistics> shardPartitions : fanOut(InMemorySolarDataEntryRepository::getPartitionStatistics)) {
+            for (PartitionStatistics partition : shardPartitions) {
+                combined.merge(partition.getStart(), partition, ShardedSolarDataEntryRepository::combine);
+            }
+        }
+        return new ArrayList<>(combined.values());
+    }
+
+    public Map<String, Object> getStorageStatistics() {
+        long entries = 0;
+        long users = 0;
+        long estimatedBytes = 0;
+        List<Long> entriesPerShard = new ArrayList<>();
+        for (Map<String, Object> shardStats : fanOut(InMemorySolarDataEntryRepository::getStorageStatistics)) {
+            long shardEntries = ((Number) shardStats.get("entries")).longValue();
+            entries += shardEntries;
+            users += ((Number) shardStats.get("users")).longValue();
+            estimatedBytes += ((Number) shardStats.get("estimatedBytes")).longValue();
+            entriesPerShard.add(shardEntries);
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", "sharded");
+        stats.put("shards", shards.length);
+        stats.put("entries", entries);
+        stats.put("users", users);
+        stats.put("partitions", getPartitionStatistics().size());
+        stats.put("estimatedBytes", estimatedBytes);
+        stats.put("estimatedBytesBasis", "fixed per-entry estimate");
+        stats.put("entriesPerShard", entriesPerShard);
+        return stats;
+    }
+
+    private InMemorySolarDataEntryRepository shard(String userId) {
+        int hash = userId != null ? userId.hashCode() : 0;
+        // Spread the high bits, as HashMap does, before reducing to a shard number
+        return shards[Math.floorMod(hash ^ (hash >>> 16), shards.length)];
+    }
+
+    /**
+     * Run the query on every shard in parallel and return the results in shard order.
+     */
+    private <T> List<T> fanOut(Function<InMemorySolarDataEntryRepository, T> query) {
+        if (shards.length == 1) {
+            return Collections.singletonList(query.apply(shards[0]));
+        }
+        List<Callable<T>> tasks = new ArrayList<>(shards.length);
+        for (InMemorySolarDataEntryRepository shard : shards) {
+            tasks.add(() -> query.apply(shard));
+        }
+        return invokeAll(tasks);
+    }
+
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) {
+        try {
+            List<T> results = new ArrayList<>(tasks.size());
+            for (Future<T> future : queryExecutor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while querying storage shards", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException("Storage shard query failed", cause);
+        }
+    }
+
+    private static List<SolarDataEntry> concat(List<List<SolarDataEntry>> parts) {
+        int size = 0;
+        for (List<SolarDataEntry> part : parts) {
+            size += part.size();
+        }
+        List<SolarDataEntry> result = new ArrayList<>(size);
+        parts.forEach(result::addAll);
+        return result;
+    }
+
+    private static List<SolarDataEntry> sorted(List<List<SolarDataEntry>> parts, Comparator<SolarDataEntry> order) {
+        List<SolarDataEntry> result = concat(parts);
+        result.sort(order);
+        return result;
+    }
+
+    /**
+     * The k best entries of the per-shard results according to the given order.
+     */
+    private static List<SolarDataEntry> best(List<List<SolarDataEntry>> parts, Comparator<SolarDataEntry> order, int k) {
+        return TopK.select(concat(parts), entry -> true, order, k);
+    }
+
+    private static Comparator<SolarDataEntry> ascending(Function<SolarDataEntry, Double> value) {
+        return Comparator.comparing(value, Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(BY_ID);
+    }
+
+    private static PartitionStatistics combine(PartitionStatistics a, PartitionStatistics b) {
+        Double min = a.getMinGeneration() == null ? b.getMinGeneration()
+                : b.getMinGeneration() == null ? a.getMinGeneration()
+                : Double.valueOf(Math.min(a.getMinGeneration(), b.getMinGeneration()));
+        Double max = a.getMaxGeneration() == null ? b.getMaxGeneration()
+                : b.getMaxGeneration() == null ? a.getMaxGeneration()
+                : Double.valueOf(Math.max(a.getMaxGeneration(), b.getMaxGeneration()));
+        return new PartitionStatistics(a.getStart(), a.getEnd(), a.getEntryCount() + b.getEntryCount(), min, max);
+    }
+}
@@ -0,0 +1,368 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.Timestamps;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Storage contract for SolarDataEntry entities.
+ * Implementations are selected with the edap.storage.type property.
+ *
+ * Only the core operations are abstract; every query has a default implementation
+ * built on {@link #forEachEntry(Consumer)} that defines its expected results.
+ * Engines override the queries they can answer faster from their own layout.
+ */
+public interface SolarDataEntryRepository {
+
+    Comparator<SolarDataEntry> NEWEST_FIRST = (a, b) -> Long.compare(b.getTimestampMillis(), a.getTimestampMillis());
+
+    // Total order used by keyset pagination; ties on timestamp are broken by id
+    Comparator<SolarDataEntry> NEWEST_FIRST_THEN_ID = NEWEST_FIRST.thenComparing(SolarDataEntry::getId);
+
+    Comparator<SolarDataEntry> EFFICIENCY_DESC = (a, b) -> Double.compare(b.getEfficiency(), a.getEfficiency());
+
+    SolarDataEntry save(SolarDataEntry entry);
+
+    /**
+     * Save a batch of entries, assigning ids to those without one. Engines override this to
+     * pay for locking, logging and durability once per batch rather than once per entry.
+     */
+    default List<SolarDataEntry> saveAll(Collection<SolarDataEntry> batch) {
+        List<SolarDataEntry> saved = new ArrayList<>(batch.size());
+        for (SolarDataEntry entry : batch) {
+            saved.add(save(entry));
+        }
+        return saved;
+    }
+
+    Optional<SolarDataEntry> findById(String id);
+
+    void deleteById(String id);
+
+    void deleteAll();
+
+    long count();
+
+    /**
+     * Visit every stored entry, in no particular order.
+     */
+    void forEachEntry(Consumer<SolarDataEntry> action);
+
+    default List<SolarDataEntry> findAll() {
+        List<SolarDataEntry> result = new ArrayList<>();
+        forEachEntry(result::add);
+        return result;
+    }
+
+    default List<SolarDataEntry> findByUserIdOrderByTimestampDesc(String userId) {
+        List<SolarDataEntry> result = findMatching(byUser(userId));
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    default List<SolarDataEntry> findByIsPublicTrueOrderByTimestampDesc() {
+        List<SolarDataEntry> result = findMatching(SolarDataEntry::isPublic);
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    default List<SolarDataEntry> findTop10ByUserIdOrderByTimestampDesc(String userId) {
+        return findTopKByUserIdOrderByTimestampDesc(userId, 10);
+    }
+
+    default List<SolarDataEntry> findTop10ByIsPublicTrueOrderByTimestampDesc() {
+        return findTopKByIsPublicTrueOrderByTimestampDesc(10);
+    }
+
+    /**
+     * Newest k entries of a user.
+     */
+    default List<SolarDataEntry> findTopKByUserIdOrderByTimestampDesc(String userId, int k) {
+        return findTopK(byUser(userId), NEWEST_FIRST, k);
+    }
+
+    /**
+     * Newest k public entries.
+     */
+    default List<SolarDataEntry> findTopKByIsPublicTrueOrderByTimestampDesc(int k) {
+        return findTopK(SolarDataEntry::isPublic, NEWEST_FIRST, k);
+    }
+
+    /**
+     * A page of a user's entries, newest first, starting after the cursor (null for the first page).
+     */
+    default EntryPage findPageByUserIdOrderByTimestampDesc(String userId, EntryCursor after, int limit) {
+        return findPage(byUser(userId), after, limit);
+    }
+
+    /**
+     * A page of public entries, newest first, starting after the cursor (null for the first page).
+     */
+    default EntryPage findPageByIsPublicTrueOrderByTimestampDesc(EntryCursor after, int limit) {
+        return findPage(SolarDataEntry::isPublic, after, limit);
+    }
+
+    /**
+     * A page of the entries matching the filter, newest first, starting after the cursor.
+     * Only selects {@code limit + 1} entries, however many match.
+     */
+    default EntryPage findPage(Predicate<SolarDataEntry> filter, EntryCursor after, int limit) {
+        Predicate<SolarDataEntry> remaining = after != null ? filter.and(after::precedes) : filter;
+        return EntryPage.of(findTopK(remaining, NEWEST_FIRST_THEN_ID, limit + 1), limit);
+    }
+
+    /**
+     * Make an entry public or private, re-filing it in any visibility-dependent index.
+     *
+     * @return the updated entry, or empty if there is no entry with that id
+     */
+    default Optional<SolarDataEntry> updateVisibility(String id, boolean isPublic) {
+        return findById(id).map(entry -> {
+            entry.setPublic(isPublic);
+            return save(entry);
+        });
+    }
+
+    /**
+     * The k best entries matching the filter according to the given order.
+     */
+    default List<SolarDataEntry> findTopK(Predicate<SolarDataEntry> filter,
+                                          Comparator<SolarDataEntry> order, int k) {
+        TopK.Selector<SolarDataEntry> selector = new TopK.Selector<>(filter, order, k);
+        forEachEntry(selector);
+        return selector.result();
+    }
+
+    default List<SolarDataEntry> findByPlantNameContainingIgnoreCase(String plantName) {
+        String needle = plantName.toLowerCase();
+        return findMatching(entry -> entry.getPlantName() != null &&
+                entry.getPlantName().toLowerCase().contains(needle));
+    }
+
+    /**
+     * Distinct plant names containing the fragment, ignoring case, with their entry counts.
+     */
+    default Map<String, Long> countByPlantNameContainingIgnoreCase(String fragment) {
+        String needle = fragment.toLowerCase();
+        Map<String, Long> counts = new HashMap<>();
+        forEachEntry(entry -> {
+            if (entry.getPlantName() != null && entry.getPlantName().toLowerCase().contains(needle)) {
+                counts.merge(entry.getPlantName(), 1L, Long::sum);
+            }
+        });
+        return counts;
+    }
+
+    default List<SolarDataEntry> findByTimestampBetween(LocalDateTime start, LocalDateTime end) {
+        List<SolarDataEntry> result = new ArrayList<>();
+        forEachByTimestampBetween(start, end, result::add);
+        return result;
+    }
+
+    /**
+     * Visit the entries strictly between start and end, in no particular order,
+     * without collecting them first.
+     */
+    default void forEachByTimestampBetween(LocalDateTime start, LocalDateTime end, Consumer<SolarDataEntry> action) {
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        forEachEntry(entry -> {
+            if (entry.getTimestampMillis() > from && entry.getTimestampMillis() < to) {
+                action.accept(entry);
+            }
+        });
+    }
+
+    /**
+     * Visit a user's entries newest first. Engines with a time-ordered user index
+     * walk it directly; others have to sort the user's entries first.
+     */
+    default void forEachByUserIdOrderByTimestampDesc(String userId, Consumer<SolarDataEntry> action) {
+        findByUserIdOrderByTimestampDesc(userId).forEach(action);
+    }
+
+    default List<SolarDataEntry> findByUserIdAndTimestampBetweenOrderByTimestampDesc(
+            String userId, LocalDateTime start, LocalDateTime end) {
+        Predicate<SolarDataEntry> byUser = byUser(userId);
+        long from = Timestamps.toEpochMillis(start);
+        long to = Timestamps.toEpochMillis(end);
+        List<SolarDataEntry> result = findMatching(entry -> byUser.test(entry) &&
+                entry.getTimestampMillis() > from && entry.getTimestampMillis() < to);
+        result.sort(NEWEST_FIRST);
+        return result;
+    }
+
+    default List<SolarDataEntry> findByGenerationGreaterThanEqual(Double threshold) {
+        return findMatching(entry -> entry.getGeneration() != null &&
+                entry.getGeneration() >= threshold);
+    }
+
+    default List<SolarDataEntry> findByEfficiencyGreaterThanEqual(Double efficiency) {
+        return findMatching(entry -> entry.getEfficiency() != null &&
+                entry.getEfficiency() >= efficiency);
+    }
+
+    default List<SolarDataEntry> findByCapacityUtilizationGreaterThanEqual(Double utilization) {
+        return findMatching(entry -> entry.getCapacityUtilization() != null &&
+                entry.getCapacityUtilization() >= utilization);
+    }
+
+    /**
+     * Entries with generation in [min, max], inclusive.
+     */
+    default List<SolarDataEntry> findByGenerationBetween(Double min, Double max) {
+        return findMatching(entry -> entry.getGeneration() != null &&
+                entry.getGeneration() >= min && entry.getGeneration() <= max);
+    }
+
+    /**
+     * Entries with efficiency in [min, max], inclusive.
+     */
+    default List<SolarDataEntry> findByEfficiencyBetween(Double min, Double max) {
+        return findMatching(entry -> entry.getEfficiency() != null &&
+                entry.getEfficiency() >= min && entry.getEfficiency() <= max);
+    }
+
+    /**
+     * Up to k entries passing the filter with efficiency of at least minEfficiency,
+     * highest efficiency first.
+     */
+    default List<SolarDataEntry> findTopKByEfficiencyGreaterThanEqualOrderByEfficiencyDesc(
+            double minEfficiency, Predicate<SolarDataEntry> filter, int k) {
+        return findTopK(entry -> entry.getEfficiency() != null && entry.getEfficiency() >= minEfficiency &&
+                filter.test(entry), EFFICIENCY_DESC, k);
+    }
+
+    default List<SolarDataEntry> findGenerationByUserId(String userId) {
+        return findByUserIdOrderByTimestampDesc(userId);
+    }
+
+    default long countByUserId(String userId) {
+        Predicate<SolarDataEntry> byUser = byUser(userId);
+        long[] count = new long[1];
+        forEachEntry(entry -> {
+            if (byUser.test(entry)) {
+                count[0]++;
+            }
+        });
+        return count[0];
+    }
+
+    default List<SolarDataEntry> findRecentEntries(LocalDateTime sinceDate) {
+        long from = Timestamps.toEpochMillis(sinceDate);
+        return findMatching(entry -> entry.getTimestampMillis() > from);
+    }
+
+    /**
+     * Aggregate a user's entries in a single pass.
+     */
+    default EntryStatistics summarizeByUserId(String userId) {
+        Predicate<SolarDataEntry> byUser = byUser(userId);
+        EntryStatistics.Builder builder = new EntryStatistics.Builder();
+        forEachEntry(entry -> {
+            if (byUser.test(entry)) {
+                builder.add(entry);
+            }
+        });
+        return builder.build();
+    }
+
+    default void deleteByUserIdAndTimestampBefore(String userId, LocalDateTime keepAfter) {
+        Predicate<SolarDataEntry> byUser = byUser(userId);
+        long before = Timestamps.toEpochMillis(keepAfter);
+        List<SolarDataEntry> expired = findMatching(entry -> byUser.test(entry) &&
+                entry.getTimestampMillis() < before);
+        expired.forEach(entry -> deleteById(entry.getId()));
+    }
+
+    /**
+     * Whether the per-user entry limit is enforced on every save. Engines that return true
+     * answer {@link #countByUserId} and {@link #deleteOldestByUserIdBeyond} without reading a
+     * user's whole history; the others are only trimmed by the scheduled cleanup.
+     */
+    default boolean enforcesEntryLimitOnSave() {
+        return true;
+    }
+
+    /**
+     * Keep only a user's newest entries, removing the oldest ones beyond the limit.
+     *
+     * @return number of entries removed
+     */
+    default long deleteOldestByUserIdBeyond(String userId, int maxEntries) {
+        List<SolarDataEntry> newestFirst = findByUserIdOrderByTimestampDesc(userId);
+        if (newestFirst.size() <= maxEntries) {
+            return 0;
+        }
+        List<SolarDataEntry> expired = newestFirst.subList(maxEntries, newestFirst.size());
+        expired.forEach(entry -> deleteById(entry.getId()));
+        return expired.size();
+    }
+
+    /**
+     * Ids of the users that have at least one entry.
+     */
+    default Set<String> findDistinctUserIds() {
+        Set<String> userIds = new HashSet<>();
+        forEachEntry(entry -> {
+            if (entry.getUserId() != null) {
+                userIds.add(entry.getUserId());
+            }
+        });
+        return userIds;
+    }
+
+    /**
+     * Drop every entry older than the cutoff.
+     *
+     * @return number of entries removed
+     */
+    default long deleteByTimestampBefore(LocalDateTime cutoff) {
+        long before = Timestamps.toEpochMillis(cutoff);
+        List<SolarDataEntry> expired = findMatching(entry -> entry.getTimestampMillis() < before);
+        expired.forEach(entry -> deleteById(entry.getId()));
+        return expired.size();
+    }
+
+    /**
+     * Statistics for each time partition, oldest first. Empty for engines that do not partition by time.
+     */
+    default List<PartitionStatistics> getPartitionStatistics() {
+        return new ArrayList<>();
+    }
+
+    /**
+     * Write a snapshot so that startup does not have to replay the full history.
+     * Engines without a log or snapshot ignore this.
+     */
+    default void checkpoint() throws IOException {
+    }
+
+    /**
+     * Engine name, entry count and memory usage figures for monitoring.
+     */
+    default Map<String, Object> getStorageStatistics() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", getClass().getSimpleName());
+        stats.put("entries", count());
+        return stats;
+    }
+
+    private List<SolarDataEntry> findMatching(Predicate<SolarDataEntry> filter) {
+        List<SolarDataEntry> result = new ArrayList<>();
+        forEachEntry(entry -> {
+            if (filter.test(entry)) {
+                result.add(entry);
+            }
+        });
+        return result;
+    }
+
+    private static Predicate<SolarDataEntry> byUser(String userId) {
+        return entry -> userId.equals(entry.getUserId());
+    }
+}
@@ -0,0 +1,789 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.BloomFilter;
+import com.maxxenergy.edap.storage.RecordIO;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Immutable, sorted file of entries written by the log-structured engine: one flushed
+ * memtable, or the merge of several older runs.
+ *
+ * Layout: [int magic][int version], data blocks, id blocks, an index section, and a trailer
+ * of [long index offset][int magic]. Every block is [int byte length][int CRC32][values].
+ * Data blocks hold entries ordered by user id, then newest first, then id. Id blocks hold
+ * (id, data block number, offset in block) ordered by id, where block number -1 marks a
+ * deleted id, so a point lookup decodes a single entry.
+ * The index section holds the first and last key and the timestamp range of every data block,
+ * the first id of every id block and a Bloom filter over all ids; only it is kept on the heap
+ * once the run is open.
+ *
+ * A run is written front to back in one pass and never modified; it is written to a temporary
+ * file and renamed into place, so a crash mid-write leaves no partial run behind.
+ */
+final class SortedRun {
+
+    static final int ABSENT = -2;
+    static final int TOMBSTONE = -1;
+
+    // Order of the entries in a run
+    static final Comparator<SolarDataEntry> KEY_ORDER = Comparator
+            .comparing(SolarDataEntry::getUserId, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(SolarDataEntryRepository.NEWEST_FIRST_THEN_ID);
+
+    private static final int MAGIC = 0x454C534D; // "ELSM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int BLOCK_HEADER_SIZE = 8;
+    private static final int TRAILER_SIZE = 12;
+
+    private static final int ENTRIES_PER_BLOCK = 256;
+    private static final int IDS_PER_BLOCK = 512;
+    private static final int BLOOM_BITS_PER_KEY = 10;
+
+    // Ids a writer sorts in memory before spilling them to a temporary file
+    private static final int IDS_PER_SPILL = 1 << 17;
+
+    /**
+     * Position, key range and timestamp range of one data block.
+     */
+    private static final class DataBlock {
+        final long offset;
+        final int length;
+        final String firstUser;
+        final long firstTimestamp;
+        final String lastUser;
+        final long lastTimestamp;
+        final long minTimestamp;
+        final long maxTimestamp;
+
+        DataBlock(long offset, int length, String firstUser, long firstTimestamp, String lastUser, long lastTimestamp,
+                  long minTimestamp, long maxTimestamp) {
+            this.offset = offset;
+            this.length = length;
+            this.firstUser = firstUser;
+            this.firstTimestamp = firstTimestamp;
+            this.lastUser = lastUser;
+            this.lastTimestamp = lastTimestamp;
+            this.minTimestamp = minTimestamp;
+            this.maxTimestamp = maxTimestamp;
+        }
+
+        boolean overlaps(long oldest, long newest) {
+            return minTimestamp <= newest && maxTimestamp >= oldest;
+        }
+    }
+
+    /**
+     * Position and first id of one id block.
+     */
+    private static final class IdBlock {
+        final long offset;
+        final int length;
+        final String firstId;
+
+        IdBlock(long offset, int length, String firstId) {
+            this.offset = offset;
+            this.length = length;
+            this.firstId = firstId;
+        }
+    }
+
+    private final long number;
+    private final Path path;
+    private final FileChannel channel;
+    private final long fileBytes;
+
+    private final DataBlock[] dataBlocks;
+    private final IdBlock[] idBlocks;
+    private final long entryCount;
+    private final long tombstoneCount;
+    private final String minId;
+    private final String maxId;
+    private final BloomFilter ids;
+
+    // Timestamp range of all entries, from the block ranges
+    private final long minTimestamp;
+    private final long maxTimestamp;
+
+    // One reference is held by the engine while the run is live, one by each reader using it
+    private final AtomicInteger references = new AtomicInteger(1);
+    private volatile boolean obsolete;
+
+    private SortedRun(long number, Path path, FileChannel channel, long fileBytes, DataBlock[] dataBlocks,
+                      IdBlock[] idBlocks, long entryCount, long tombstoneCount, String minId, String maxId,
+                      BloomFilter ids) {
+        this.number = number;
+        this.path = path;
+        this.channel = channel;
+        this.fileBytes = fileBytes;
+        this.dataBlocks = dataBlocks;
+        this.idBlocks = idBlocks;
+        this.entryCount = entryCount;
+        this.tombstoneCount = tombstoneCount;
+        this.minId = minId;
+        this.maxId = maxId;
+        this.ids = ids;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (DataBlock block : dataBlocks) {
+            min = Math.min(min, block.minTimestamp);
+            max = Math.max(max, block.maxTimestamp);
+        }
+        this.minTimestamp = min;
+        this.maxTimestamp = max;
+    }
+
+    /**
+     * Open a run and load its index.
+     */
+    static SortedRun open(long number, Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE) {
+                throw new IOException("Unrecognized run format in " + path);
+            }
+            ByteBuffer header = read(channel, 0, HEADER_SIZE, path);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Unrecognized run format in " + path);
+            }
+            ByteBuffer trailer = read(channel, size - TRAILER_SIZE, TRAILER_SIZE, path);
+            long indexOffset = trailer.getLong();
+            if (trailer.getInt() != MAGIC || indexOffset < HEADER_SIZE || indexOffset > size - TRAILER_SIZE) {
+                throw new IOException("Unrecognized run format in " + path);
+            }
+            ByteBuffer index = read(channel, indexOffset, (int) (size - TRAILER_SIZE - indexOffset), path);
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(index.array()));
+
+            // Block keys repeat the same few user ids; share one String per user
+            Map<String, String> users = new HashMap<>();
+            DataBlock[] dataBlocks = new DataBlock[in.readInt()];
+            for (int i = 0; i < dataBlocks.length; i++) {
+                long offset = in.readLong();
+                int length = in.readInt();
+                String firstUser = intern(users, RecordIO.readString(in));
+                long firstTimestamp = in.readLong();
+                String lastUser = intern(users, RecordIO.readString(in));
+                long lastTimestamp = in.readLong();
+                dataBlocks[i] = new DataBlock(offset, length, firstUser, firstTimestamp, lastUser, lastTimestamp,
+                        in.readLong(), in.readLong());
+            }
+            IdBlock[] idBlocks = new IdBlock[in.readInt()];
+            for (int i = 0; i < idBlocks.length; i++) {
+                long offset = in.readLong();
+                int length = in.readInt();
+                idBlocks[i] = new IdBlock(offset, length, RecordIO.readString(in));
+            }
+            long entryCount = in.readLong();
+            long tombstoneCount = in.readLong();
+            String minId = RecordIO.readString(in);
+            String maxId = RecordIO.readString(in);
+            BloomFilter ids = BloomFilter.read(in);
+            return new SortedRun(number, path, channel, size, dataBlocks, idBlocks, entryCount, tombstoneCount,
+                    minId, maxId, ids);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    Path getPath() {
+        return path;
+    }
+
+    long getEntryCount() {
+        return entryCount;
+    }
+
+    long getTombstoneCount() {
+        return tombstoneCount;
+    }
+
+    long getFileBytes() {
+        return fileBytes;
+    }
+
+    /**
+     * Estimated heap bytes held by the index and Bloom filter.
+     */
+    long heapBytes() {
+        return ids.memoryBytes() + 64L * dataBlocks.length + 40L * idBlocks.length;
+    }
+
+    /**
+     * Whether any entry's timestamp may fall within [oldest, newest].
+     */
+    boolean overlaps(long oldest, long newest) {
+        return minTimestamp <= newest && maxTimestamp >= oldest;
+    }
+
+    /**
+     * Take a reference, keeping the file open until the matching {@link #release()}.
+     * Only valid while the caller knows the run is live, e.g. under the engine's lock.
+     */
+    void retain() {
+        references.incrementAndGet();
+    }
+
+    /**
+     * Drop a reference; the last one closes the file, and deletes it if the run is obsolete.
+     */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            try {
+                channel.close();
+                if (obsolete) {
+                    Files.deleteIfExists(path);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Drop the engine's reference to a run that compaction or clearing has replaced.
+     * The file is deleted once the last reader is done with it.
+     */
+    void discard() {
+        obsolete = true;
+        release();
+    }
+
+    /**
+     * Whether an id has a version (or a deletion) in this run: the location of the entry for
+     * {@link #find(String, long)}, {@link #TOMBSTONE} or {@link #ABSENT}. Ids outside the run's
+     * id range or rejected by the Bloom filter are answered without reading the file.
+     */
+    long locate(String id) throws IOException {
+        if (idBlocks.length == 0 || id.compareTo(minId) < 0 || id.compareTo(maxId) > 0 || !ids.mightContain(id)) {
+            return ABSENT;
+        }
+        // Last id block starting at or before the id
+        int low = 0;
+        int high = idBlocks.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (idBlocks[mid].firstId.compareTo(id) <= 0) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        DataInputStream in = readBlock(idBlocks[low].offset, idBlocks[low].length);
+        while (in.available() > 0) {
+            String candidate = RecordIO.readString(in);
+            int block = in.readInt();
+            int offset = in.readInt();
+            int cmp = candidate.compareTo(id);
+            if (cmp == 0) {
+                return block == TOMBSTONE ? TOMBSTONE : (long) block << 32 | offset;
+            }
+            if (cmp > 0) {
+                break;
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * The entry with the given id at a location found by {@link #locate(String)}.
+     */
+    SolarDataEntry find(String id, long location) throws IOException {
+        DataBlock block = dataBlocks[(int) (location >>> 32)];
+        DataInputStream in = readBlock(block.offset, block.length);
+        in.skipBytes((int) location);
+        SolarDataEntry entry = LogRecords.readEntry(in);
+        if (!id.equals(entry.getId())) {
+            throw new IOException("Id index of " + path + " points " + id + " at " + entry.getId());
+        }
+        return entry;
+    }
+
+    /**
+     * Visit every entry in key order.
+     */
+    void forEach(Consumer<SolarDataEntry> action) throws IOException {
+        for (int block = 0; block < dataBlocks.length; block++) {
+            readEntries(block).forEach(action);
+        }
+    }
+
+    /**
+     * Visit the entries with timestamps in [oldest, newest], reading only the data blocks
+     * whose timestamp range overlaps.
+     */
+    void forEachBetween(long oldest, long newest, Consumer<SolarDataEntry> action) throws IOException {
+        if (!overlaps(oldest, newest)) {
+            return;
+        }
+        for (int i = 0; i < dataBlocks.length; i++) {
+            if (!dataBlocks[i].overlaps(oldest, newest)) {
+                continue;
+            }
+            for (SolarDataEntry entry : readEntries(i)) {
+                long timestamp = entry.getTimestampMillis();
+                if (timestamp >= oldest && timestamp <= newest) {
+                    action.accept(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visit a user's entries with timestamps in [oldest, newest], newest first,
+     * reading only the data blocks whose key range overlaps.
+     */
+    void forEachOfUser(String userId, long newest, long oldest, Consumer<SolarDataEntry> action) throws IOException {
+        // First block ending at or after (userId, newest)
+        int low = 0;
+        int high = dataBlocks.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            DataBlock block = dataBlocks[mid];
+            if (compareKeys(block.lastUser, block.lastTimestamp, userId, newest) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int i = low; i < dataBlocks.length; i++) {
+            DataBlock block = dataBlocks[i];
+            if (compareKeys(block.firstUser, block.firstTimestamp, userId, oldest) > 0) {
+                return;
+            }
+            for (SolarDataEntry entry : readEntries(i)) {
+                long timestamp = entry.getTimestampMillis();
+                if (userId.equals(entry.getUserId()) && timestamp <= newest && timestamp >= oldest) {
+                    action.accept(entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Visit the ids this run records as deleted, in id order.
+     */
+    void forEachTombstone(Consumer<String> action) throws IOException {
+        if (tombstoneCount == 0) {
+            return;
+        }
+        for (IdBlock idBlock : idBlocks) {
+            DataInputStream in = readBlock(idBlock.offset, idBlock.length);
+            while (in.available() > 0) {
+                String id = RecordIO.readString(in);
+                int block = in.readInt();
+                in.readInt();
+                if (block == TOMBSTONE) {
+                    action.accept(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * Entries in key order, read one block at a time.
+     */
+    Iterator<SolarDataEntry> iterator() {
+        return new Iterator<SolarDataEntry>() {
+            private int nextBlock;
+            private Iterator<SolarDataEntry> current = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!current.hasNext() && nextBlock < dataBlocks.length) {
+                    try {
+                        current = readEntries(nextBlock++).iterator();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+                return current.hasNext();
+            }
+
+            @Override
+            public SolarDataEntry next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+        };
+    }
+
+    private List<SolarDataEntry> readEntries(int block) throws IOException {
+        DataInputStream in = readBlock(dataBlocks[block].offset, dataBlocks[block].length);
+        List<SolarDataEntry> entries = new ArrayList<>(ENTRIES_PER_BLOCK);
+        while (in.available() > 0) {
+            entries.add(LogRecords.readEntry(in));
+        }
+        return entries;
+    }
+
+    private DataInputStream readBlock(long offset, int length) throws IOException {
+        ByteBuffer block = read(channel, offset, length, path);
+        int payloadLength = block.getInt();
+        int checksum = block.getInt();
+        CRC32 crc = new CRC32();
+        crc.update(block.array(), BLOCK_HEADER_SIZE, payloadLength);
+        if (payloadLength != length - BLOCK_HEADER_SIZE || (int) crc.getValue() != checksum) {
+            throw new IOException("Corrupt block at offset " + offset + " of " + path);
+        }
+        return new DataInputStream(new ByteArrayInputStream(block.array(), BLOCK_HEADER_SIZE, payloadLength));
+    }
+
+    /**
+     * Positional read, safe to run concurrently on a shared channel.
+     */
+    private static ByteBuffer read(FileChannel channel, long offset, int length, Path path) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of " + path);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Compare (user id, timestamp) keys in run order: user id, then newest first.
+     */
+    private static int compareKeys(String userA, long timestampA, String userB, long timestampB) {
+        int cmp = Objects.compare(userA, userB, Comparator.nullsFirst(Comparator.naturalOrder()));
+        return cmp != 0 ? cmp : Long.compare(timestampB, timestampA);
+    }
+
+    private static String intern(Map<String, String> values, String value) {
+        return value != null ? values.computeIfAbsent(value, v -> v) : null;
+    }
+
+    /**
+     * Writes a new run in a single sequential pass. Entries must be added in {@link #KEY_ORDER}
+     * and every id, of an entry or a tombstone, at most once.
+     */
+    static final class Writer implements Closeable {
+
+        private static final class IdRef implements Comparable<IdRef> {
+            final String id;
+            final int block;
+            final int offset;
+
+            IdRef(String id, int block, int offset) {
+                this.id = id;
+                this.block = block;
+                this.offset = offset;
+            }
+
+            @Override
+            public int compareTo(IdRef other) {
+                return id.compareTo(other.id);
+            }
+        }
+
+        /**
+         * Reads back one spill file, one id at a time.
+         */
+        private static final class SpillReader implements Closeable {
+            final DataInputStream in;
+            int remaining;
+            IdRef head;
+
+            SpillReader(Path file) throws IOException {
+                this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+                this.remaining = in.readInt();
+            }
+
+            boolean advance() throws IOException {
+                if (remaining == 0) {
+                    return false;
+                }
+                remaining--;
+                head = new IdRef(RecordIO.readString(in), in.readInt(), in.readInt());
+                return true;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        }
+
+        private final long number;
+        private final Path path;
+        private final Path temporary;
+        private final DataOutputStream out;
+        private long position;
+
+        private final ByteArrayOutputStream block = new ByteArrayOutputStream(1 << 16);
+        private final DataOutputStream blockOut = new DataOutputStream(block);
+        private SolarDataEntry firstInBlock;
+        private SolarDataEntry lastInBlock;
+        private long minTimestampInBlock;
+        private long maxTimestampInBlock;
+        private int inBlock;
+
+        private int idsInBlock;
+        private String firstIdInBlock;
+
+        private final List<DataBlock> dataBlocks = new ArrayList<>();
+        private final List<IdBlock> idBlocks = new ArrayList<>();
+        private final BloomFilter ids;
+        private long entryCount;
+        private long tombstoneCount;
+
+        // Ids not yet in id order; sorted chunks are spilled to temporary files when there are many
+        private final List<IdRef> pendingIds = new ArrayList<>();
+        private final List<Path> spills = new ArrayList<>();
+
+        /**
+         * @param expectedIds upper bound on the number of entries and tombstones, used to size the Bloom filter
+         */
+        Writer(long number, Path path, long expectedIds) throws IOException {
+            this.number = number;
+            this.path = path;
+            this.temporary = path.resolveSibling(path.getFileName() + ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16));
+            this.ids = new BloomFilter(expectedIds, BLOOM_BITS_PER_KEY);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            position = HEADER_SIZE;
+        }
+
+        void add(SolarDataEntry entry) throws IOException {
+            if (inBlock == 0) {
+                firstInBlock = entry;
+                minTimestampInBlock = Long.MAX_VALUE;
+                maxTimestampInBlock = Long.MIN_VALUE;
+            }
+            lastInBlock = entry;
+            minTimestampInBlock = Math.min(minTimestampInBlock, entry.getTimestampMillis());
+            maxTimestampInBlock = Math.max(maxTimestampInBlock, entry.getTimestampMillis());
+            addId(new IdRef(entry.getId(), dataBlocks.size(), block.size()));
+            LogRecords.writeEntry(blockOut, entry);
+            entryCount++;
+            if (++inBlock == ENTRIES_PER_BLOCK) {
+                finishDataBlock();
+            }
+        }
+
+        void addTombstone(String id) throws IOException {
+            addId(new IdRef(id, TOMBSTONE, 0));
+            tombstoneCount++;
+        }
+
+        /**
+         * Whether nothing, neither entry nor tombstone, has been added.
+         */
+        boolean isEmpty() {
+            return entryCount == 0 && tombstoneCount == 0;
+        }
+
+        /**
+         * Write the id blocks and index, make the file durable and open it as a run.
+         */
+        SortedRun finish() throws IOException {
+            if (inBlock > 0) {
+                finishDataBlock();
+            }
+            String[] idRange = writeIdBlocks();
+
+            long indexOffset = position;
+            out.writeInt(dataBlocks.size());
+            for (DataBlock dataBlock : dataBlocks) {
+                out.writeLong(dataBlock.offset);
+                out.writeInt(dataBlock.length);
+                RecordIO.writeString(out, dataBlock.firstUser);
+                out.writeLong(dataBlock.firstTimestamp);
+                RecordIO.writeString(out, dataBlock.lastUser);
+                out.writeLong(dataBlock.lastTimestamp);
+                out.writeLong(dataBlock.minTimestamp);
+                out.writeLong(dataBlock.maxTimestamp);
+            }
+            out.writeInt(idBlocks.size());
+            for (IdBlock idBlock : idBlocks) {
+                out.writeLong(idBlock.offset);
+                out.writeInt(idBlock.length);
+                RecordIO.writeString(out, idBlock.firstId);
+            }
+            out.writeLong(entryCount);
+            out.writeLong(tombstoneCount);
+            RecordIO.writeString(out, idRange[0]);
+            RecordIO.writeString(out, idRange[1]);
+            ids.write(out);
+            out.writeLong(indexOffset);
+            out.writeInt(MAGIC);
+            out.close();
+
+            // Make the data durable before the rename publishes it
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            deleteSpills();
+            return open(number, path);
+        }
+
+        /**
+         * Abandon the run, removing its temporary files. Does nothing after {@link #finish()}.
+         */
+        @Override
+        public void close() throws IOException {
+            out.close();
+            Files.deleteIfExists(temporary);
+            deleteSpills();
+        }
+
+        private void addId(IdRef ref) throws IOException {
+            ids.add(ref.id);
+            pendingIds.add(ref);
+            if (pendingIds.size() == IDS_PER_SPILL) {
+                spill();
+            }
+        }
+
+        private void finishDataBlock() throws IOException {
+            int length = writeBlock();
+            dataBlocks.add(new DataBlock(position - length, length,
+                    firstInBlock.getUserId(), firstInBlock.getTimestampMillis(),
+                    lastInBlock.getUserId(), lastInBlock.getTimestampMillis(),
+                    minTimestampInBlock, maxTimestampInBlock));
+            inBlock = 0;
+        }
+
+        /**
+         * Write the buffered block values with their header.
+         *
+         * @return the block's length in the file
+         */
+        private int writeBlock() throws IOException {
+            byte[] bytes = block.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            out.writeInt(bytes.length);
+            out.writeInt((int) crc.getValue());
+            out.write(bytes);
+            block.reset();
+            position += BLOCK_HEADER_SIZE + bytes.length;
+            return BLOCK_HEADER_SIZE + bytes.length;
+        }
+
+        /**
+         * Write all ids in id order, merging the spilled chunks if there are any.
+         *
+         * @return the smallest and largest id
+         */
+        private String[] writeIdBlocks() throws IOException {
+            String[] range = new String[2];
+            if (spills.isEmpty()) {
+                Collections.sort(pendingIds);
+                for (IdRef ref : pendingIds) {
+                    writeId(ref, range);
+                }
+            } else {
+                spill();
+                List<SpillReader> readers = new ArrayList<>();
+                try {
+                    PriorityQueue<SpillReader> heads = new PriorityQueue<>(Comparator.comparing(reader -> reader.head));
+                    for (Path spillFile : spills) {
+                        SpillReader reader = new SpillReader(spillFile);
+                        readers.add(reader);
+                        if (reader.advance()) {
+                            heads.add(reader);
+                        }
+                    }
+                    while (!heads.isEmpty()) {
+                        SpillReader reader = heads.poll();
+                        writeId(reader.head, range);
+                        if (reader.advance()) {
+                            heads.add(reader);
+                        }
+                    }
+                } finally {
+                    for (SpillReader reader : readers) {
+                        reader.close();
+                    }
+                }
+            }
+            if (idsInBlock > 0) {
+                finishIdBlock();
+            }
+            pendingIds.clear();
+            return range;
+        }
+
+        private void writeId(IdRef ref, String[] range) throws IOException {
+            if (range[0] == null) {
+                range[0] = ref.id;
+            }
+            range[1] = ref.id;
+            if (idsInBlock == 0) {
+                firstIdInBlock = ref.id;
+            }
+            RecordIO.writeString(blockOut, ref.id);
+            blockOut.writeInt(ref.block);
+            blockOut.writeInt(ref.offset);
+            if (++idsInBlock == IDS_PER_BLOCK) {
+                finishIdBlock();
+            }
+        }
+
+        private void finishIdBlock() throws IOException {
+            int length = writeBlock();
+            idBlocks.add(new IdBlock(position - length, length, firstIdInBlock));
+            idsInBlock = 0;
+        }
+
+        /**
+         * Sort the pending ids and write them to a new spill file: [int count]([id][int block][int offset])*.
+         */
+        private void spill() throws IOException {
+            if (pendingIds.isEmpty()) {
+                return;
+            }
+            Collections.sort(pendingIds);
+            Path spillFile = path.resolveSibling(path.getFileName() + ".ids" + spills.size() + ".tmp");
+            spills.add(spillFile);
+            try (DataOutputStream spillOut = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(spillFile), 1 << 16))) {
+                spillOut.writeInt(pendingIds.size());
+                for (IdRef ref : pendingIds) {
+                    RecordIO.writeString(spillOut, ref.id);
+                    spillOut.writeInt(ref.block);
+                    spillOut.writeInt(ref.offset);
+                }
+            }
+            pendingIds.clear();
+        }
+
+        private void deleteSpills() throws IOException {
+            for (Path spillFile : spills) {
+                Files.deleteIfExists(spillFile);
+            }
+        }
+    }
+}
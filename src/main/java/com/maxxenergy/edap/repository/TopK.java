@@ -0,0 +1,92 @@
+package com.maxxenergy.edap.repository;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Bounded top-K selection helpers for repository queries.
+ * Results never hold more than k elements, whatever the size of the input.
+ */
+public final class TopK {
+
+    private TopK() {
+    }
+
+    /**
+     * Select the k best matching items according to the given order using a bounded heap.
+     * Runs in O(n log k) time and O(k) space; the result is sorted best first.
+     */
+    public static <T> List<T> select(Iterable<T> items, Predicate<? super T> filter,
+                                     Comparator<? super T> order, int k) {
+        Selector<T> selector = new Selector<>(filter, order, k);
+        items.forEach(selector);
+        return selector.result();
+    }
+
+    /**
+     * Take the first k matching items from a source that is already in the desired order.
+     * Stops iterating as soon as k items are found.
+     */
+    public static <T> List<T> first(Iterable<T> orderedItems, Predicate<? super T> filter, int k) {
+        if (k <= 0) {
+            return new ArrayList<>();
+        }
+
+        List<T> result = new ArrayList<>(Math.min(k, 64));
+        Iterator<T> iterator = orderedItems.iterator();
+        while (result.size() < k && iterator.hasNext()) {
+            T item = iterator.next();
+            if (filter.test(item)) {
+                result.add(item);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Bounded heap that can be fed from any visitor, keeping the k best items seen so far.
+     */
+    public static final class Selector<T> implements Consumer<T> {
+
+        private final Predicate<? super T> filter;
+        private final Comparator<? super T> order;
+        private final int k;
+
+        // The heap head is the worst of the current candidates, so it is the one to evict
+        private final PriorityQueue<T> heap;
+
+        public Selector(Predicate<? super T> filter, Comparator<? super T> order, int k) {
+            this.filter = filter;
+            this.order = order;
+            this.k = k;
+            this.heap = new PriorityQueue<>(Math.max(1, Math.min(k, 64) + 1), order.reversed());
+        }
+
+        @Override
+        public void accept(T item) {
+            if (k <= 0 || !filter.test(item)) {
+                return;
+            }
+            if (heap.size() < k) {
+                heap.add(item);
+            } else if (order.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+
+        /**
+         * The selected items, best first.
+         */
+        public List<T> result() {
+            List<T> result = new ArrayList<>(heap);
+            result.sort(order);
+            return result;
+        }
+    }
+}
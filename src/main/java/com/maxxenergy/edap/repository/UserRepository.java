@@ -0,0 +1,98 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.User;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Storage contract for User entities.
+ * Implementations are selected with the edap.storage.user-type property.
+ *
+ * As with {@link SolarDataEntryRepository}, only the core operations are abstract; the
+ * queries have default implementations built on {@link #forEachUser(Consumer)} that
+ * define their expected results, and engines override those they can answer faster.
+ */
+public interface UserRepository {
+
+    /**
+     * Save a user, giving a new user (id == null) a generated id.
+     */
+    User save(User user);
+
+    Optional<User> findById(String id);
+
+    /**
+     * Find a user by email address, ignoring case.
+     */
+    Optional<User> findByEmail(String email);
+
+    void deleteById(String id);
+
+    void deleteAll();
+
+    long count();
+
+    /**
+     * Visit every stored user, in no particular order.
+     */
+    void forEachUser(Consumer<User> action);
+
+    default List<User> findAll() {
+        List<User> result = new ArrayList<>();
+        forEachUser(result::add);
+        return result;
+    }
+
+    default boolean existsByEmail(String email) {
+        return findByEmail(email).isPresent();
+    }
+
+    default List<User> findByRole(String role) {
+        return find(user -> role.equals(user.getRole()));
+    }
+
+    default List<User> findByIsActive(boolean isActive) {
+        return find(user -> user.isActive() == isActive);
+    }
+
+    default List<User> findByDepartment(String department) {
+        return find(user -> department.equals(user.getDepartment()));
+    }
+
+    default List<User> findByCreatedAtAfter(LocalDateTime date) {
+        return find(user -> user.getCreatedAt().isAfter(date));
+    }
+
+    default List<User> findUsersWithOldLastLogin(LocalDateTime date) {
+        return find(user -> user.getLastLogin() != null && user.getLastLogin().isBefore(date));
+    }
+
+    default long countByRole(String role) {
+        return findByRole(role).size();
+    }
+
+    default List<User> findByNameContainingIgnoreCase(String name) {
+        String fragment = name.toLowerCase();
+        return find(user -> user.getName() != null && user.getName().toLowerCase().contains(fragment));
+    }
+
+    /**
+     * Write a snapshot so that startup does not have to replay the full history.
+     * Engines without a log or snapshot ignore this.
+     */
+    default void checkpoint() throws IOException {
+    }
+
+    private List<User> find(Predicate<User> filter) {
+        List<User> result = new ArrayList<>();
+        forEachUser(user -> {
+            if (filter.test(user)) {
+                result.add(user);
+            }
+        });
+        return result;
+    }
+}
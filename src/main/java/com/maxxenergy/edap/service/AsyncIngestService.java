@@ -0,0 +1,210 @@
+package com.maxxenergy.edap.service;
+
+import com.maxxenergy.edap.exception.DuplicateSubmissionException;
+import com.maxxenergy.edap.model.SolarDataEntry;
+import com.maxxenergy.edap.storage.IdGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional asynchronous write path for single submissions (edap.ingest.async.enabled).
+ *
+ * Request threads validate an entry, give it an id and put it on a bounded queue, then
+ * return at once. A single writer thread drains the queue and stores entries in groups,
+ * so locking, logging and index maintenance are paid per batch instead of per request.
+ * The queue is a lock-free linked queue bounded by an atomic count of reserved slots;
+ * when it is full, submissions are rejected instead of blocking request threads.
+ *
+ * Entries are readable once the writer has stored them, normally within milliseconds.
+ * Submissions are acknowledged before they are stored: entries still queued when the process
+ * is killed are lost, and so is a group the repository fails to store. The failed group's
+ * deduplication claims are released, so clients can send those readings again.
+ */
+@Service
+public class AsyncIngestService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncIngestService.class);
+
+    // Most entries the writer stores per repository call
+    private static final int WRITE_BATCH_SIZE = 500;
+
+    // Longest the idle writer sleeps before checking the queue again
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Autowired
+    private SolarDataEntryService dataEntryService;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
+    @Value("${edap.ingest.async.enabled:false}")
+    private boolean enabled;
+
+    @Value("${edap.ingest.async.queue-capacity:10000}")
+    private int queueCapacity;
+
+    /**
+     * A queued entry with the deduplication key claimed for it, or null if none was.
+     */
+    private static final class Submission {
+        final SolarDataEntry entry;
+        final String key;
+
+        Submission(SolarDataEntry entry, String key) {
+            this.entry = entry;
+            this.key = key;
+        }
+    }
+
+    private final Queue<Submission> queue = new ConcurrentLinkedQueue<>();
+
+    // Slots taken in the queue; reserved before an offer and released when the writer polls
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder accepted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+
+    private Thread writer;
+    private volatile boolean running;
+
+    // Set while the writer is about to park or parked, so producers know to wake it
+    private volatile boolean writerIdle;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::drain, "ingest-writer");
+        writer.setDaemon(true);
+        writer.start();
+        logger.info("Asynchronous ingest enabled with a queue of {} entries", queueCapacity);
+    }
+
+    /**
+     * Stop accepting entries and wait for the writer to store those already queued.
+     */
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(30));
+        if (!queue.isEmpty()) {
+            logger.warn("Asynchronous ingest stopped with {} entries still queued", queue.size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Validate an entry and queue it for the writer.
+     *
+     * @param idempotencyKey client-chosen key identifying the submission, or null
+     * @return the id the entry will be stored under
+     * @throws IllegalArgumentException if the entry is invalid
+     * @throws DuplicateSubmissionException if the entry repeats a recent submission
+     * @throws RejectedExecutionException if the queue is full or ingest is not running
+     */
+    public String submit(SolarDataEntry entry, String idempotencyKey) {
+        dataEntryService.validateEntry(entry);
+        entry.calculateDerivedFields();
+        if (!running) {
+            throw new RejectedExecutionException("Asynchronous ingest is not running");
+        }
+        String submissionKey = dataEntryService.claimSubmission(entry, idempotencyKey);
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            rejected.increment();
+            dataEntryService.releaseSubmission(submissionKey, entry);
+            throw new RejectedExecutionException("Ingest queue is full");
+        }
+        if (entry.getId() == null) {
+            entry.setId(idGenerator.nextId());
+        }
+        queue.offer(new Submission(entry, submissionKey));
+        accepted.increment();
+        if (writerIdle) {
+            LockSupport.unpark(writer);
+        }
+        return entry.getId();
+    }
+
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("queued", queued.get());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("accepted", accepted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("written", written.sum());
+        stats.put("failed", failed.sum());
+        stats.put("batches", batches.sum());
+        return stats;
+    }
+
+    private void drain() {
+        List<Submission> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+        while (running || !queue.isEmpty()) {
+            Submission submission;
+            while (batch.size() < WRITE_BATCH_SIZE && (submission = queue.poll()) != null) {
+                batch.add(submission);
+            }
+            if (batch.isEmpty()) {
+                writerIdle = true;
+                // Re-check after announcing idleness, so an entry offered just before is not missed
+                if (running && queue.isEmpty()) {
+                    LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+                }
+                writerIdle = false;
+                continue;
+            }
+            queued.addAndGet(-batch.size());
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    private void write(List<Submission> batch) {
+        List<SolarDataEntry> entries = new ArrayList<>(batch.size());
+        for (Submission submission : batch) {
+            entries.add(submission.entry);
+        }
+        try {
+            dataEntryService.storeBatch(entries);
+            written.add(batch.size());
+            batches.increment();
+        } catch (RuntimeException e) {
+            failed.add(batch.size());
+            logger.error("Unable to store {} queued entries: {}", batch.size(), e.getMessage(), e);
+            // The entries are lost; let a retry of any of them be accepted rather than reported as a duplicate
+            for (Submission submission : batch) {
+                dataEntryService.releaseSubmission(submission.key, submission.entry);
+            }
+        }
+    }
+}
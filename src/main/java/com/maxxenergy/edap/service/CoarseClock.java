@@ -0,0 +1,44 @@
+package com.maxxenergy.edap.service;
+
+import org.springframework.stereotype.Component;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall clock in epoch milliseconds that is refreshed in the background a few times a second,
+ * for hot paths such as session expiry checks that need cheap reads rather than precision.
+ * Reads are a single volatile load and never allocate.
+ */
+@Component
+public class CoarseClock {
+
+    // How far behind the system clock a read may be
+    private static final long RESOLUTION_MILLIS = 100;
+
+    private volatile long now = System.currentTimeMillis();
+
+    private final ScheduledExecutorService ticker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "coarse-clock");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CoarseClock() {
+        ticker.scheduleAtFixedRate(() -> now = System.currentTimeMillis(),
+                RESOLUTION_MILLIS, RESOLUTION_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Current time in epoch milliseconds, accurate to about {@value #RESOLUTION_MILLIS} ms.
+     */
+    public long millis() {
+        return now;
+    }
+
+    @PreDestroy
+    public void close() {
+        ticker.shutdownNow();
+    }
+}
@@ -0,0 +1,115 @@
+package com.maxxenergy.edap.service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental reader of RFC 4180 style CSV: comma separated, fields optionally quoted with
+ * double quotes, quotes escaped by doubling, and line breaks allowed inside quoted fields.
+ * Reads one record at a time from the underlying reader, so input of any size is parsed
+ * without holding more than the current record.
+ */
+final class CsvReader {
+
+    private static final int NONE = -2;
+
+    private final Reader in;
+    private final StringBuilder field = new StringBuilder();
+
+    // Physical line the next record starts on, counting from 1
+    private long line = 1;
+    private long recordLine;
+
+    // Character read ahead while looking for the "\n" of a "\r\n"
+    private int pushedBack = NONE;
+
+    CsvReader(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Line number on which the record last returned by {@link #readRecord()} started.
+     */
+    long getRecordLine() {
+        return recordLine;
+    }
+
+    /**
+     * The next record's fields, or null at the end of the input. Blank lines are skipped.
+     */
+    List<String> readRecord() throws IOException {
+        int c;
+        // Skip blank lines between records
+        while ((c = read()) == '\r' || c == '\n') {
+            if (c == '\r') {
+                consumeNewlineAfterCarriageReturn();
+            }
+            line++;
+        }
+        if (c < 0) {
+            return null;
+        }
+        recordLine = line;
+
+        List<String> fields = new ArrayList<>();
+        field.setLength(0);
+        boolean quoted = false;
+        while (true) {
+            if (quoted) {
+                if (c < 0) {
+                    throw new IllegalArgumentException("Unterminated quoted field starting on line " + recordLine);
+                }
+                if (c == '"') {
+                    int next = read();
+                    if (next == '"') {
+                        field.append('"');
+                    } else {
+                        quoted = false;
+                        c = next;
+                        continue;
+                    }
+                } else {
+                    if (c == '\n') {
+                        line++;
+                    }
+                    field.append((char) c);
+                }
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' || c == '\n' || c < 0) {
+                if (c == '\r') {
+                    consumeNewlineAfterCarriageReturn();
+                }
+                if (c >= 0) {
+                    line++;
+                }
+                fields.add(field.toString());
+                return fields;
+            } else if (c == '"' && field.length() == 0) {
+                quoted = true;
+            } else {
+                field.append((char) c);
+            }
+            c = read();
+        }
+    }
+
+    private void consumeNewlineAfterCarriageReturn() throws IOException {
+        int next = read();
+        if (next != '\n') {
+            pushedBack = next;
+        }
+    }
+
+    private int read() throws IOException {
+        if (pushedBack != NONE) {
+            int c = pushedBack;
+            pushedBack = NONE;
+            return c;
+        }
+        return in.read();
+    }
+}
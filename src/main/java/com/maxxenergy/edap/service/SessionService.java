@@ -1,10 +1,10 @@
 package com.maxxenergy.edap.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.security.SecureRandom;
-import java.time.LocalDateTime;
 import java.util.Base64;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -25,6 +25,10 @@ public class SessionService {
 
     private final SecureRandom secureRandom = new SecureRandom();
 
+    // Expiry checks run on every authenticated request, so they read a cached clock
+    @Autowired
+    private CoarseClock clock;
+
     // Session timeout in seconds (8 hours)
     private static final int SESSION_TIMEOUT = 8 * 60 * 60;
 
@@ -32,40 +36,40 @@ public class SessionService {
     private static final int RESET_TOKEN_TIMEOUT = 60 * 60;
 
     /**
-     * Inner class to hold session information
+     * Inner class to hold session information; times are epoch milliseconds
      */
     private static class SessionInfo {
         final String email;
-        final LocalDateTime createdAt;
-        final LocalDateTime expiresAt;
+        final long createdAt;
+        final long expiresAt;
 
-        SessionInfo(String email) {
+        SessionInfo(String email, long now) {
             this.email = email;
-            this.createdAt = LocalDateTime.now();
-            this.expiresAt = this.createdAt.plusSeconds(SESSION_TIMEOUT);
+            this.createdAt = now;
+            this.expiresAt = now + SESSION_TIMEOUT * 1000L;
         }
 
-        boolean isExpired() {
-            return LocalDateTime.now().isAfter(expiresAt);
+        boolean isExpired(long now) {
+            return now > expiresAt;
         }
     }
 
     /**
-     * Inner class to hold password reset token information
+     * Inner class to hold password reset token information; times are epoch milliseconds
      */
     private static class ResetTokenInfo {
         final String email;
-        final LocalDateTime createdAt;
-        final LocalDateTime expiresAt;
+        final long createdAt;
+        final long expiresAt;
 
-        ResetTokenInfo(String email) {
+        ResetTokenInfo(String email, long now) {
             this.email = email;
-            this.createdAt = LocalDateTime.now();
-            this.expiresAt = this.createdAt.plusSeconds(RESET_TOKEN_TIMEOUT);
+            this.createdAt = now;
+            this.expiresAt = now + RESET_TOKEN_TIMEOUT * 1000L;
         }
 
-        boolean isExpired() {
-            return LocalDateTime.now().isAfter(expiresAt);
+        boolean isExpired(long now) {
+            return now > expiresAt;
         }
     }
 
@@ -78,7 +82,7 @@ public class SessionService {
         }
 
         String sessionToken = generateSecureToken();
-        sessions.put(sessionToken, new SessionInfo(email.toLowerCase().trim()));
+        sessions.put(sessionToken, new SessionInfo(email.toLowerCase().trim(), clock.millis()));
 
         logger.debug("Created session for user: {}", email);
         cleanupExpiredSessions();
@@ -99,7 +103,7 @@ public class SessionService {
             return null;
         }
 
-        if (sessionInfo.isExpired()) {
+        if (sessionInfo.isExpired(clock.millis())) {
             sessions.remove(sessionToken);
             logger.debug("Removed expired session");
             return null;
@@ -129,7 +133,7 @@ public class SessionService {
         }
 
         String resetToken = generateSecureToken();
-        resetTokens.put(resetToken, new ResetTokenInfo(email.toLowerCase().trim()));
+        resetTokens.put(resetToken, new ResetTokenInfo(email.toLowerCase().trim(), clock.millis()));
 
         logger.debug("Created password reset token for user: {}", email);
         cleanupExpiredResetTokens();
@@ -150,7 +154,7 @@ public class SessionService {
             return false;
         }
 
-        if (tokenInfo.isExpired()) {
+        if (tokenInfo.isExpired(clock.millis())) {
             resetTokens.remove(resetToken);
             logger.debug("Removed expired reset token");
             return false;
@@ -196,8 +200,9 @@ public class SessionService {
      * Clean up expired sessions
      */
     private void cleanupExpiredSessions() {
+        long now = clock.millis();
         sessions.entrySet().removeIf(entry -> {
-            if (entry.getValue().isExpired()) {
+            if (entry.getValue().isExpired(now)) {
                 logger.debug("Cleaned up expired session for user: {}", entry.getValue().email);
                 return true;
             }
@@ -209,8 +214,9 @@ public class SessionService {
      * Clean up expired reset tokens
      */
     private void cleanupExpiredResetTokens() {
+        long now = clock.millis();
         resetTokens.entrySet().removeIf(entry -> {
-            if (entry.getValue().isExpired()) {
+            if (entry.getValue().isExpired(now)) {
                 logger.debug("Cleaned up expired reset token for user: {}", entry.getValue().email);
                 return true;
             }
@@ -1,16 +1,41 @@
 package com.maxxenergy.edap.service;
 
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maxxenergy.edap.exception.DuplicateSubmissionException;
 import com.maxxenergy.edap.model.SolarDataEntry;
-import com.maxxenergy.edap.repository.InMemorySolarDataEntryRepository;
+import com.maxxenergy.edap.repository.EntryCursor;
+import com.maxxenergy.edap.repository.EntryPage;
+import com.maxxenergy.edap.repository.EntryStatistics;
+import com.maxxenergy.edap.repository.SolarDataEntryRepository;
+import com.maxxenergy.edap.storage.DeduplicationIndex;
+import com.maxxenergy.edap.storage.IdGenerator;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import javax.annotation.PostConstruct;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.Set;
 
 /**
  * Service class for solar data entry operations.
@@ -21,24 +46,309 @@ public class SolarDataEntryService {
 
     private static final Logger logger = LoggerFactory.getLogger(SolarDataEntryService.class);
 
+    // Largest page the public feed will serve in one request
+    private static final int MAX_PUBLIC_FEED_SIZE = 100;
+
+    // Largest page of a paginated query
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // Most entries accepted in one batch submission
+    private static final int MAX_BATCH_SIZE = 10000;
+
+    // Rows stored per repository call during a CSV import, and rejected rows listed in its report
+    private static final int IMPORT_BATCH_SIZE = 1000;
+    private static final int MAX_REPORTED_REJECTS = 100;
+
+    // Most entries a streaming ingest collects before storing them
+    private static final int INGEST_BATCH_SIZE = 500;
+
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 256;
+
+    private static final String CSV_HEADER = "id,plantName,timestamp,generation,capacity,efficiency," +
+            "temperature,irradiance,revenue,capacityUtilization,isPublic,notes\n";
+
+    @Autowired
+    private SolarDataEntryRepository repository;
+
+    // Entries kept per user; the oldest are evicted beyond this. Zero or less means unbounded.
+    @Value("${edap.storage.max-entries-per-user:0}")
+    private int maxEntriesPerUser;
+
+    // Streaming ingest batches that may be stored at once across all connections
+    @Value("${edap.ingest.max-concurrent-batches:4}")
+    private int maxConcurrentIngestBatches;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // How long, and for how many submissions at most, repeated submissions are recognized
+    @Value("${edap.ingest.dedup.window-minutes:60}")
+    private long dedupWindowMinutes;
+
+    @Value("${edap.ingest.dedup.max-keys:100000}")
+    private int dedupMaxKeys;
+
+    // Without an idempotency key, treat a repeated user, plant and timestamp as a duplicate
+    @Value("${edap.ingest.dedup.natural-key:true}")
+    private boolean dedupNaturalKey;
+
+    @Autowired
+    private IdGenerator idGenerator;
+
     @Autowired
-    private InMemorySolarDataEntryRepository repository;
+    private CoarseClock clock;
+
+    private Semaphore ingestPermits;
+
+    private DeduplicationIndex submissions;
+
+    @PostConstruct
+    public void init() {
+        ingestPermits = new Semaphore(Math.max(1, maxConcurrentIngestBatches), true);
+        submissions = new DeduplicationIndex(TimeUnit.MINUTES.toMillis(dedupWindowMinutes), dedupMaxKeys);
+    }
 
     /**
      * Save a new solar data entry with validation
      */
     public SolarDataEntry saveDataEntry(SolarDataEntry entry) throws IllegalArgumentException {
-        validateEntry(entry);
+        return saveDataEntry(entry, null);
+    }
 
-        // Set timestamp if not provided
-        if (entry.getTimestamp() == null) {
-            entry.setTimestamp(LocalDateTime.now());
-        }
+    /**
+     * Save a new solar data entry with validation, unless it repeats a recent submission.
+     *
+     * @param idempotencyKey client-chosen key identifying the submission, or null to
+     *                       recognize repeats by user, plant and timestamp instead
+     * @throws DuplicateSubmissionException if the same submission was accepted within the
+     *                                      deduplication window
+     */
+    public SolarDataEntry saveDataEntry(SolarDataEntry entry, String idempotencyKey) throws IllegalArgumentException {
+        validateEntry(entry);
 
         // Calculate derived fields
         entry.calculateDerivedFields();
 
-        return repository.save(entry);
+        String submissionKey = claimSubmission(entry, idempotencyKey);
+        SolarDataEntry saved;
+        try {
+            saved = repository.save(entry);
+        } catch (RuntimeException e) {
+            releaseSubmission(submissionKey, entry);
+            throw e;
+        }
+        if (limitsOnSave() && repository.countByUserId(saved.getUserId()) > maxEntriesPerUser) {
+            repository.deleteOldestByUserIdBeyond(saved.getUserId(), maxEntriesPerUser);
+        }
+        return saved;
+    }
+
+    /**
+     * Validate and save a batch of entries. Each entry is validated on its own and invalid
+     * ones are skipped; the valid ones are stored with a single repository call.
+     *
+     * @return one result per submitted entry, in order, holding either its id or the validation error
+     */
+    public List<Map<String, Object>> saveAll(List<SolarDataEntry> batch) throws IllegalArgumentException {
+        if (batch == null || batch.isEmpty()) {
+            throw new IllegalArgumentException("Batch must contain at least one entry");
+        }
+        if (batch.size() > MAX_BATCH_SIZE) {
+            throw new IllegalArgumentException("Batch cannot contain more than " + MAX_BATCH_SIZE + " entries");
+        }
+
+        List<Map<String, Object>> results = new ArrayList<>(batch.size());
+        List<SolarDataEntry> valid = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            SolarDataEntry entry = batch.get(i);
+            Map<String, Object> result = new HashMap<>();
+            result.put("index", i);
+            try {
+                validateEntry(entry);
+                entry.calculateDerivedFields();
+                valid.add(entry);
+                result.put("success", true);
+            } catch (IllegalArgumentException e) {
+                result.put("success", false);
+                result.put("error", e.getMessage());
+            }
+            results.add(result);
+        }
+        if (valid.isEmpty()) {
+            return results;
+        }
+
+        storeBatch(valid);
+        for (Map<String, Object> result : results) {
+            if (Boolean.TRUE.equals(result.get("success"))) {
+                result.put("id", batch.get((Integer) result.get("index")).getId());
+            }
+        }
+        logger.info("Saved {} of {} entries in batch", valid.size(), batch.size());
+        return results;
+    }
+
+    /**
+     * Import a user's entries from CSV, reading and storing it incrementally in batches so
+     * that only one batch is held in memory. The header row names the columns, in any order,
+     * using the field names of the CSV export; plantName, generation, capacity and efficiency
+     * are required, and an id column is ignored since imported entries get new ids. Rows are
+     * validated like single submissions and invalid ones are rejected individually.
+     *
+     * @return counts of imported and rejected rows, the import rate and the first rejects
+     */
+    public Map<String, Object> importCsv(String userId, Reader in) throws IOException {
+        long started = System.nanoTime();
+        CsvReader csv = new CsvReader(in instanceof BufferedReader ? in : new BufferedReader(in, 1 << 16));
+        List<String> header = csv.readRecord();
+        if (header == null) {
+            throw new IllegalArgumentException("CSV file is empty");
+        }
+        Map<String, Integer> columns = new HashMap<>();
+        for (int i = 0; i < header.size(); i++) {
+            // Spreadsheet exports often start with a byte order mark
+            columns.put(header.get(i).replace("\uFEFF", "").trim(), i);
+        }
+        for (String required : new String[]{"plantName", "generation", "capacity", "efficiency"}) {
+            if (!columns.containsKey(required)) {
+                throw new IllegalArgumentException("CSV header is missing the " + required + " column");
+            }
+        }
+
+        long rows = 0;
+        long imported = 0;
+        long rejected = 0;
+        List<Map<String, Object>> rejects = new ArrayList<>();
+        List<SolarDataEntry> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+        List<String> record;
+        while ((record = csv.readRecord()) != null) {
+            rows++;
+            try {
+                SolarDataEntry entry = parseCsvRow(userId, columns, record);
+                validateEntry(entry);
+                entry.calculateDerivedFields();
+                batch.add(entry);
+            } catch (IllegalArgumentException | DateTimeParseException e) {
+                rejected++;
+                if (rejects.size() < MAX_REPORTED_REJECTS) {
+                    Map<String, Object> reject = new HashMap<>();
+                    reject.put("line", csv.getRecordLine());
+                    reject.put("error", e.getMessage());
+                    rejects.add(reject);
+                }
+            }
+            if (batch.size() == IMPORT_BATCH_SIZE) {
+                imported += storeBatch(batch);
+                batch.clear();
+            }
+        }
+        imported += storeBatch(batch);
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        Map<String, Object> report = new HashMap<>();
+        report.put("rows", rows);
+        report.put("imported", imported);
+        report.put("rejected", rejected);
+        report.put("rejects", rejects);
+        report.put("elapsedMillis", Math.round(seconds * 1000));
+        report.put("rowsPerSecond", seconds > 0 ? Math.round(rows / seconds) : rows);
+        logger.info("Imported {} of {} CSV rows for user {} in {} ms", imported, rows, userId, report.get("elapsedMillis"));
+        return report;
+    }
+
+    /**
+     * Ingest a stream of newline-delimited JSON entries, storing them as they arrive.
+     *
+     * Records are bound one at a time by Jackson's streaming parser and stored in batches,
+     * which are cut short whenever the connection has no further data waiting, so a slow
+     * sender's readings are stored immediately while a fast one's are grouped. Storing a
+     * batch needs one of a fixed number of permits shared by all ingest streams; while none
+     * is free this stream stops reading, which pushes back on the sender through TCP flow
+     * control instead of buffering the body. Entries without a user id get the default one.
+     *
+     * @return counts of ingested and rejected records, the ingest rate and the first rejects
+     */
+    public Map<String, Object> ingestNdjson(String defaultUserId, InputStream in) throws IOException {
+        long started = System.nanoTime();
+        long records = 0;
+        long ingested = 0;
+        long rejected = 0;
+        long throttled = 0;
+        List<Map<String, Object>> rejects = new ArrayList<>();
+        List<SolarDataEntry> batch = new ArrayList<>(INGEST_BATCH_SIZE);
+        String malformed = null;
+
+        try (MappingIterator<SolarDataEntry> values = objectMapper.readerFor(SolarDataEntry.class).readValues(in)) {
+            while (true) {
+                SolarDataEntry entry = null;
+                String error = null;
+                try {
+                    if (!values.hasNextValue()) {
+                        break;
+                    }
+                    entry = values.nextValue();
+                } catch (JsonParseException e) {
+                    // Malformed JSON cannot be skipped reliably; keep what was read so far and stop
+                    malformed = "Malformed JSON in record " + (records + 1) + ": " + e.getOriginalMessage();
+                    break;
+                } catch (JsonMappingException e) {
+                    // The iterator skips past the rest of the offending record
+                    error = e.getOriginalMessage();
+                }
+                records++;
+
+                // A record that binds to no entry without an error is a null; validation rejects it
+                if (error == null) {
+                    try {
+                        if (entry != null && (entry.getUserId() == null || entry.getUserId().trim().isEmpty())) {
+                            entry.setUserId(defaultUserId);
+                        }
+                        validateEntry(entry);
+                        entry.calculateDerivedFields();
+                        batch.add(entry);
+                    } catch (IllegalArgumentException e) {
+                        error = e.getMessage();
+                    }
+                }
+                if (error != null) {
+                    rejected++;
+                    if (rejects.size() < MAX_REPORTED_REJECTS) {
+                        Map<String, Object> reject = new HashMap<>();
+                        reject.put("record", records);
+                        reject.put("error", error);
+                        rejects.add(reject);
+                    }
+                }
+
+                if (batch.size() == INGEST_BATCH_SIZE || (!batch.isEmpty() && in.available() == 0)) {
+                    if (storeIngestBatch(batch)) {
+                        throttled++;
+                    }
+                    ingested += batch.size();
+                    batch.clear();
+                }
+            }
+        }
+        if (storeIngestBatch(batch)) {
+            throttled++;
+        }
+        ingested += batch.size();
+        if (malformed != null) {
+            throw new IllegalArgumentException(malformed + " (" + ingested + " entries ingested before it)");
+        }
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+        Map<String, Object> report = new HashMap<>();
+        report.put("records", records);
+        report.put("ingested", ingested);
+        report.put("rejected", rejected);
+        report.put("rejects", rejects);
+        report.put("throttledBatches", throttled);
+        report.put("elapsedMillis", Math.round(seconds * 1000));
+        report.put("recordsPerSecond", seconds > 0 ? Math.round(records / seconds) : records);
+        logger.info("Ingested {} of {} streamed records in {} ms ({} batches throttled)",
+                ingested, records, report.get("elapsedMillis"), throttled);
+        return report;
     }
 
     /**
@@ -58,7 +368,65 @@ public class SolarDataEntryService {
         if (userId == null || userId.trim().isEmpty()) {
             throw new IllegalArgumentException("User ID cannot be null or empty");
         }
-        return repository.findTop10ByUserIdOrderByTimestampDesc(userId);
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        return repository.findTopKByUserIdOrderByTimestampDesc(userId, limit);
+    }
+
+    /**
+     * Get one page of a user's entries, newest first. Pass the previous page's next cursor
+     * (null for the first page) to continue.
+     */
+    public EntryPage getUserEntriesPage(String userId, String cursor, int limit) {
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new IllegalArgumentException("User ID cannot be null or empty");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        return repository.findPageByUserIdOrderByTimestampDesc(userId, EntryCursor.decode(cursor),
+                Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    /**
+     * Get one page of the public feed, newest first, continuing from the given cursor
+     */
+    public EntryPage getPublicEntriesPage(String cursor, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        return repository.findPageByIsPublicTrueOrderByTimestampDesc(EntryCursor.decode(cursor),
+                Math.min(limit, MAX_PUBLIC_FEED_SIZE));
+    }
+
+    /**
+     * Write all of a user's entries as CSV, newest first. Entries go straight from the
+     * repository to the writer, so the export never holds the whole history in memory.
+     *
+     * @return number of entries written
+     */
+    public long exportUserEntriesCsv(String userId, Writer out) throws IOException {
+        if (userId == null || userId.trim().isEmpty()) {
+            throw new IllegalArgumentException("User ID cannot be null or empty");
+        }
+        out.write(CSV_HEADER);
+        long[] written = new long[1];
+        try {
+            repository.forEachByUserIdOrderByTimestampDesc(userId, entry -> {
+                try {
+                    writeCsvRow(out, entry);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                written[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+        logger.debug("Exported {} entries for user: {}", written[0], userId);
+        return written[0];
     }
 
     /**
@@ -69,36 +437,17 @@ public class SolarDataEntryService {
             throw new IllegalArgumentException("User ID cannot be null or empty");
         }
 
-        List<SolarDataEntry> entries = repository.findByUserIdOrderByTimestampDesc(userId);
+        EntryStatistics summary = repository.summarizeByUserId(userId);
         Map<String, Object> stats = new HashMap<>();
 
-        stats.put("totalEntries", entries.size());
-
-        if (!entries.isEmpty()) {
-            double avgGeneration = entries.stream()
-                    .mapToDouble(e -> e.getGeneration() != null ? e.getGeneration() : 0.0)
-                    .average()
-                    .orElse(0.0);
-
-            double avgEfficiency = entries.stream()
-                    .mapToDouble(e -> e.getEfficiency() != null ? e.getEfficiency() : 0.0)
-                    .average()
-                    .orElse(0.0);
-
-            double maxGeneration = entries.stream()
-                    .mapToDouble(e -> e.getGeneration() != null ? e.getGeneration() : 0.0)
-                    .max()
-                    .orElse(0.0);
-
-            double totalRevenue = entries.stream()
-                    .mapToDouble(e -> e.getRevenue() != null ? e.getRevenue() : 0.0)
-                    .sum();
-
-            stats.put("averageGeneration", Math.round(avgGeneration * 10.0) / 10.0);
-            stats.put("averageEfficiency", Math.round(avgEfficiency * 10.0) / 10.0);
-            stats.put("maxGeneration", maxGeneration);
-            stats.put("totalRevenue", Math.round(totalRevenue * 100.0) / 100.0);
-            stats.put("lastEntry", entries.get(0).getTimestamp());
+        stats.put("totalEntries", (int) summary.getEntryCount());
+
+        if (summary.getEntryCount() > 0) {
+            stats.put("averageGeneration", Math.round(summary.getAverageGeneration() * 10.0) / 10.0);
+            stats.put("averageEfficiency", Math.round(summary.getAverageEfficiency() * 10.0) / 10.0);
+            stats.put("maxGeneration", summary.getMaxGeneration());
+            stats.put("totalRevenue", Math.round(summary.getTotalRevenue() * 100.0) / 100.0);
+            stats.put("lastEntry", summary.getLastEntry());
         } else {
             stats.put("averageGeneration", 0.0);
             stats.put("averageEfficiency", 0.0);
@@ -110,6 +459,70 @@ public class SolarDataEntryService {
         return stats;
     }
 
+    /**
+     * Get the newest public entries (the public feed)
+     */
+    public List<SolarDataEntry> getLatestPublicEntries(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        return repository.findTopKByIsPublicTrueOrderByTimestampDesc(Math.min(limit, MAX_PUBLIC_FEED_SIZE));
+    }
+
+    /**
+     * Get public entries from high performing plants: efficiency and capacity utilization
+     * at or above the given thresholds, highest efficiency first
+     */
+    public List<SolarDataEntry> getHighPerformanceEntries(double minEfficiency, double minUtilization, int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        return repository.findTopKByEfficiencyGreaterThanEqualOrderByEfficiencyDesc(minEfficiency,
+                entry -> entry.isPublic() && entry.getCapacityUtilization() != null &&
+                        entry.getCapacityUtilization() >= minUtilization,
+                limit);
+    }
+
+    /**
+     * Search plant names containing the query (case-insensitive), most entries first
+     */
+    public List<Map<String, Object>> searchPlants(String query, int limit) {
+        if (query == null || query.trim().isEmpty()) {
+            throw new IllegalArgumentException("Search query cannot be empty");
+        }
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+
+        List<Map.Entry<String, Long>> matches = new ArrayList<>(
+                repository.countByPlantNameContainingIgnoreCase(query.trim()).entrySet());
+        matches.sort(Map.Entry.<String, Long>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+
+        List<Map<String, Object>> plants = new ArrayList<>();
+        for (Map.Entry<String, Long> match : matches.subList(0, Math.min(limit, matches.size()))) {
+            Map<String, Object> plant = new HashMap<>();
+            plant.put("plantName", match.getKey());
+            plant.put("entryCount", match.getValue());
+            plants.add(plant);
+        }
+        return plants;
+    }
+
+    /**
+     * Get duplicate submission figures (tracked keys, lookups, hit rate)
+     */
+    public Map<String, Object> getDeduplicationStatistics() {
+        return submissions.getStatistics();
+    }
+
+    /**
+     * Get storage engine figures (engine name, entry count, memory estimates)
+     */
+    public Map<String, Object> getStorageStatistics() {
+        return repository.getStorageStatistics();
+    }
+
     /**
      * Delete a data entry
      */
@@ -127,10 +540,198 @@ public class SolarDataEntryService {
         repository.deleteById(entryId);
     }
 
+    /**
+     * Trim every user back to the configured entry limit, catching up on entries that did
+     * not arrive through saveDataEntry (recovery, seeding) or a limit that was lowered.
+     *
+     * @return number of entries removed
+     */
+    public long enforceEntryLimits() {
+        if (maxEntriesPerUser <= 0) {
+            return 0;
+        }
+        long removed = 0;
+        for (String userId : repository.findDistinctUserIds()) {
+            if (repository.countByUserId(userId) > maxEntriesPerUser) {
+                removed += repository.deleteOldestByUserIdBeyond(userId, maxEntriesPerUser);
+            }
+        }
+        if (removed > 0) {
+            logger.info("Removed {} entries over the limit of {} per user", removed, maxEntriesPerUser);
+        }
+        return removed;
+    }
+
+    /**
+     * Make a data entry public or private
+     */
+    public SolarDataEntry updateVisibility(String entryId, String userId, boolean isPublic) throws Exception {
+        Optional<SolarDataEntry> entryOpt = repository.findById(entryId);
+        if (!entryOpt.isPresent()) {
+            throw new Exception("Data entry not found");
+        }
+
+        if (!entryOpt.get().getUserId().equals(userId)) {
+            throw new Exception("Not authorized to change this entry");
+        }
+
+        return repository.updateVisibility(entryId, isPublic)
+                .orElseThrow(() -> new Exception("Data entry not found"));
+    }
+
+    /**
+     * Give a validated entry its id and record its submission, so that a repeat of it within
+     * the deduplication window is recognized with one hash lookup.
+     *
+     * @return the deduplication key claimed, or null if the entry is not deduplicated
+     * @throws DuplicateSubmissionException if the key was already claimed within the window
+     */
+    String claimSubmission(SolarDataEntry entry, String idempotencyKey) {
+        String key;
+        if (idempotencyKey != null && !idempotencyKey.trim().isEmpty()) {
+            if (idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+                throw new IllegalArgumentException("Idempotency key cannot be longer than " +
+                        MAX_IDEMPOTENCY_KEY_LENGTH + " characters");
+            }
+            key = "key\n" + entry.getUserId() + "\n" + idempotencyKey.trim();
+        } else if (dedupNaturalKey) {
+            key = "reading\n" + entry.getUserId() + "\n" + entry.getPlantName() + "\n" + entry.getTimestampMillis();
+        } else {
+            return null;
+        }
+
+        if (entry.getId() == null) {
+            entry.setId(idGenerator.nextId());
+        }
+        String existingId = submissions.claim(key, entry.getId(), clock.millis());
+        if (existingId != null) {
+            throw new DuplicateSubmissionException(existingId);
+        }
+        return key;
+    }
+
+    /**
+     * Undo a claim whose entry could not be stored, so a retry is accepted.
+     */
+    void releaseSubmission(String submissionKey, SolarDataEntry entry) {
+        if (submissionKey != null) {
+            submissions.release(submissionKey, entry.getId());
+        }
+    }
+
+    /**
+     * Store validated entries with one repository call and trim each affected user to the
+     * per-user limit once.
+     *
+     * @return the number of entries stored
+     */
+    int storeBatch(List<SolarDataEntry> batch) {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        repository.saveAll(batch);
+        if (limitsOnSave()) {
+            Set<String> userIds = new HashSet<>();
+            for (SolarDataEntry entry : batch) {
+                if (userIds.add(entry.getUserId()) && repository.countByUserId(entry.getUserId()) > maxEntriesPerUser) {
+                    repository.deleteOldestByUserIdBeyond(entry.getUserId(), maxEntriesPerUser);
+                }
+            }
+        }
+        return batch.size();
+    }
+
+    /**
+     * Whether saves trim their user to the per-user limit, rather than leaving it to
+     * {@link #enforceEntryLimits()} on engines where that would read the user's history.
+     */
+    private boolean limitsOnSave() {
+        return maxEntriesPerUser > 0 && repository.enforcesEntryLimitOnSave();
+    }
+
+    /**
+     * Store a streaming ingest batch once a storage permit is free.
+     *
+     * @return whether the batch had to wait for a permit
+     */
+    private boolean storeIngestBatch(List<SolarDataEntry> batch) throws IOException {
+        if (batch.isEmpty()) {
+            return false;
+        }
+        boolean waited = !ingestPermits.tryAcquire();
+        if (waited) {
+            try {
+                ingestPermits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting to store ingested entries");
+            }
+        }
+        try {
+            storeBatch(batch);
+        } finally {
+            ingestPermits.release();
+        }
+        return waited;
+    }
+
+    private static SolarDataEntry parseCsvRow(String userId, Map<String, Integer> columns, List<String> record) {
+        SolarDataEntry entry = new SolarDataEntry();
+        entry.setUserId(userId);
+        entry.setPlantName(csvValue(columns, record, "plantName"));
+        entry.setGeneration(csvNumber(columns, record, "generation"));
+        entry.setCapacity(csvNumber(columns, record, "capacity"));
+        entry.setEfficiency(csvNumber(columns, record, "efficiency"));
+        String timestamp = csvValue(columns, record, "timestamp");
+        if (timestamp != null) {
+            // Accept "2024-01-01 12:00:00" as well as ISO "2024-01-01T12:00:00"
+            entry.setTimestamp(LocalDateTime.parse(timestamp.replace(' ', 'T')));
+        }
+        Double temperature = csvNumber(columns, record, "temperature");
+        if (temperature != null) {
+            entry.setTemperature(temperature);
+        }
+        Double irradiance = csvNumber(columns, record, "irradiance");
+        if (irradiance != null) {
+            entry.setIrradiance(irradiance);
+        }
+        Double revenue = csvNumber(columns, record, "revenue");
+        if (revenue != null) {
+            entry.setRevenue(revenue);
+        }
+        entry.setPublic(Boolean.parseBoolean(csvValue(columns, record, "isPublic")));
+        entry.setNotes(csvValue(columns, record, "notes"));
+        return entry;
+    }
+
+    /**
+     * Trimmed value of the named column, or null when the column or value is absent.
+     */
+    private static String csvValue(Map<String, Integer> columns, List<String> record, String column) {
+        Integer index = columns.get(column);
+        if (index == null || index >= record.size()) {
+            return null;
+        }
+        String value = record.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static Double csvNumber(Map<String, Integer> columns, List<String> record, String column) {
+        String value = csvValue(columns, record, column);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + column + ": " + value);
+        }
+    }
+
     /**
      * Validate solar data entry
      */
-    private void validateEntry(SolarDataEntry entry) throws IllegalArgumentException {
+    void validateEntry(SolarDataEntry entry) throws IllegalArgumentException {
         if (entry == null) {
             throw new IllegalArgumentException("Solar data entry cannot be null");
         }
@@ -155,4 +756,35 @@ public class SolarDataEntryService {
             throw new IllegalArgumentException("Efficiency must be between 0 and 100 percent");
         }
     }
-}
\ No newline at end of file
+
+    private static void writeCsvRow(Writer out, SolarDataEntry entry) throws IOException {
+        out.write(csvField(entry.getId()));
+        out.write(',');
+        out.write(csvField(entry.getPlantName()));
+        out.write(',');
+        out.write(entry.getTimestamp() != null ? entry.getTimestamp().toString() : "");
+        for (Double value : new Double[]{entry.getGeneration(), entry.getCapacity(), entry.getEfficiency(),
+                entry.getTemperature(), entry.getIrradiance(), entry.getRevenue(), entry.getCapacityUtilization()}) {
+            out.write(',');
+            out.write(value != null ? value.toString() : "");
+        }
+        out.write(',');
+        out.write(Boolean.toString(entry.isPublic()));
+        out.write(',');
+        out.write(csvField(entry.getNotes()));
+        out.write('\n');
+    }
+
+    /**
+     * Quote a CSV field when it contains a separator, quote or line break.
+     */
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
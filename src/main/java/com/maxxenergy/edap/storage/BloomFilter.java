@@ -0,0 +1,97 @@
+package com.maxxenergy.edap.storage;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Fixed-size Bloom filter over strings: answers "definitely absent" or "possibly present"
+ * for a set of keys in about {@code bitsPerKey} bits per key. With 10 bits per key about
+ * 1% of lookups for absent keys are false positives.
+ *
+ * Each key is hashed once to 64 bits and the probe positions are derived from the two
+ * halves (double hashing), so a lookup costs one pass over the key. Not thread-safe
+ * while keys are being added; safe for concurrent lookups afterwards.
+ */
+public class BloomFilter {
+
+    private final long[] words;
+    private final long bitCount;
+    private final int hashCount;
+
+    public BloomFilter(long expectedKeys, int bitsPerKey) {
+        long bits = Math.max(64, Math.max(1, expectedKeys) * bitsPerKey);
+        this.words = new long[(int) Math.min(Integer.MAX_VALUE - 8, (bits + 63) / 64)];
+        this.bitCount = (long) words.length * 64;
+        // k = ln 2 * bits per key minimizes the false positive rate
+        this.hashCount = Math.max(1, Math.min(30, (int) Math.round(bitsPerKey * Math.log(2))));
+    }
+
+    private BloomFilter(long[] words, int hashCount) {
+        this.words = words;
+        this.bitCount = (long) words.length * 64;
+        this.hashCount = hashCount;
+    }
+
+    public void add(String key) {
+        long hash = hash(key);
+        long h1 = hash >>> 32;
+        long h2 = (hash & 0xFFFFFFFFL) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            words[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    public boolean mightContain(String key) {
+        long hash = hash(key);
+        long h1 = hash >>> 32;
+        long h2 = (hash & 0xFFFFFFFFL) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((words[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Heap bytes held by the bit array.
+     */
+    public long memoryBytes() {
+        return (long) words.length * 8;
+    }
+
+    public void write(DataOutput out) throws IOException {
+        out.writeInt(hashCount);
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    public static BloomFilter read(DataInput in) throws IOException {
+        int hashCount = in.readInt();
+        long[] words = new long[in.readInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.readLong();
+        }
+        return new BloomFilter(words, hashCount);
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-16 code units, finished with the SplitMix64 mixer so that
+     * both halves are well distributed even for short, similar keys.
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
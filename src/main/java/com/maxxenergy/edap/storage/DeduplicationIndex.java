@@ -0,0 +1,125 @@
+package com.maxxenergy.edap.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, time-windowed index of recently seen keys, mapping each to the id it was first
+ * claimed with, for detecting repeated submissions.
+ *
+ * A key is remembered for the window after it is first claimed, or until the index holds
+ * more than its maximum number of keys, whichever comes first; the oldest keys are dropped
+ * first. Lookups and claims are a single hash map operation. Keys are also queued in claim
+ * order so that expiry only ever looks at the oldest ones. Thread-safe.
+ */
+public class DeduplicationIndex {
+
+    private static final class Claim {
+        final String key;
+        final String id;
+        final long claimedAt;
+
+        Claim(String key, String id, long claimedAt) {
+            this.key = key;
+            this.id = id;
+            this.claimedAt = claimedAt;
+        }
+    }
+
+    private final long windowMillis;
+    private final int maxKeys;
+
+    private final Map<String, Claim> claims = new ConcurrentHashMap<>();
+    private final Queue<Claim> claimOrder = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public DeduplicationIndex(long windowMillis, int maxKeys) {
+        if (windowMillis <= 0 || maxKeys <= 0) {
+            throw new IllegalArgumentException("Deduplication window and size must be positive");
+        }
+        this.windowMillis = windowMillis;
+        this.maxKeys = maxKeys;
+    }
+
+    /**
+     * Claim a key for the given id unless it was claimed within the window.
+     *
+     * @return the id the key was already claimed with, or null if this claim succeeded
+     */
+    public String claim(String key, String id, long nowMillis) {
+        Claim claim = new Claim(key, id, nowMillis);
+        while (true) {
+            Claim existing = claims.putIfAbsent(key, claim);
+            if (existing == null) {
+                break;
+            }
+            if (nowMillis - existing.claimedAt < windowMillis) {
+                hits.increment();
+                return existing.id;
+            }
+            // Outside the window but not yet expired from the map
+            if (claims.replace(key, existing, claim)) {
+                break;
+            }
+        }
+        claimOrder.offer(claim);
+        queued.incrementAndGet();
+        misses.increment();
+        expire(nowMillis);
+        return null;
+    }
+
+    /**
+     * Forget a key claimed with the given id, e.g. because storing its entry failed.
+     */
+    public void release(String key, String id) {
+        claims.computeIfPresent(key, (k, claim) -> claim.id.equals(id) ? null : claim);
+    }
+
+    public int size() {
+        return claims.size();
+    }
+
+    public Map<String, Object> getStatistics() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("keys", claims.size());
+        stats.put("maxKeys", maxKeys);
+        stats.put("windowSeconds", windowMillis / 1000);
+        stats.put("lookups", lookups);
+        stats.put("duplicates", hitCount);
+        stats.put("hitRate", lookups > 0 ? (double) hitCount / lookups : 0.0);
+        stats.put("evictions", evictions.sum());
+        return stats;
+    }
+
+    /**
+     * Drop the oldest claims while they are outside the window or the index is over size.
+     */
+    private void expire(long nowMillis) {
+        Claim oldest;
+        while ((oldest = claimOrder.peek()) != null) {
+            boolean expired = nowMillis - oldest.claimedAt >= windowMillis;
+            if (!expired && queued.get() <= maxKeys) {
+                return;
+            }
+            if (claimOrder.remove(oldest)) {
+                queued.decrementAndGet();
+                // Only if the key still maps to this claim, not a newer one
+                if (claims.remove(oldest.key, oldest) && !expired) {
+                    evictions.increment();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.maxxenergy.edap.storage;
+
+/**
+ * Source of unique ids for newly stored entries.
+ */
+public interface IdGenerator {
+
+    /**
+     * A new id, never returned before by this generator. Must be thread-safe.
+     */
+    String nextId();
+}
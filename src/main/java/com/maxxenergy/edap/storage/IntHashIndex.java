@@ -0,0 +1,147 @@
+package com.maxxenergy.edap.storage;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * Open-addressing hash index from a key to a non-negative int (such as a record slot).
+ * Keys are not stored: the index keeps only each key's hash and value in two primitive
+ * arrays, and the caller supplies a matcher that checks whether the key stored at a
+ * given value is the one being looked up. This keeps large indexes free of per-entry
+ * objects. Not thread-safe; callers must synchronize access.
+ */
+public class IntHashIndex {
+
+    public static final int NOT_FOUND = -1;
+
+    private static final int EMPTY = -1;
+
+    private int[] hashes;
+    private int[] values;
+    private int size;
+
+    public IntHashIndex() {
+        this(1024);
+    }
+
+    public IntHashIndex(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(16, initialCapacity - 1)) << 1;
+        allocate(capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Heap bytes held by the index arrays.
+     */
+    public long memoryBytes() {
+        return (long) values.length * 8;
+    }
+
+    public int get(int hash, IntPredicate matcher) {
+        int mask = values.length - 1;
+        for (int i = mix(hash) & mask; values[i] != EMPTY; i = (i + 1) & mask) {
+            if (hashes[i] == hash && matcher.test(values[i])) {
+                return values[i];
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Map the key to a value, replacing the value of an existing matching key.
+     */
+    public void put(int hash, int value, IntPredicate matcher) {
+        int mask = values.length - 1;
+        int i = mix(hash) & mask;
+        for (; values[i] != EMPTY; i = (i + 1) & mask) {
+            if (hashes[i] == hash && matcher.test(values[i])) {
+                values[i] = value;
+                return;
+            }
+        }
+        hashes[i] = hash;
+        values[i] = value;
+        if (++size * 2 > values.length) {
+            resize(values.length * 2);
+        }
+    }
+
+    /**
+     * Remove the matching key.
+     *
+     * @return the value it was mapped to, or {@link #NOT_FOUND}
+     */
+    public int remove(int hash, IntPredicate matcher) {
+        int mask = values.length - 1;
+        for (int i = mix(hash) & mask; values[i] != EMPTY; i = (i + 1) & mask) {
+            if (hashes[i] == hash && matcher.test(values[i])) {
+                int removed = values[i];
+                shiftBack(i);
+                size--;
+                return removed;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    public void clear() {
+        Arrays.fill(values, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Backward-shift deletion: pull later members of the probe run into the hole so
+     * lookups never need tombstones.
+     */
+    private void shiftBack(int hole) {
+        int mask = values.length - 1;
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            if (values[i] == EMPTY) {
+                break;
+            }
+            int home = mix(hashes[i]) & mask;
+            // Move the element if its home slot is not within (hole, i]
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                hashes[hole] = hashes[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        values[hole] = EMPTY;
+    }
+
+    private void resize(int capacity) {
+        int[] oldHashes = hashes;
+        int[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int j = 0; j < oldValues.length; j++) {
+            if (oldValues[j] == EMPTY) {
+                continue;
+            }
+            int i = mix(oldHashes[j]) & mask;
+            while (values[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            hashes[i] = oldHashes[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private void allocate(int capacity) {
+        hashes = new int[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+    }
+
+    private static int mix(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
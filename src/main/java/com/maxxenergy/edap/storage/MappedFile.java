@@ -0,0 +1,151 @@
+package com.maxxenergy.edap.storage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A file accessed through fixed-size memory-mapped chunks.
+ * Chunks are mapped on first use, which also extends the file, so the file can grow
+ * past the 2 GB limit of a single mapping. Callers must lay out their data so that
+ * no single value straddles a chunk boundary.
+ *
+ * Reads use absolute buffer accessors and are safe to run concurrently;
+ * writers must be serialized by the caller.
+ */
+public class MappedFile implements Closeable {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final int chunkSize;
+
+    // Replaced wholesale when the file grows, so readers never need the lock
+    private volatile MappedByteBuffer[] chunks = new MappedByteBuffer[0];
+
+    public MappedFile(Path path, int chunkSize) throws IOException {
+        this.path = path;
+        this.chunkSize = chunkSize;
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        // Map whatever already exists so reads of persisted data work right away
+        long existingChunks = (channel.size() + chunkSize - 1) / chunkSize;
+        for (int i = 0; i < existingChunks; i++) {
+            mapChunk(i);
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Bytes currently mapped, which is the on-disk size of the file.
+     */
+    public long mappedBytes() {
+        return (long) chunks.length * chunkSize;
+    }
+
+    public byte getByte(long position) {
+        return chunk(position).get(offset(position));
+    }
+
+    public void putByte(long position, byte value) {
+        chunk(position).put(offset(position), value);
+    }
+
+    public short getShort(long position) {
+        return chunk(position).getShort(offset(position));
+    }
+
+    public void putShort(long position, short value) {
+        chunk(position).putShort(offset(position), value);
+    }
+
+    public int getInt(long position) {
+        return chunk(position).getInt(offset(position));
+    }
+
+    public void putInt(long position, int value) {
+        chunk(position).putInt(offset(position), value);
+    }
+
+    public long getLong(long position) {
+        return chunk(position).getLong(offset(position));
+    }
+
+    public void putLong(long position, long value) {
+        chunk(position).putLong(offset(position), value);
+    }
+
+    public double getDouble(long position) {
+        return chunk(position).getDouble(offset(position));
+    }
+
+    public void putDouble(long position, double value) {
+        chunk(position).putDouble(offset(position), value);
+    }
+
+    public void getBytes(long position, byte[] target) {
+        chunk(position).get(offset(position), target);
+    }
+
+    public void putBytes(long position, byte[] source) {
+        chunk(position).put(offset(position), source);
+    }
+
+    /**
+     * Flush dirty pages of every mapped chunk to disk.
+     */
+    public synchronized void force() {
+        for (MappedByteBuffer chunk : chunks) {
+            chunk.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+        chunks = new MappedByteBuffer[0];
+        channel.close();
+    }
+
+    private MappedByteBuffer chunk(long position) {
+        int index = (int) (position / chunkSize);
+        MappedByteBuffer[] mapped = chunks;
+        if (index < mapped.length) {
+            return mapped[index];
+        }
+        synchronized (this) {
+            try {
+                while (chunks.length <= index) {
+                    mapChunk(chunks.length);
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to map " + path + " at " + position, e);
+            }
+            return chunks[index];
+        }
+    }
+
+    private void mapChunk(int index) throws IOException {
+        MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_WRITE, (long) index * chunkSize, chunkSize);
+        MappedByteBuffer[] grown = Arrays.copyOf(chunks, index + 1);
+        grown[index] = chunk;
+        chunks = grown;
+    }
+
+    private int offset(long position) {
+        return (int) (position % chunkSize);
+    }
+}
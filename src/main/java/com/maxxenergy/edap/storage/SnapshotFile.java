@@ -0,0 +1,200 @@
+package com.maxxenergy.edap.storage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Compact binary snapshot of a repository, checkpointing its write-ahead log.
+ *
+ * Layout: [int magic][int version][long first log segment to replay], then blocks of
+ * [int value count][int byte length][int CRC32][encoded values], ended by a block with a
+ * count of -1 followed by the total value count. Blocks are independent, so loading reads
+ * them sequentially and decodes them in parallel. Snapshots are written to a temporary file
+ * and renamed into place, so a crash mid-write leaves the previous snapshot intact.
+ */
+public final class SnapshotFile {
+
+    private static final int MAGIC = 0x45534E50; // "ESNP"
+    private static final int VERSION = 1;
+    private static final int VALUES_PER_BLOCK = 4096;
+    private static final int END_OF_BLOCKS = -1;
+
+    /**
+     * Encodes one value.
+     */
+    @FunctionalInterface
+    public interface ValueWriter<T> {
+        void write(DataOutput out, T value) throws IOException;
+    }
+
+    /**
+     * Decodes one value.
+     */
+    @FunctionalInterface
+    public interface ValueReader<T> {
+        T read(DataInput in) throws IOException;
+    }
+
+    /**
+     * What a loaded snapshot covered.
+     */
+    public static final class Checkpoint {
+        private final long firstLogSegment;
+        private final long valueCount;
+
+        Checkpoint(long firstLogSegment, long valueCount) {
+            this.firstLogSegment = firstLogSegment;
+            this.valueCount = valueCount;
+        }
+
+        /**
+         * First log segment holding writes that may be missing from the snapshot.
+         */
+        public long getFirstLogSegment() {
+            return firstLogSegment;
+        }
+
+        public long getValueCount() {
+            return valueCount;
+        }
+    }
+
+    private SnapshotFile() {
+    }
+
+    /**
+     * Write the values to a new snapshot at the given path.
+     *
+     * @return the number of values written
+     */
+    public static <T> long write(Path path, long firstLogSegment, Iterable<T> values,
+                                 ValueWriter<? super T> writer) throws IOException {
+        Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        long count = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(firstLogSegment);
+
+            ByteArrayOutputStream block = new ByteArrayOutputStream(1 << 16);
+            DataOutputStream blockOut = new DataOutputStream(block);
+            int inBlock = 0;
+            for (T value : values) {
+                writer.write(blockOut, value);
+                count++;
+                if (++inBlock == VALUES_PER_BLOCK) {
+                    writeBlock(out, inBlock, block);
+                    inBlock = 0;
+                }
+            }
+            if (inBlock > 0) {
+                writeBlock(out, inBlock, block);
+            }
+            out.writeInt(END_OF_BLOCKS);
+            out.writeLong(count);
+        }
+        // Make the data durable before the rename publishes it
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Load a snapshot, decoding its blocks on up to {@code parallelism} threads and handing
+     * every value to the sink. The sink must be thread-safe.
+     *
+     * @return what the snapshot covered, or null if there is no snapshot
+     */
+    public static <T> Checkpoint read(Path path, ValueReader<? extends T> reader, Consumer<? super T> sink,
+                                      int parallelism) throws IOException {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        ExecutorService decoders = Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Unrecognized snapshot format in " + path);
+            }
+            long firstLogSegment = in.readLong();
+
+            List<Future<Integer>> decoded = new ArrayList<>();
+            int count;
+            while ((count = in.readInt()) != END_OF_BLOCKS) {
+                int valueCount = count;
+                byte[] bytes = new byte[in.readInt()];
+                int checksum = in.readInt();
+                in.readFully(bytes);
+                decoded.add(decoders.submit(() -> decodeBlock(path, bytes, checksum, valueCount, reader, sink)));
+            }
+            long expected = in.readLong();
+
+            long total = 0;
+            for (Future<Integer> block : decoded) {
+                total += block.get();
+            }
+            if (total != expected) {
+                throw new IOException("Snapshot " + path + " holds " + total + " values, expected " + expected);
+            }
+            return new Checkpoint(firstLogSegment, total);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading " + path, e);
+        } catch (ExecutionException e) {
+            throw new IOException("Unable to decode " + path, e.getCause());
+        } finally {
+            decoders.shutdownNow();
+        }
+    }
+
+    private static void writeBlock(DataOutputStream out, int count, ByteArrayOutputStream block) throws IOException {
+        byte[] bytes = block.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        out.writeInt(count);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+        block.reset();
+    }
+
+    private static <T> int decodeBlock(Path path, byte[] bytes, int checksum, int count,
+                                       ValueReader<? extends T> reader, Consumer<? super T> sink) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if ((int) crc.getValue() != checksum) {
+            throw new IOException("Corrupt block in snapshot " + path);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < count; i++) {
+            sink.accept(reader.read(in));
+        }
+        return count;
+    }
+}
@@ -0,0 +1,73 @@
+package com.maxxenergy.edap.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Snowflake-style generator of time-ordered 64-bit ids:
+ * [41 bits milliseconds since 2024-01-01 UTC][10 bits node][12 bits sequence].
+ *
+ * Ids are rendered as 16 lower-case hex digits, so comparing them as strings orders them
+ * by creation time, and ids from different nodes (edap.storage.node-id) never collide.
+ * Generation is lock-free: the last time and sequence are packed into one AtomicLong that
+ * callers advance with compare-and-set. When a millisecond's 4096 sequence numbers run
+ * out, or the system clock steps back, ids continue from the last time used, so they are
+ * always increasing.
+ */
+@Component
+public class SnowflakeIdGenerator implements IdGenerator {
+
+    private static final long EPOCH_MILLIS = 1704067200000L; // 2024-01-01T00:00:00Z
+
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+
+    private static final int ID_DIGITS = 16;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final long nodeBits;
+
+    // [time since epoch][sequence] of the last id handed out
+    private final AtomicLong last = new AtomicLong();
+
+    public SnowflakeIdGenerator(@Value("${edap.storage.node-id:0}") int nodeId) {
+        if (nodeId < 0 || nodeId > MAX_NODE_ID) {
+            throw new IllegalArgumentException("Node id must be between 0 and " + MAX_NODE_ID + ": " + nodeId);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+    }
+
+    @Override
+    public String nextId() {
+        return toHex(nextLong());
+    }
+
+    /**
+     * The next id as a number.
+     */
+    public long nextLong() {
+        while (true) {
+            long previous = last.get();
+            long now = System.currentTimeMillis() - EPOCH_MILLIS;
+            // A new millisecond restarts the sequence; otherwise count on, carrying into the time bits
+            long next = now > (previous >>> SEQUENCE_BITS) ? now << SEQUENCE_BITS : previous + 1;
+            if (last.compareAndSet(previous, next)) {
+                long time = next >>> SEQUENCE_BITS;
+                long sequence = next & ((1L << SEQUENCE_BITS) - 1);
+                return time << (NODE_BITS + SEQUENCE_BITS) | nodeBits | sequence;
+            }
+        }
+    }
+
+    private static String toHex(long id) {
+        char[] digits = new char[ID_DIGITS];
+        for (int i = ID_DIGITS - 1; i >= 0; i--) {
+            digits[i] = HEX_DIGITS[(int) (id & 0xF)];
+            id >>>= 4;
+        }
+        return new String(digits);
+    }
+}
@@ -0,0 +1,74 @@
+package com.maxxenergy.edap.storage;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe dictionary assigning dense int codes to strings.
+ * Codes are stable for the lifetime of the dictionary and start at zero,
+ * so they can be used directly as array indexes by storage engines.
+ */
+public class StringDictionary {
+
+    public static final int NO_CODE = -1;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private volatile int size;
+
+    /**
+     * Get the code for a value, assigning the next free code if it has none yet.
+     */
+    public int encode(String value) {
+        if (value == null) {
+            return NO_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            if (code != null) {
+                return code;
+            }
+            int next = size;
+            if (next == values.length) {
+                values = Arrays.copyOf(values, next * 2);
+            }
+            values[next] = value;
+            size = next + 1;
+            // Publish the code only once the value can be decoded
+            codes.put(value, next);
+            return next;
+        }
+    }
+
+    /**
+     * Get the code for a value without assigning one.
+     *
+     * @return the code, or {@link #NO_CODE} if the value was never encoded
+     */
+    public int lookup(String value) {
+        if (value == null) {
+            return NO_CODE;
+        }
+        Integer code = codes.get(value);
+        return code != null ? code : NO_CODE;
+    }
+
+    /**
+     * Resolve a code back to its value.
+     */
+    public String decode(int code) {
+        if (code < 0 || code >= size) {
+            return null;
+        }
+        return values[code];
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,53 @@
+package com.maxxenergy.edap.storage;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe pool of reference-counted canonical strings, so that stored entries sharing a
+ * user id or plant name share one String instance. A storage engine acquires a value when it
+ * stores an entry and releases it when the entry is removed; a value no stored entry refers
+ * to any more is evicted, so the pool never outgrows the live data.
+ */
+public class StringPool {
+
+    private static final class Slot {
+        final String value;
+        long references;
+
+        Slot(String value) {
+            this.value = value;
+        }
+    }
+
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    /**
+     * Take a reference to a value and return its canonical instance.
+     */
+    public String acquire(String value) {
+        if (value == null) {
+            return null;
+        }
+        Slot slot = slots.compute(value, (key, existing) -> {
+            Slot target = existing != null ? existing : new Slot(key);
+            target.references++;
+            return target;
+        });
+        return slot.value;
+    }
+
+    /**
+     * Drop a reference taken with {@link #acquire(String)}.
+     */
+    public void release(String value) {
+        if (value == null) {
+            return;
+        }
+        slots.computeIfPresent(value, (key, existing) -> --existing.references > 0 ? existing : null);
+    }
+
+    public int size() {
+        return slots.size();
+    }
+}
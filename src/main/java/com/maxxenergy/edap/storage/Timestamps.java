@@ -0,0 +1,56 @@
+package com.maxxenergy.edap.storage;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.zone.ZoneRules;
+
+/**
+ * Conversions between LocalDateTime and the epoch-millisecond longs used by compact storage.
+ * The local date-time is read as if it were UTC, which makes the mapping exact and
+ * independent of the server's time zone; precision below one millisecond is dropped.
+ */
+public final class Timestamps {
+
+    private Timestamps() {
+    }
+
+    // Beyond these a date-time has no epoch-millisecond value; conversions saturate instead,
+    // so range bounds like LocalDateTime.MIN and MAX stay usable
+    private static final long MAX_SECONDS = Long.MAX_VALUE / 1000 - 1;
+    private static final long MIN_SECONDS = Long.MIN_VALUE / 1000 + 1;
+
+    // Rules of the default time zone, looked up once: TimeZone.getDefault() returns a new
+    // clone on every call. A later change of the JVM default zone is not picked up.
+    private static final ZoneRules LOCAL_RULES = ZoneId.systemDefault().getRules();
+
+    public static long toEpochMillis(LocalDateTime timestamp) {
+        long seconds = timestamp.toEpochSecond(ZoneOffset.UTC);
+        if (seconds > MAX_SECONDS) {
+            return Long.MAX_VALUE;
+        }
+        if (seconds < MIN_SECONDS) {
+            return Long.MIN_VALUE;
+        }
+        return seconds * 1000 + timestamp.getNano() / 1_000_000;
+    }
+
+    /**
+     * The current local date-time in epoch milliseconds, without building a LocalDateTime;
+     * equal to {@code toEpochMillis(LocalDateTime.now())}. Zones with a fixed offset need no
+     * allocation; others look the offset up through a short-lived Instant.
+     */
+    public static long now() {
+        long utcMillis = System.currentTimeMillis();
+        ZoneOffset offset = LOCAL_RULES.isFixedOffset()
+                ? LOCAL_RULES.getOffset(Instant.EPOCH)
+                : LOCAL_RULES.getOffset(Instant.ofEpochMilli(utcMillis));
+        return utcMillis + offset.getTotalSeconds() * 1000L;
+    }
+
+    public static LocalDateTime fromEpochMillis(long epochMillis) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(epochMillis, 1000L),
+                (int) Math.floorMod(epochMillis, 1000L) * 1_000_000, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,110 @@
+package com.maxxenergy.edap.storage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Inverted index from lower-cased character trigrams to the strings containing them, for
+ * case-insensitive substring search over a modest set of distinct strings such as plant names.
+ *
+ * A substring search intersects the posting sets of the needle's trigrams, smallest first,
+ * and confirms the few remaining candidates with a plain substring check. Needles shorter
+ * than three characters fall back to checking every indexed string.
+ *
+ * Thread-safe. Adding and removing the same string must not race; callers serialize
+ * changes per string.
+ */
+public class TrigramIndex {
+
+    private static final int GRAM = 3;
+
+    private final Map<String, Set<String>> postings = new ConcurrentHashMap<>();
+    private final Map<String, String> lowerCased = new ConcurrentHashMap<>();
+
+    public void add(String value) {
+        String lower = value.toLowerCase(Locale.ROOT);
+        if (lowerCased.putIfAbsent(value, lower) != null) {
+            return;
+        }
+        for (String gram : trigrams(lower)) {
+            postings.computeIfAbsent(gram, g -> ConcurrentHashMap.newKeySet()).add(value);
+        }
+    }
+
+    public void remove(String value) {
+        String lower = lowerCased.remove(value);
+        if (lower == null) {
+            return;
+        }
+        for (String gram : trigrams(lower)) {
+            postings.computeIfPresent(gram, (g, values) -> {
+                values.remove(value);
+                return values.isEmpty() ? null : values;
+            });
+        }
+    }
+
+    public int size() {
+        return lowerCased.size();
+    }
+
+    /**
+     * Indexed strings containing the needle, ignoring case.
+     */
+    public Set<String> search(String needle) {
+        String lower = needle.toLowerCase(Locale.ROOT);
+        Set<String> matches = new HashSet<>();
+        if (lower.length() < GRAM) {
+            lowerCased.forEach((value, candidate) -> {
+                if (candidate.contains(lower)) {
+                    matches.add(value);
+                }
+            });
+            return matches;
+        }
+
+        List<Set<String>> lists = new ArrayList<>();
+        for (String gram : trigrams(lower)) {
+            Set<String> values = postings.get(gram);
+            if (values == null) {
+                return matches;
+            }
+            lists.add(values);
+        }
+        lists.sort(Comparator.comparingInt(Set::size));
+
+        for (String candidate : lists.get(0)) {
+            if (containsInAll(lists, candidate)) {
+                // Sharing every trigram does not guarantee they are contiguous
+                String candidateLower = lowerCased.get(candidate);
+                if (candidateLower != null && candidateLower.contains(lower)) {
+                    matches.add(candidate);
+                }
+            }
+        }
+        return matches;
+    }
+
+    private static boolean containsInAll(List<Set<String>> lists, String candidate) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (!lists.get(i).contains(candidate)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Set<String> trigrams(String lower) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= lower.length(); i++) {
+            grams.add(lower.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,360 @@
+package com.maxxenergy.edap.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of typed binary records, split into numbered segment files
+ * ({@code <name>.000001.log}, {@code <name>.000002.log}, ...). Only the newest segment is
+ * written; {@link #rotate()} starts a new one so that older segments can be deleted once a
+ * snapshot covers them.
+ *
+ * Each record is stored as [int payload length][int CRC32][byte type][payload].
+ * Appends are ordered by a short lock and go straight to the OS page cache; making them
+ * durable is a separate step governed by the {@link FsyncPolicy}. Under ALWAYS, writers
+ * wait in {@link #awaitDurable(long)} using group commit: one waiting thread becomes the
+ * leader and issues a single fsync covering every record appended so far, while the others
+ * wait for it rather than each paying for their own disk flush.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final int RECORD_HEADER_SIZE = 9;
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    /**
+     * When appended records are forced to disk.
+     */
+    public enum FsyncPolicy {
+        /** Writers wait until their record is on disk; concurrent writers share one fsync. */
+        ALWAYS,
+        /** A background thread forces the log periodically; a crash can lose the last interval. */
+        BATCH,
+        /** Leave flushing to the OS; only a process crash, not a power loss, is survived. */
+        NEVER
+    }
+
+    /**
+     * Receives log records during replay.
+     */
+    @FunctionalInterface
+    public interface RecordHandler {
+        void apply(byte type, DataInput payload) throws IOException;
+    }
+
+    private final Path directory;
+    private final String name;
+    private final FsyncPolicy policy;
+    private final ScheduledExecutorService flusher;
+
+    // Current segment; replaced by rotate() while appends are blocked
+    private volatile FileChannel channel;
+    private volatile long segment;
+    private long segmentPosition;
+
+    // Offsets are logical: bytes appended since the log was opened, across all segments
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private volatile long writtenOffset;
+
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncFinished = syncLock.newCondition();
+    private boolean syncInProgress;
+    private long durableOffset;
+
+    public WriteAheadLog(Path directory, String name, FsyncPolicy policy, long batchIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        this.policy = policy;
+        Files.createDirectories(directory);
+
+        List<Long> segments = listSegments();
+        this.segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+        this.channel = openSegment(segment);
+        this.segmentPosition = channel.size();
+
+        if (policy == FsyncPolicy.BATCH) {
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-flush-" + name);
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushQuietly,
+                    batchIntervalMillis, batchIntervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            flusher = null;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public FsyncPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Number of the segment currently being appended to.
+     */
+    public long currentSegment() {
+        return segment;
+    }
+
+    /**
+     * Logical offset just past the last appended record.
+     */
+    public long size() {
+        return writtenOffset;
+    }
+
+    /**
+     * Read every intact record of the segments numbered {@code fromSegment} and above, oldest
+     * first. A torn or corrupt record, left by a crash mid-append, ends that segment; in the
+     * segment being appended to it is also cut off the file.
+     *
+     * @return the number of records applied
+     */
+    public long replay(long fromSegment, RecordHandler handler) throws IOException {
+        long applied = 0;
+        for (long number : listSegments()) {
+            if (number < fromSegment) {
+                continue;
+            }
+            if (number == segment) {
+                applied += replaySegment(channel, number, handler, true);
+            } else {
+                try (FileChannel older = FileChannel.open(segmentPath(number), StandardOpenOption.READ)) {
+                    applied += replaySegment(older, number, handler, false);
+                }
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Append a record to the log. The record is visible to replay once written, but is only
+     * guaranteed to survive a power loss after {@link #awaitDurable(long)} returns.
+     *
+     * @return the logical offset just past the record
+     */
+    public long append(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(type).put(payload).flip();
+
+        appendLock.lock();
+        try {
+            int length = record.remaining();
+            while (record.hasRemaining()) {
+                segmentPosition += channel.write(record, segmentPosition);
+            }
+            writtenOffset += length;
+            return writtenOffset;
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to append to " + segmentPath(segment), e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Block until the log is durable up to the given offset, if the fsync policy requires it.
+     */
+    public void awaitDurable(long offset) {
+        if (policy == FsyncPolicy.ALWAYS) {
+            sync(offset);
+        }
+    }
+
+    /**
+     * Force everything appended so far to disk.
+     */
+    public void flush() {
+        sync(writtenOffset);
+    }
+
+    /**
+     * Seal the current segment and start appending to a new one.
+     * Callers that need a clean cut must make sure no write is between logging and applying.
+     *
+     * @return the number of the new segment
+     */
+    public long rotate() throws IOException {
+        appendLock.lock();
+        try {
+            // Once everything appended is durable no sync can be running against the old channel
+            flush();
+            FileChannel sealed = channel;
+            long next = segment + 1;
+            channel = openSegment(next);
+            segment = next;
+            segmentPosition = 0;
+            sealed.close();
+            return next;
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Delete the segments numbered below the given one, once a snapshot makes them redundant.
+     */
+    public void deleteSegmentsBefore(long firstKept) throws IOException {
+        for (long number : listSegments()) {
+            if (number < firstKept && number != segment) {
+                Files.deleteIfExists(segmentPath(number));
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdown();
+        }
+        flush();
+        channel.close();
+    }
+
+    private long replaySegment(FileChannel source, long number, RecordHandler handler, boolean active) throws IOException {
+        long validEnd = 0;
+        long applied = 0;
+        long size = source.size();
+        CRC32 crc = new CRC32();
+        source.position(0);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(source), 1 << 16));
+        try {
+            while (true) {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                byte type = in.readByte();
+                if (length < 0 || validEnd + RECORD_HEADER_SIZE + length > size) {
+                    break;
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+
+                crc.reset();
+                crc.update(type);
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                handler.apply(type, new DataInputStream(new ByteArrayInputStream(payload)));
+                validEnd += RECORD_HEADER_SIZE + length;
+                applied++;
+            }
+        } catch (EOFException e) {
+            // Reached the end of the segment, possibly in the middle of a torn record
+        }
+
+        if (validEnd < size) {
+            if (active) {
+                logger.warn("Truncating {} bytes of incomplete records at the end of {}",
+                        size - validEnd, segmentPath(number));
+                source.truncate(validEnd);
+                source.force(true);
+                segmentPosition = validEnd;
+            } else {
+                logger.warn("Ignoring {} bytes of corrupt records at the end of {}",
+                        size - validEnd, segmentPath(number));
+            }
+        }
+        return applied;
+    }
+
+    private void sync(long offset) {
+        syncLock.lock();
+        try {
+            while (durableOffset < offset) {
+                if (syncInProgress) {
+                    // Another writer is the leader; its fsync may already cover this offset
+                    syncFinished.awaitUninterruptibly();
+                    continue;
+                }
+                syncInProgress = true;
+                long target = writtenOffset;
+                FileChannel targetChannel = channel;
+                boolean forced = false;
+                syncLock.unlock();
+                try {
+                    targetChannel.force(false);
+                    forced = true;
+                } catch (IOException e) {
+                    throw new IllegalStateException("Unable to sync " + segmentPath(segment), e);
+                } finally {
+                    syncLock.lock();
+                    syncInProgress = false;
+                    if (forced) {
+                        durableOffset = Math.max(durableOffset, target);
+                    }
+                    syncFinished.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            logger.error("Periodic flush of the {} log failed", name, e);
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(segmentPath(number), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(long number) {
+        return directory.resolve(String.format("%s.%06d%s", name, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * Numbers of the segments on disk, oldest first.
+     */
+    private List<Long> listSegments() throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        String prefix = name + ".";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String number = fileName.substring(prefix.length(), fileName.length() - SEGMENT_SUFFIX.length());
+                if (!number.isEmpty() && number.chars().allMatch(Character::isDigit)) {
+                    numbers.add(Long.parseLong(number));
+                }
+            }
+        }
+        Collections.sort(numbers);
+        return numbers;
+    }
+}
@@ -0,0 +1,50 @@
+package com.maxxenergy.edap.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Locale;
+
+/**
+ * Opens write-ahead logs and locates snapshots for the in-memory repositories
+ * from the edap.storage.wal.* settings.
+ */
+@Component
+public class WriteAheadLogFactory {
+
+    @Value("${edap.storage.wal.enabled:true}")
+    private boolean enabled;
+
+    @Value("${edap.storage.wal.directory:data/wal}")
+    private String directory;
+
+    @Value("${edap.storage.wal.fsync:always}")
+    private String fsync;
+
+    @Value("${edap.storage.wal.batch-interval-ms:10}")
+    private long batchIntervalMillis;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Open the named log, or return null when write-ahead logging is disabled.
+     */
+    public WriteAheadLog open(String name) throws IOException {
+        if (!enabled) {
+            return null;
+        }
+        WriteAheadLog.FsyncPolicy policy = WriteAheadLog.FsyncPolicy.valueOf(fsync.trim().toUpperCase(Locale.ROOT));
+        return new WriteAheadLog(Paths.get(directory), name, policy, batchIntervalMillis);
+    }
+
+    /**
+     * Location of the named snapshot, kept next to the log it checkpoints.
+     */
+    public Path snapshotPath(String name) {
+        return Paths.get(directory, name + ".snapshot");
+    }
+}
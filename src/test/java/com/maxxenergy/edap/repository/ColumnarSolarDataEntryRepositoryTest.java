@@ -0,0 +1,16 @@
+package com.maxxenergy.edap.repository;
+
+import java.nio.file.Path;
+
+class ColumnarSolarDataEntryRepositoryTest extends SolarDataEntryRepositoryContractTest {
+
+    @Override
+    protected SolarDataEntryRepository open(Path directory) throws Exception {
+        return TestEngines.columnar();
+    }
+
+    @Override
+    protected boolean isDurable() {
+        return false;
+    }
+}
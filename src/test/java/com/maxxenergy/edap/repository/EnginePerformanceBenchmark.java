@@ -0,0 +1,132 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Timed comparison of every entry engine on the same workload: inserts, point lookups,
+ * per-user pages and summaries, the public feed and time ranges. Each engine runs the
+ * workload twice and the second, warmed-up run is logged.
+ *
+ * Not picked up by a plain "mvn test"; run it with
+ * mvn test -Dtest=EnginePerformanceBenchmark [-Dbenchmark.entries=200000] [-Dbenchmark.queries=500]
+ */
+class EnginePerformanceBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(EnginePerformanceBenchmark.class);
+
+    private static final int ENTRIES = Integer.getInteger("benchmark.entries", 200_000);
+    private static final int USERS = 300;
+    private static final int QUERIES = Integer.getInteger("benchmark.queries", 500);
+    private static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private interface EngineFactory {
+        SolarDataEntryRepository open(Path directory) throws Exception;
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void compareEngines() throws Exception {
+        Map<String, EngineFactory> engines = new LinkedHashMap<>();
+        engines.put("in-memory", TestEngines::inMemory);
+        engines.put("sharded", dir -> TestEngines.sharded(dir, 0));
+        engines.put("columnar", dir -> TestEngines.columnar());
+        engines.put("mmap", TestEngines::mapped);
+        engines.put("lsm", dir -> TestEngines.lsm(dir, 100_000));
+
+        for (Map.Entry<String, EngineFactory> engine : engines.entrySet()) {
+            run(engine.getKey(), engine.getValue(), false);
+            run(engine.getKey(), engine.getValue(), true);
+        }
+    }
+
+    private void run(String name, EngineFactory factory, boolean report) throws Exception {
+        Path engineDirectory = Files.createTempDirectory(directory, name);
+        SolarDataEntryRepository repository = factory.open(engineDirectory);
+        try {
+            Random random = new Random(42);
+            List<String> ids = new ArrayList<>(ENTRIES);
+
+            long start = System.nanoTime();
+            List<SolarDataEntry> batch = new ArrayList<>(500);
+            for (int i = 0; i < ENTRIES; i++) {
+                SolarDataEntry entry = new SolarDataEntry("user-" + random.nextInt(USERS), "Plant " + random.nextInt(40),
+                        random.nextInt(100) * 1.0, 100.0, random.nextInt(100) * 1.0);
+                entry.setTimestamp(BASE.plusSeconds(30L * i));
+                entry.setPublic(random.nextInt(4) == 0);
+                if (i % 2 == 0) {
+                    ids.add(repository.save(entry).getId());
+                } else {
+                    batch.add(entry);
+                }
+                if (batch.size() == 500) {
+                    repository.saveAll(batch).forEach(saved -> ids.add(saved.getId()));
+                    batch.clear();
+                }
+            }
+            repository.saveAll(batch).forEach(saved -> ids.add(saved.getId()));
+            long insertNanos = System.nanoTime() - start;
+
+            long lookupNanos = time(() -> {
+                for (int i = 0; i < QUERIES; i++) {
+                    repository.findById(ids.get(random.nextInt(ids.size())));
+                }
+            });
+            long pageNanos = time(() -> {
+                for (int i = 0; i < QUERIES; i++) {
+                    repository.findPageByUserIdOrderByTimestampDesc("user-" + random.nextInt(USERS), null, 20);
+                }
+            });
+            long summaryNanos = time(() -> {
+                for (int i = 0; i < QUERIES; i++) {
+                    repository.summarizeByUserId("user-" + random.nextInt(USERS));
+                }
+            });
+            long feedNanos = time(() -> {
+                for (int i = 0; i < QUERIES / 10; i++) {
+                    repository.findTopKByIsPublicTrueOrderByTimestampDesc(20);
+                }
+            });
+            long rangeNanos = time(() -> {
+                for (int i = 0; i < QUERIES / 10; i++) {
+                    LocalDateTime from = BASE.plusSeconds(30L * random.nextInt(ENTRIES));
+                    repository.findByTimestampBetween(from, from.plusHours(1));
+                }
+            });
+
+            if (report) {
+                logger.info("{}: {} entries | insert {} us | lookup {} us | user page {} us | user summary {} us"
+                                + " | public top 20 {} us | 1h range {} us",
+                        name, ENTRIES, micros(insertNanos, ENTRIES), micros(lookupNanos, QUERIES),
+                        micros(pageNanos, QUERIES), micros(summaryNanos, QUERIES),
+                        micros(feedNanos, QUERIES / 10), micros(rangeNanos, QUERIES / 10));
+            }
+        } finally {
+            TestEngines.close(repository);
+        }
+    }
+
+    private static long time(Runnable workload) {
+        long start = System.nanoTime();
+        workload.run();
+        return System.nanoTime() - start;
+    }
+
+    private static String micros(long nanos, int operations) {
+        return String.format("%.2f", nanos / 1000.0 / operations);
+    }
+}
@@ -0,0 +1,213 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LsmSolarDataEntryRepositoryTest extends SolarDataEntryRepositoryContractTest {
+
+    // A small memtable, so the contract runs across many flushes and compactions
+    private static final int MEMTABLE_ENTRIES = 97;
+
+    // A memtable that only flushes on checkpoint, so a test decides where each run ends
+    private static final int LARGE_MEMTABLE_ENTRIES = 100_000;
+
+    @Override
+    protected SolarDataEntryRepository open(Path directory) throws Exception {
+        return TestEngines.lsm(directory, MEMTABLE_ENTRIES);
+    }
+
+    @Test
+    void flushedAndCompactedRunsSurviveReopen() throws Exception {
+        populate(3000);
+        await(() -> statistic("sealedMemtables") == 0 && statistic("compactions") > 0, "flushes and a compaction");
+        assertTrue(statistic("flushes") > 1);
+        assertSameContents();
+
+        reopen();
+        assertSameContents();
+        assertTrue(statistic("runs") > 0);
+    }
+
+    @Test
+    void deletionShadowsOlderVersionsInRunsAndMemtables() throws Exception {
+        useLargeMemtable();
+        SolarDataEntry original = save(entry("user-1", "Plant A", 1.0, 50.0, 10));
+        SolarDataEntry other = save(entry("user-1", "Plant A", 2.0, 50.0, 20));
+        lsm().checkpoint();
+
+        // The newer version moves to another user and time, in a newer run
+        SolarDataEntry moved = entry("user-2", "Plant B", 3.0, 50.0, 5000);
+        moved.setId(original.getId());
+        save(moved);
+        lsm().checkpoint();
+        assertEquals(List.of(other.getId()), ids(repository.findByUserIdOrderByTimestampDesc("user-1")));
+        assertTrue(repository.findByTimestampBetween(BASE, BASE.plusMinutes(15)).isEmpty());
+        assertEquals(List.of(original.getId()),
+                ids(repository.findByTimestampBetween(BASE.plusMinutes(4999), BASE.plusMinutes(5001))));
+
+        // The tombstone is in the memtable, then in the newest run
+        delete(original.getId());
+        assertDeleted(original.getId());
+        lsm().checkpoint();
+        assertDeleted(original.getId());
+
+        reopen();
+        assertDeleted(original.getId());
+        assertSameContents();
+    }
+
+    @Test
+    void deleteAllIsReplayedAfterCrash() throws Exception {
+        useLargeMemtable();
+        populate(300);
+        lsm().checkpoint();
+        populate(100);
+        repository.deleteAll();
+        reference.deleteAll();
+        populate(200);
+
+        crash();
+        assertSameContents();
+        reopen();
+        assertSameContents();
+    }
+
+    @Test
+    void crashRecoveryCountsLiveEntries() throws Exception {
+        useLargeMemtable();
+        List<String> ids = populate(600);
+        lsm().checkpoint();
+        // Delete and update entries held in the run, then add more, all only in the log
+        for (int i = 0; i < 60; i++) {
+            delete(ids.get(i));
+        }
+        for (int i = 60; i < 80; i++) {
+            SolarDataEntry current = reference.findById(ids.get(i)).orElse(null);
+            if (current != null) {
+                SolarDataEntry updated = entry(current.getUserId(), current.getPlantName(), 99.0, 50.0, i);
+                updated.setId(current.getId());
+                save(updated);
+            }
+        }
+        populate(200);
+
+        crash();
+        assertEquals(reference.count(), repository.count());
+        assertEquals(reference.count(), statistic("entries"));
+        assertSameContents();
+    }
+
+    @Test
+    void tombstonesAreDroppedOnlyWhenCompactionReachesTheOldestRun() throws Exception {
+        useLargeMemtable();
+        List<String> ids = saveMany(500, 0);
+        lsm().checkpoint();
+        delete(ids.get(0));
+        lsm().checkpoint();
+        assertEquals(1, statistic("runTombstones"));
+
+        // Merged with the tombstone's run but not the much larger oldest one, which still holds the entry
+        saveMany(1, 600);
+        lsm().checkpoint();
+        await(() -> statistic("compactions") == 1, "the newest runs to be compacted");
+        assertEquals(2, statistic("runs"));
+        assertEquals(1, statistic("runTombstones"));
+        assertDeleted(ids.get(0));
+
+        // Large enough to pull every run into the next merge
+        saveMany(1000, 700);
+        lsm().checkpoint();
+        await(() -> statistic("runs") == 1, "every run to be compacted");
+        assertEquals(0, statistic("runTombstones"));
+        assertDeleted(ids.get(0));
+        assertSameContents();
+    }
+
+    @Test
+    void failedFlushIsRetried() throws Exception {
+        // A directory where a run's temporary file belongs makes writing that run fail
+        long next = ((AtomicLong) ReflectionTestUtils.getField(repository, "nextRunNumber")).get();
+        for (long number = next; number < next + 3; number++) {
+            Files.createDirectories(directory.resolve("lsm").resolve(String.format("run-%06d.dat.tmp", number)));
+        }
+
+        // Enough memtables for writers to stall behind the failing flushes
+        populate(MEMTABLE_ENTRIES * 4);
+        await(() -> statistic("sealedMemtables") == 0, "the sealed memtables to be flushed");
+        assertTrue(statistic("runs") > 0);
+        assertSameContents();
+
+        reopen();
+        assertSameContents();
+    }
+
+    private LsmSolarDataEntryRepository lsm() {
+        return (LsmSolarDataEntryRepository) repository;
+    }
+
+    /**
+     * Replace the empty engine with one that only flushes on checkpoint.
+     */
+    private void useLargeMemtable() throws Exception {
+        TestEngines.close(repository);
+        repository = TestEngines.lsm(directory, LARGE_MEMTABLE_ENTRIES);
+    }
+
+    /**
+     * Abandon the engine without closing it, as a killed process would, and open its files
+     * again. Only used while no flush or compaction can be running.
+     */
+    private void crash() throws Exception {
+        repository = TestEngines.lsm(directory, LARGE_MEMTABLE_ENTRIES);
+    }
+
+    private SolarDataEntry save(SolarDataEntry entry) {
+        repository.save(entry);
+        reference.save(entry);
+        return entry;
+    }
+
+    private void delete(String id) {
+        repository.deleteById(id);
+        reference.deleteById(id);
+    }
+
+    private List<String> saveMany(int count, int firstMinute) {
+        List<SolarDataEntry> saved = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            saved.add(save(entry("user-" + i % 7, "Plant A", i, 50.0, firstMinute + i)));
+        }
+        return ids(saved);
+    }
+
+    private void assertDeleted(String id) {
+        assertFalse(repository.findById(id).isPresent());
+        assertTrue(repository.findAll().stream().noneMatch(entry -> id.equals(entry.getId())));
+        assertEquals(reference.count(), repository.count());
+    }
+
+    private long statistic(String name) {
+        return ((Number) lsm().getStorageStatistics().get(name)).longValue();
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() > deadline) {
+                fail("Timed out waiting for " + description);
+            }
+            Thread.sleep(10);
+        }
+    }
+}
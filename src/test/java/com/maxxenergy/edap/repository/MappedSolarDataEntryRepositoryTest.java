@@ -0,0 +1,42 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.RandomAccessFile;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MappedSolarDataEntryRepositoryTest extends SolarDataEntryRepositoryContractTest {
+
+    // Record layout of MappedSolarDataEntryRepository: 96-byte records after a header record
+    private static final int RECORD_SIZE = 96;
+    private static final byte STATE_LIVE = 1;
+
+    @Override
+    protected SolarDataEntryRepository open(Path directory) throws Exception {
+        return TestEngines.mapped(directory);
+    }
+
+    @Test
+    void recoveryKeepsNewerCopyWrittenToLowerSlot() throws Exception {
+        SolarDataEntry filler = repository.save(entry("user-1", "Plant A", 1.0, 50.0, 0));   // slot 0
+        SolarDataEntry updated = repository.save(entry("user-1", "Plant A", 2.0, 50.0, 1));  // slot 1
+        repository.deleteById(filler.getId());                                                // frees slot 0
+        updated.setGeneration(3.0);
+        repository.save(updated);                                                             // slot 0, retires slot 1
+        TestEngines.close(repository);
+
+        // Crash between writing the new version and retiring the old one: slot 1 is still live
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("mmap/entries.dat").toFile(), "rw")) {
+            file.seek(2L * RECORD_SIZE);
+            file.writeByte(STATE_LIVE);
+        }
+
+        repository = open(directory);
+        assertEquals(1, repository.count());
+        assertEquals(3.0, repository.findById(updated.getId()).orElseThrow().getGeneration());
+        assertEquals(1, repository.findByUserIdOrderByTimestampDesc("user-1").size());
+    }
+}
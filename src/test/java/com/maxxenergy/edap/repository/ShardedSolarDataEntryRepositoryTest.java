@@ -0,0 +1,11 @@
+package com.maxxenergy.edap.repository;
+
+import java.nio.file.Path;
+
+class ShardedSolarDataEntryRepositoryTest extends SolarDataEntryRepositoryContractTest {
+
+    @Override
+    protected SolarDataEntryRepository open(Path directory) throws Exception {
+        return TestEngines.sharded(directory, 4);
+    }
+}
@@ -0,0 +1,531 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Behaviour every {@link SolarDataEntryRepository} engine must share. Each engine's test
+ * extends this class; results are compared with a reference store that only implements the
+ * core operations, so it answers every query with the interface's default implementation.
+ */
+abstract class SolarDataEntryRepositoryContractTest {
+
+    protected static final LocalDateTime BASE = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+    private static final int USERS = 20;
+
+    @TempDir
+    protected Path directory;
+
+    protected SolarDataEntryRepository repository;
+
+    // Subclasses mirror every write they make to the engine here, so contents can be compared
+    protected final SolarDataEntryRepository reference = new ReferenceRepository();
+
+    /**
+     * Open the engine under test, keeping any files under the given directory. Opening again
+     * on the same directory must recover what a durable engine stored.
+     */
+    protected abstract SolarDataEntryRepository open(Path directory) throws Exception;
+
+    /**
+     * Whether entries survive closing and reopening the engine.
+     */
+    protected boolean isDurable() {
+        return true;
+    }
+
+    @BeforeEach
+    void openRepository() throws Exception {
+        repository = open(directory);
+    }
+
+    @AfterEach
+    void closeRepository() throws Exception {
+        TestEngines.close(repository);
+    }
+
+    @Test
+    void saveFindAndDelete() {
+        SolarDataEntry entry = repository.save(entry("user-1", "Plant A", 10.0, 50.0, 0));
+        assertNotNull(entry.getId());
+        assertEquals(1, repository.count());
+        assertEquals(10.0, repository.findById(entry.getId()).orElseThrow().getGeneration());
+
+        repository.deleteById(entry.getId());
+        repository.deleteById("missing");
+        assertFalse(repository.findById(entry.getId()).isPresent());
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    void saveWithExistingIdReplacesEntry() {
+        SolarDataEntry entry = repository.save(entry("user-1", "Plant A", 10.0, 50.0, 0));
+        SolarDataEntry moved = entry("user-2", "Plant B", 20.0, 60.0, 5);
+        moved.setId(entry.getId());
+        repository.save(moved);
+
+        assertEquals(1, repository.count());
+        assertEquals(0, repository.countByUserId("user-1"));
+        assertEquals(List.of(entry.getId()), ids(repository.findByUserIdOrderByTimestampDesc("user-2")));
+        assertEquals("Plant B", repository.findById(entry.getId()).orElseThrow().getPlantName());
+        assertTrue(repository.findByPlantNameContainingIgnoreCase("plant a").isEmpty());
+    }
+
+    @Test
+    void saveAllWithSuppliedIdsInsertsUpdatesAndMovesEntries() {
+        SolarDataEntry kept = repository.save(entry("user-1", "Plant A", 10.0, 50.0, 0));
+        List<SolarDataEntry> moving = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            moving.add(repository.save(entry("user-1", "Plant A", 11.0, 50.0, 1 + i)));
+        }
+
+        List<SolarDataEntry> batch = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            SolarDataEntry inserted = entry("batch-" + i % 7, "Plant C", i, 50.0, 100 + i);
+            inserted.setId("supplied-" + i);
+            batch.add(inserted);
+        }
+        SolarDataEntry updated = entry("user-1", "Plant B", 20.0, 60.0, 0);
+        updated.setId(kept.getId());
+        batch.add(updated);
+        // Users spread over the shards, so some entries move to another shard
+        for (int i = 0; i < moving.size(); i++) {
+            SolarDataEntry moved = entry("user-" + (i + 2), "Plant D", 30.0, 70.0, 1 + i);
+            moved.setId(moving.get(i).getId());
+            batch.add(moved);
+        }
+        repository.saveAll(batch);
+
+        assertEquals(27, repository.count());
+        assertEquals(List.of(kept.getId()), ids(repository.findByUserIdOrderByTimestampDesc("user-1")));
+        assertEquals("Plant B", repository.findById(kept.getId()).orElseThrow().getPlantName());
+        assertEquals("Plant C", repository.findById("supplied-7").orElseThrow().getPlantName());
+        for (int i = 0; i < moving.size(); i++) {
+            assertEquals("user-" + (i + 2), repository.findById(moving.get(i).getId()).orElseThrow().getUserId());
+        }
+        assertEquals(moving.size(), repository.findByPlantNameContainingIgnoreCase("plant d").size());
+        assertTrue(repository.findByPlantNameContainingIgnoreCase("plant a").isEmpty());
+    }
+
+    @Test
+    void userQueriesReturnNewestFirst() {
+        populate(1500);
+        for (String userId : userIds()) {
+            List<SolarDataEntry> expected = reference.findByUserIdOrderByTimestampDesc(userId);
+            assertEquals(timestamps(expected), timestamps(repository.findByUserIdOrderByTimestampDesc(userId)), userId);
+            assertEquals(timestamps(expected.subList(0, Math.min(7, expected.size()))),
+                    timestamps(repository.findTopKByUserIdOrderByTimestampDesc(userId, 7)), userId);
+            assertEquals(reference.countByUserId(userId), repository.countByUserId(userId), userId);
+
+            List<SolarDataEntry> range = repository.findByUserIdAndTimestampBetweenOrderByTimestampDesc(
+                    userId, BASE.plusMinutes(1000), BASE.plusMinutes(20000));
+            assertEquals(idSet(reference.findByUserIdAndTimestampBetweenOrderByTimestampDesc(
+                    userId, BASE.plusMinutes(1000), BASE.plusMinutes(20000))), idSet(range), userId);
+            assertNewestFirst(range);
+        }
+        assertEquals(reference.findDistinctUserIds(), repository.findDistinctUserIds());
+    }
+
+    @Test
+    void cursorPagesVisitEveryEntryOnce() {
+        populate(1500);
+        for (String userId : userIds()) {
+            List<String> walked = new ArrayList<>();
+            EntryCursor cursor = null;
+            do {
+                // Round-trip the cursor through its wire form, as a client would
+                EntryPage page = repository.findPageByUserIdOrderByTimestampDesc(userId,
+                        cursor != null ? EntryCursor.decode(cursor.encode()) : null, 7);
+                assertTrue(page.getEntries().size() <= 7);
+                walked.addAll(ids(page.getEntries()));
+                cursor = page.getNext();
+            } while (cursor != null);
+            assertEquals(ids(sorted(reference.findByUserIdOrderByTimestampDesc(userId))), walked, userId);
+        }
+
+        List<String> walked = new ArrayList<>();
+        EntryCursor cursor = null;
+        do {
+            EntryPage page = repository.findPageByIsPublicTrueOrderByTimestampDesc(cursor, 50);
+            walked.addAll(ids(page.getEntries()));
+            cursor = page.getNext();
+        } while (cursor != null);
+        assertEquals(ids(sorted(reference.findByIsPublicTrueOrderByTimestampDesc())), walked);
+    }
+
+    @Test
+    void cursorSurvivesDeletionOfItsEntry() {
+        List<SolarDataEntry> saved = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            saved.add(repository.save(entry("user-1", "Plant A", i, 50.0, i)));
+        }
+        EntryPage first = repository.findPageByUserIdOrderByTimestampDesc("user-1", null, 4);
+        repository.deleteById(first.getEntries().get(3).getId());
+
+        EntryPage second = repository.findPageByUserIdOrderByTimestampDesc("user-1", first.getNext(), 4);
+        assertEquals(ids(saved.subList(2, 6)), reversed(ids(second.getEntries())));
+    }
+
+    @Test
+    void publicFeedFollowsVisibilityChanges() {
+        List<String> ids = populate(1500);
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            String id = ids.get(random.nextInt(ids.size()));
+            boolean isPublic = random.nextBoolean();
+            assertEquals(reference.updateVisibility(id, isPublic).isPresent(),
+                    repository.updateVisibility(id, isPublic).isPresent());
+        }
+        assertFalse(repository.updateVisibility("missing", true).isPresent());
+
+        List<SolarDataEntry> feed = repository.findByIsPublicTrueOrderByTimestampDesc();
+        assertEquals(idSet(reference.findByIsPublicTrueOrderByTimestampDesc()), idSet(feed));
+        assertNewestFirst(feed);
+        assertEquals(timestamps(reference.findTopKByIsPublicTrueOrderByTimestampDesc(25)),
+                timestamps(repository.findTopKByIsPublicTrueOrderByTimestampDesc(25)));
+        assertEquals(10, repository.findTop10ByIsPublicTrueOrderByTimestampDesc().size());
+    }
+
+    @Test
+    void valueQueriesMatchReference() {
+        populate(1500);
+        assertEquals(idSet(reference.findByGenerationGreaterThanEqual(90.0)),
+                idSet(repository.findByGenerationGreaterThanEqual(90.0)));
+        assertEquals(idSet(reference.findByEfficiencyGreaterThanEqual(90.0)),
+                idSet(repository.findByEfficiencyGreaterThanEqual(90.0)));
+        assertEquals(idSet(reference.findByCapacityUtilizationGreaterThanEqual(80.0)),
+                idSet(repository.findByCapacityUtilizationGreaterThanEqual(80.0)));
+        assertEquals(idSet(reference.findByGenerationBetween(20.0, 40.0)),
+                idSet(repository.findByGenerationBetween(20.0, 40.0)));
+        assertEquals(idSet(reference.findByEfficiencyBetween(0.0, 5.0)),
+                idSet(repository.findByEfficiencyBetween(0.0, 5.0)));
+        assertTrue(repository.findByGenerationBetween(40.0, 20.0).isEmpty());
+
+        List<SolarDataEntry> top = repository.findTopKByEfficiencyGreaterThanEqualOrderByEfficiencyDesc(
+                50, SolarDataEntry::isPublic, 15);
+        List<SolarDataEntry> expected = reference.findTopKByEfficiencyGreaterThanEqualOrderByEfficiencyDesc(
+                50, SolarDataEntry::isPublic, 15);
+        assertEquals(expected.stream().map(SolarDataEntry::getEfficiency).collect(Collectors.toList()),
+                top.stream().map(SolarDataEntry::getEfficiency).collect(Collectors.toList()));
+        assertTrue(top.stream().allMatch(SolarDataEntry::isPublic));
+    }
+
+    @Test
+    void timeRangeAndPlantQueriesMatchReference() {
+        populate(1500);
+        assertEquals(idSet(reference.findByTimestampBetween(BASE.plusMinutes(777), BASE.plusMinutes(9999))),
+                idSet(repository.findByTimestampBetween(BASE.plusMinutes(777), BASE.plusMinutes(9999))));
+        assertEquals(idSet(reference.findRecentEntries(BASE.plusMinutes(40000))),
+                idSet(repository.findRecentEntries(BASE.plusMinutes(40000))));
+
+        List<String> streamed = new ArrayList<>();
+        repository.forEachByTimestampBetween(BASE.plusMinutes(5000), BASE.plusMinutes(6000), entry -> streamed.add(entry.getId()));
+        assertEquals(idSet(reference.findByTimestampBetween(BASE.plusMinutes(5000), BASE.plusMinutes(6000))),
+                new TreeSet<>(streamed));
+
+        for (String fragment : new String[]{"t c f", "nt c", "PLANT", "none"}) {
+            assertEquals(idSet(reference.findByPlantNameContainingIgnoreCase(fragment)),
+                    idSet(repository.findByPlantNameContainingIgnoreCase(fragment)), fragment);
+            assertEquals(reference.countByPlantNameContainingIgnoreCase(fragment),
+                    repository.countByPlantNameContainingIgnoreCase(fragment), fragment);
+        }
+    }
+
+    @Test
+    void summariesMatchReference() {
+        populate(1500);
+        for (String userId : userIds()) {
+            assertSameSummary(reference.summarizeByUserId(userId), repository.summarizeByUserId(userId), userId);
+        }
+        assertEquals(0, repository.summarizeByUserId("nobody").getEntryCount());
+    }
+
+    @Test
+    void perUserCapEvictsOldestEntries() {
+        populate(500);
+        List<String> capped = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            SolarDataEntry entry = entry("capped", "Plant A", i, 50.0, 1000 * i);
+            repository.save(entry);
+            reference.save(entry);
+            capped.add(0, entry.getId());
+        }
+
+        assertEquals(20, repository.deleteOldestByUserIdBeyond("capped", 10));
+        reference.deleteOldestByUserIdBeyond("capped", 10);
+        assertEquals(capped.subList(0, 10), ids(repository.findByUserIdOrderByTimestampDesc("capped")));
+        assertEquals(0, repository.deleteOldestByUserIdBeyond("capped", 10));
+        assertEquals(idSet(reference.findAll()), idSet(repository.findAll()));
+        assertSameSummary(reference.summarizeByUserId("capped"), repository.summarizeByUserId("capped"), "capped");
+    }
+
+    @Test
+    void perUserCapEvictsOldestOfBackdatedAndMovedEntries() throws Exception {
+        List<Integer> minutes = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            minutes.add(1000 * i);
+        }
+        Collections.shuffle(minutes, new Random(7));
+        List<SolarDataEntry> saved = new ArrayList<>();
+        for (int minute : minutes) {
+            SolarDataEntry entry = entry("capped", "Plant A", minute, 50.0, minute);
+            repository.save(entry);
+            reference.save(entry);
+            saved.add(entry);
+        }
+        // Move the oldest entry to another user: the cap must no longer count it
+        SolarDataEntry oldest = saved.get(minutes.indexOf(0));
+        SolarDataEntry moved = entry("other", "Plant A", 0, 50.0, 0);
+        moved.setId(oldest.getId());
+        repository.save(moved);
+        reference.save(moved);
+        assertEquals(39, repository.countByUserId("capped"));
+        assertEquals(1, repository.countByUserId("other"));
+
+        assertEquals(9, repository.deleteOldestByUserIdBeyond("capped", 30));
+        reference.deleteOldestByUserIdBeyond("capped", 30);
+        assertEquals(ids(reference.findByUserIdOrderByTimestampDesc("capped")),
+                ids(repository.findByUserIdOrderByTimestampDesc("capped")));
+
+        if (isDurable()) {
+            reopen();
+        }
+        assertEquals(30, repository.countByUserId("capped"));
+        assertEquals(10, repository.deleteOldestByUserIdBeyond("capped", 20));
+        reference.deleteOldestByUserIdBeyond("capped", 20);
+        assertEquals(ids(reference.findByUserIdOrderByTimestampDesc("capped")),
+                ids(repository.findByUserIdOrderByTimestampDesc("capped")));
+        assertEquals(20, repository.countByUserId("capped"));
+        assertEquals(1, repository.countByUserId("other"));
+    }
+
+    @Test
+    void retentionDeletesOlderEntries() {
+        populate(1500);
+        reference.deleteByUserIdAndTimestampBefore("user-3", BASE.plusMinutes(25000));
+        repository.deleteByUserIdAndTimestampBefore("user-3", BASE.plusMinutes(25000));
+        assertEquals(idSet(reference.findAll()), idSet(repository.findAll()));
+
+        assertEquals(reference.deleteByTimestampBefore(BASE.plusMinutes(12345)),
+                repository.deleteByTimestampBefore(BASE.plusMinutes(12345)));
+        assertEquals(idSet(reference.findAll()), idSet(repository.findAll()));
+        assertEquals(reference.count(), repository.count());
+    }
+
+    @Test
+    void deleteAllEmptiesEveryQuery() {
+        populate(500);
+        repository.deleteAll();
+        assertEquals(0, repository.count());
+        assertTrue(repository.findAll().isEmpty());
+        assertTrue(repository.findByUserIdOrderByTimestampDesc("user-1").isEmpty());
+        assertTrue(repository.findByIsPublicTrueOrderByTimestampDesc().isEmpty());
+        assertTrue(repository.findByPlantNameContainingIgnoreCase("plant").isEmpty());
+        assertTrue(repository.findByGenerationGreaterThanEqual(0.0).isEmpty());
+    }
+
+    @Test
+    void reopenRecoversEntries() throws Exception {
+        assumeTrue(isDurable());
+        populate(1500);
+        SolarDataEntry moved = reference.findByUserIdOrderByTimestampDesc("user-1").get(0);
+        moved.setUserId("user-moved");
+        repository.save(moved);
+        reference.save(moved);
+
+        reopen();
+        assertSameContents();
+        assertEquals(1, repository.countByUserId("user-moved"));
+        for (String userId : userIds()) {
+            assertSameSummary(reference.summarizeByUserId(userId), repository.summarizeByUserId(userId), userId);
+        }
+    }
+
+    @Test
+    void reopenAfterCheckpointRecoversLaterWrites() throws Exception {
+        assumeTrue(isDurable());
+        List<String> ids = populate(800);
+        repository.checkpoint();
+        for (int i = 0; i < 100; i++) {
+            reference.deleteById(ids.get(i));
+            repository.deleteById(ids.get(i));
+        }
+        populate(300);
+
+        reopen();
+        assertSameContents();
+    }
+
+    @Test
+    void reopenAfterDeleteAllKeepsOnlyLaterEntries() throws Exception {
+        assumeTrue(isDurable());
+        populate(500);
+        repository.deleteAll();
+        SolarDataEntry kept = repository.save(entry("user-1", "Plant A", 1.0, 50.0, 0));
+
+        reopen();
+        assertEquals(1, repository.count());
+        assertEquals(List.of(kept.getId()), ids(repository.findAll()));
+    }
+
+    /**
+     * Close the engine and open it again on the same directory.
+     */
+    protected void reopen() throws Exception {
+        TestEngines.close(repository);
+        repository = open(directory);
+    }
+
+    /**
+     * Save the same random entries to the engine and the reference, a third of them in
+     * batches, deleting some as it goes.
+     *
+     * @return the ids of all entries saved, including deleted ones
+     */
+    protected List<String> populate(int count) {
+        Random random = new Random(42 + count + reference.count());
+        List<String> saved = new ArrayList<>();
+        List<SolarDataEntry> batch = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            SolarDataEntry entry = entry("user-" + random.nextInt(USERS),
+                    "Plant " + (char) ('A' + random.nextInt(10)) + " Farm",
+                    random.nextInt(100), random.nextInt(100), random.nextInt(50000));
+            entry.setPublic(random.nextBoolean());
+            if (i % 3 == 0) {
+                batch.add(entry);
+            } else {
+                repository.save(entry);
+                reference.save(entry);
+                saved.add(entry.getId());
+            }
+            if (batch.size() == 50 || i == count - 1) {
+                repository.saveAll(batch);
+                for (SolarDataEntry batched : batch) {
+                    assertNotNull(batched.getId());
+                    reference.save(batched);
+                    saved.add(batched.getId());
+                }
+                batch.clear();
+            }
+            if (random.nextInt(10) == 0 && !saved.isEmpty()) {
+                String id = saved.get(random.nextInt(saved.size()));
+                reference.deleteById(id);
+                repository.deleteById(id);
+            }
+        }
+        return saved;
+    }
+
+    protected void assertSameContents() {
+        assertEquals(reference.count(), repository.count());
+        assertEquals(describe(sorted(reference.findAll())), describe(sorted(repository.findAll())));
+    }
+
+    protected static SolarDataEntry entry(String userId, String plantName, double generation,
+                                          double efficiency, int minutes) {
+        SolarDataEntry entry = new SolarDataEntry(userId, plantName, generation, 100.0, efficiency);
+        entry.setTimestamp(BASE.plusMinutes(minutes));
+        return entry;
+    }
+
+    protected static List<String> ids(List<SolarDataEntry> entries) {
+        return entries.stream().map(SolarDataEntry::getId).collect(Collectors.toList());
+    }
+
+    private static Set<String> idSet(List<SolarDataEntry> entries) {
+        return new TreeSet<>(ids(entries));
+    }
+
+    private static List<Long> timestamps(List<SolarDataEntry> entries) {
+        return entries.stream().map(SolarDataEntry::getTimestampMillis).collect(Collectors.toList());
+    }
+
+    private static List<SolarDataEntry> sorted(List<SolarDataEntry> entries) {
+        List<SolarDataEntry> result = new ArrayList<>(entries);
+        result.sort(SolarDataEntryRepository.NEWEST_FIRST_THEN_ID);
+        return result;
+    }
+
+    private static List<String> reversed(List<String> values) {
+        List<String> result = new ArrayList<>(values);
+        Collections.reverse(result);
+        return result;
+    }
+
+    private static List<String> describe(List<SolarDataEntry> entries) {
+        return entries.stream()
+                .map(entry -> String.join("|", entry.getId(), entry.getUserId(), entry.getPlantName(),
+                        String.valueOf(entry.getTimestampMillis()), String.valueOf(entry.getGeneration()),
+                        String.valueOf(entry.getEfficiency()), String.valueOf(entry.isPublic())))
+                .collect(Collectors.toList());
+    }
+
+    private static void assertNewestFirst(List<SolarDataEntry> entries) {
+        for (int i = 1; i < entries.size(); i++) {
+            assertTrue(entries.get(i).getTimestampMillis() <= entries.get(i - 1).getTimestampMillis());
+        }
+    }
+
+    private static void assertSameSummary(EntryStatistics expected, EntryStatistics actual, String userId) {
+        assertEquals(expected.getEntryCount(), actual.getEntryCount(), userId);
+        assertEquals(expected.getAverageGeneration(), actual.getAverageGeneration(), 1e-9, userId);
+        assertEquals(expected.getAverageEfficiency(), actual.getAverageEfficiency(), 1e-9, userId);
+        assertEquals(expected.getMaxGeneration(), actual.getMaxGeneration(), userId);
+        assertEquals(expected.getTotalRevenue(), actual.getTotalRevenue(), 1e-6, userId);
+        assertEquals(expected.getLastEntry(), actual.getLastEntry(), userId);
+    }
+
+    private static List<String> userIds() {
+        List<String> userIds = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            userIds.add("user-" + i);
+        }
+        return userIds;
+    }
+
+    /**
+     * Plain map store answering every query through the interface defaults.
+     */
+    private static final class ReferenceRepository implements SolarDataEntryRepository {
+
+        private final Map<String, SolarDataEntry> entries = new LinkedHashMap<>();
+
+        public SolarDataEntry save(SolarDataEntry entry) {
+            entries.put(entry.getId(), entry);
+            return entry;
+        }
+
+        public Optional<SolarDataEntry> findById(String id) {
+            return Optional.ofNullable(entries.get(id));
+        }
+
+        public void deleteById(String id) {
+            entries.remove(id);
+        }
+
+        public void deleteAll() {
+            entries.clear();
+        }
+
+        public long count() {
+            return entries.size();
+        }
+
+        public void forEachEntry(Consumer<SolarDataEntry> action) {
+            new ArrayList<>(entries.values()).forEach(action);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.model.SolarDataEntry;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Heap footprint and insert cost of the heap-resident entry engines, the figures behind
+ * InMemorySolarDataEntryRepository.ESTIMATED_BYTES_PER_ENTRY.
+ *
+ * Not picked up by a plain "mvn test"; run it with
+ * mvn test -Dtest=StorageFootprintBenchmark [-Dbenchmark.entries=500000]
+ */
+class StorageFootprintBenchmark {
+
+    private static final Logger logger = LoggerFactory.getLogger(StorageFootprintBenchmark.class);
+
+    private static final int ENTRIES = Integer.getInteger("benchmark.entries", 500_000);
+    private static final int USERS = 300;
+    private static final int PLANTS = 40;
+
+    @Test
+    void inMemoryEstimateMatchesMeasuredFootprint() {
+        measure("in-memory", InMemorySolarDataEntryRepository::new);
+        long measured = measure("in-memory", InMemorySolarDataEntryRepository::new);
+
+        long estimate = InMemorySolarDataEntryRepository.ESTIMATED_BYTES_PER_ENTRY;
+        assertTrue(Math.abs(measured - estimate) <= estimate / 4,
+                "ESTIMATED_BYTES_PER_ENTRY is " + estimate + " but " + measured + " B/entry was measured");
+    }
+
+    @Test
+    void columnarFootprint() {
+        measure("columnar", ColumnarSolarDataEntryRepository::new);
+        measure("columnar", ColumnarSolarDataEntryRepository::new);
+    }
+
+    /**
+     * Fill a fresh engine and log its measured heap bytes per entry and insert cost next to
+     * the figure it reports itself. The first run of each engine only warms up the JIT.
+     */
+    private long measure(String engine, Supplier<SolarDataEntryRepository> factory) {
+        long before = usedHeap();
+        SolarDataEntryRepository repository = factory.get();
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 0, 0);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ENTRIES; i++) {
+            SolarDataEntry entry = new SolarDataEntry("user-" + (i % USERS), "Plant " + (i % PLANTS),
+                    1.0 * (i % 90), 100.0, 50.0 + i % 40);
+            entry.setTimestamp(base.plusMinutes(i));
+            repository.save(entry);
+        }
+        long insertNanos = System.nanoTime() - start;
+
+        long bytesPerEntry = (usedHeap() - before) / ENTRIES;
+        logger.info("{}: {} entries, measured {} B/entry, reported {} B/entry, {} us/insert",
+                engine, ENTRIES, bytesPerEntry,
+                repository.getStorageStatistics().get("estimatedBytesPerEntry"),
+                String.format("%.2f", insertNanos / 1000.0 / ENTRIES));
+        return bytesPerEntry;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,76 @@
+package com.maxxenergy.edap.repository;
+
+import com.maxxenergy.edap.storage.WriteAheadLogFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Builds entry engines outside a Spring context, wired the way their beans would be, with
+ * all files under one directory. Shared by the contract tests and the benchmarks.
+ */
+final class TestEngines {
+
+    private TestEngines() {
+    }
+
+    /**
+     * Write-ahead log factory keeping its logs and snapshots under the given directory.
+     * Logs are not forced to disk: the tests only simulate process crashes.
+     */
+    static WriteAheadLogFactory logFactory(Path directory) {
+        WriteAheadLogFactory factory = new WriteAheadLogFactory();
+        ReflectionTestUtils.setField(factory, "enabled", true);
+        ReflectionTestUtils.setField(factory, "directory", directory.resolve("wal").toString());
+        ReflectionTestUtils.setField(factory, "fsync", "never");
+        ReflectionTestUtils.setField(factory, "batchIntervalMillis", 10L);
+        return factory;
+    }
+
+    static InMemorySolarDataEntryRepository inMemory(Path directory) throws IOException {
+        InMemorySolarDataEntryRepository repository = new InMemorySolarDataEntryRepository();
+        ReflectionTestUtils.setField(repository, "logFactory", logFactory(directory));
+        repository.recover();
+        return repository;
+    }
+
+    static ShardedSolarDataEntryRepository sharded(Path directory, int shards) throws IOException {
+        ShardedSolarDataEntryRepository repository = new ShardedSolarDataEntryRepository();
+        ReflectionTestUtils.setField(repository, "shardCount", shards);
+        ReflectionTestUtils.setField(repository, "logFactory", logFactory(directory));
+        repository.start();
+        return repository;
+    }
+
+    static ColumnarSolarDataEntryRepository columnar() {
+        return new ColumnarSolarDataEntryRepository();
+    }
+
+    static MappedSolarDataEntryRepository mapped(Path directory) throws IOException {
+        return new MappedSolarDataEntryRepository(directory.resolve("mmap").toString());
+    }
+
+    static LsmSolarDataEntryRepository lsm(Path directory, int memtableEntries) throws IOException {
+        LsmSolarDataEntryRepository repository =
+                new LsmSolarDataEntryRepository(directory.resolve("lsm").toString(), memtableEntries);
+        ReflectionTestUtils.setField(repository, "logFactory", logFactory(directory));
+        repository.open();
+        return repository;
+    }
+
+    /**
+     * Shut an engine down as the container would on context close.
+     */
+    static void close(SolarDataEntryRepository repository) throws IOException {
+        if (repository instanceof InMemorySolarDataEntryRepository) {
+            ((InMemorySolarDataEntryRepository) repository).close();
+        } else if (repository instanceof ShardedSolarDataEntryRepository) {
+            ((ShardedSolarDataEntryRepository) repository).close();
+        } else if (repository instanceof MappedSolarDataEntryRepository) {
+            ((MappedSolarDataEntryRepository) repository).close();
+        } else if (repository instanceof LsmSolarDataEntryRepository) {
+            ((LsmSolarDataEntryRepository) repository).close();
+        }
+    }
+}
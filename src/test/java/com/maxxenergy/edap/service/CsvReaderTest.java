@@ -0,0 +1,83 @@
+package com.maxxenergy.edap.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CsvReaderTest {
+
+    @Test
+    void quotedFieldsKeepCommasAndLineBreaks() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("user-1,\"Plant A, North\",\"two\nlines\"\nuser-2,Plant B,x\n"));
+
+        assertEquals(List.of("user-1", "Plant A, North", "two\nlines"), csv.readRecord());
+        assertEquals(List.of("user-2", "Plant B", "x"), csv.readRecord());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    void doubledQuotesAreUnescaped() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("\"the \"\"big\"\" one\",\"\"\"\",\"\"\n"));
+
+        assertEquals(List.of("the \"big\" one", "\"", ""), csv.readRecord());
+    }
+
+    @Test
+    void emptyFieldsAndMissingFinalNewlineAreKept() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader(",a,,\nb"));
+
+        assertEquals(List.of("", "a", "", ""), csv.readRecord());
+        assertEquals(List.of("b"), csv.readRecord());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    void crlfAndBareCarriageReturnEndRecords() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a,1\r\nb,2\rc,3\r\n\r\nd,4"));
+
+        assertEquals(List.of("a", "1"), csv.readRecord());
+        assertEquals(List.of("b", "2"), csv.readRecord());
+        assertEquals(List.of("c", "3"), csv.readRecord());
+        assertEquals(List.of("d", "4"), csv.readRecord());
+        assertNull(csv.readRecord());
+    }
+
+    @Test
+    void byteOrderMarkIsLeftInTheFirstHeaderField() throws IOException {
+        // The importer strips it when mapping header names to columns
+        CsvReader csv = new CsvReader(new StringReader("\uFEFFuserId,plantName\r\nuser-1,Plant A\r\n"));
+
+        assertEquals(List.of("\uFEFFuserId", "plantName"), csv.readRecord());
+        assertEquals(List.of("user-1", "Plant A"), csv.readRecord());
+    }
+
+    @Test
+    void recordLineCountsBlankLinesAndBreaksInsideQuotes() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("header\n\n\"multi\r\nline\"\r\nnext\rlast\n"));
+
+        csv.readRecord();
+        assertEquals(1, csv.getRecordLine());
+        assertEquals(List.of("multi\r\nline"), csv.readRecord());
+        assertEquals(3, csv.getRecordLine());
+        csv.readRecord();
+        assertEquals(5, csv.getRecordLine());
+        csv.readRecord();
+        assertEquals(6, csv.getRecordLine());
+    }
+
+    @Test
+    void unterminatedQuoteReportsItsStartingLine() throws IOException {
+        CsvReader csv = new CsvReader(new StringReader("a,b\nc,\"open\nstill open\n"));
+        csv.readRecord();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, csv::readRecord);
+        assertTrue(e.getMessage().contains("line 2"), e.getMessage());
+    }
+}
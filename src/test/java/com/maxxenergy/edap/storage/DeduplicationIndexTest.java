@@ -0,0 +1,74 @@
+package com.maxxenergy.edap.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DeduplicationIndexTest {
+
+    private static final long WINDOW = 60_000;
+
+    @Test
+    void repeatedClaimWithinTheWindowReturnsTheFirstId() {
+        DeduplicationIndex index = new DeduplicationIndex(WINDOW, 100);
+
+        assertNull(index.claim("key", "id-1", 1_000));
+        assertEquals("id-1", index.claim("key", "id-2", 1_000 + WINDOW - 1));
+        assertEquals(1, index.size());
+        assertEquals(1L, index.getStatistics().get("duplicates"));
+    }
+
+    @Test
+    void keyCanBeClaimedAgainAfterTheWindow() {
+        DeduplicationIndex index = new DeduplicationIndex(WINDOW, 100);
+        index.claim("key", "id-1", 1_000);
+
+        assertNull(index.claim("key", "id-2", 1_000 + WINDOW));
+        assertEquals("id-2", index.claim("key", "id-3", 1_000 + WINDOW + 1));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void expiredKeysAreDroppedByLaterClaims() {
+        DeduplicationIndex index = new DeduplicationIndex(WINDOW, 100);
+        index.claim("old-1", "id-1", 0);
+        index.claim("old-2", "id-2", 10);
+
+        index.claim("new", "id-3", WINDOW + 10);
+        assertEquals(1, index.size());
+        assertEquals(0L, index.getStatistics().get("evictions"));
+    }
+
+    @Test
+    void oldestKeysAreEvictedBeyondMaxKeys() {
+        DeduplicationIndex index = new DeduplicationIndex(WINDOW, 3);
+        for (int i = 0; i < 5; i++) {
+            index.claim("key-" + i, "id-" + i, i);
+        }
+
+        assertEquals(3, index.size());
+        assertEquals(2L, index.getStatistics().get("evictions"));
+        // Evicted keys are forgotten while the newest ones are still remembered
+        assertEquals("id-4", index.claim("key-4", "other", 10));
+        assertNull(index.claim("key-0", "id-5", 10));
+    }
+
+    @Test
+    void releaseOnlyForgetsTheOwningClaim() {
+        DeduplicationIndex index = new DeduplicationIndex(WINDOW, 100);
+        index.claim("key", "id-1", 0);
+
+        index.release("key", "id-2");
+        assertEquals("id-1", index.claim("key", "id-3", 1));
+
+        index.release("key", "id-1");
+        assertEquals(0, index.size());
+        assertNull(index.claim("key", "id-4", 2));
+        assertEquals("id-4", index.claim("key", "id-5", 3));
+
+        // Releasing a key that is not held is ignored
+        index.release("missing", "id-1");
+        assertEquals(1, index.size());
+    }
+}
@@ -0,0 +1,46 @@
+package com.maxxenergy.edap.storage;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class StringPoolTest {
+
+    @Test
+    void acquireReturnsOneSharedInstance() {
+        StringPool pool = new StringPool();
+        String first = pool.acquire(new String("user-1"));
+        String second = pool.acquire(new String("user-1"));
+
+        assertSame(first, second);
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    void valueIsEvictedWithItsLastReference() {
+        StringPool pool = new StringPool();
+        pool.acquire("Plant A");
+        pool.acquire("Plant A");
+        pool.acquire("Plant B");
+
+        pool.release("Plant A");
+        assertEquals(2, pool.size());
+        pool.release("Plant A");
+        pool.release("Plant B");
+        assertEquals(0, pool.size());
+
+        // Releasing a value that is not held is ignored
+        pool.release("Plant C");
+        assertEquals(0, pool.size());
+    }
+
+    @Test
+    void nullIsNotPooled() {
+        StringPool pool = new StringPool();
+        assertNull(pool.acquire(null));
+        pool.release(null);
+        assertEquals(0, pool.size());
+    }
+}